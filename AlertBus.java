@@ -1,46 +1,367 @@
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+// Fans alert events out to subscribers without running any subscriber code
+// on the publishing monitor thread. Each subscriber has its own bounded ring
+// and is drained by its own thread: a dispatch thread for listeners, the
+// consumer's thread for pulled subscriptions. When a ring is full, the
+// subscriber's policy decides what happens.
 public final class AlertBus {
 
-    private static final BlockingQueue<AlertEvent> QUEUE = new LinkedBlockingQueue<>();
-    private static final List<java.util.function.Consumer<AlertEvent>> listeners = new java.util.concurrent.CopyOnWriteArrayList<>();
+    public enum Policy {
+        BLOCK,       // the publisher waits for room; nothing is lost
+        DROP_OLDEST, // the oldest queued event makes room
+        COALESCE     // when full, a new event is merged into the newest queued event of
+                     // its path if that has the same type (counts add up); else DROP_OLDEST
+    }
+
+    // Ring size of subscriptions that do not ask for one
+    static final int DEFAULT_CAPACITY = Env.getInt("FIM_ALERT_RING", 4096, 1);
+
+    private static final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
 
     private AlertBus() {}
 
-    public static void register(java.util.function.Consumer<AlertEvent> listener) {
-        listeners.add(listener);
+    // ---------- SUBSCRIBE ----------
+
+    public static Subscription register(Consumer<AlertEvent> listener) {
+        return register("listener-" + (subscribers.size() + 1), Policy.DROP_OLDEST, DEFAULT_CAPACITY,
+                batch -> {
+                    for (AlertEvent e : batch) listener.accept(e);
+                });
     }
 
-    public static void publish(AlertEvent event) {
-        if (event != null) {
-            QUEUE.offer(event);
-            for (java.util.function.Consumer<AlertEvent> listener : listeners) {
-                try {
-                    listener.accept(event);
-                } catch (Exception e) {
-                    // Ignore listener errors
-                }
-            }
-        }
+    // listener gets every event queued since its last call, in order, on a
+    // dispatch thread of its own.
+    public static Subscription register(
+            String name,
+            Policy policy,
+            int capacity,
+            Consumer<List<AlertEvent>> listener
+    ) {
+        Subscription s = new Subscription(name, policy, capacity);
+        Thread t = new Thread(() -> s.dispatch(listener), "fim-alert-" + name);
+        t.setDaemon(true);
+        subscribers.add(s);
+        t.start();
+        return s;
     }
 
-    public static AlertEvent take() throws InterruptedException {
-        return QUEUE.take();
+    // Pulled with take/poll/drainTo by the caller's own thread.
+    public static Subscription subscribe(String name, Policy policy, int capacity) {
+        Subscription s = new Subscription(name, policy, capacity);
+        subscribers.add(s);
+        return s;
+    }
+
+    // ---------- PUBLISH ----------
+
+    // Returns once every ring has taken the event; only a BLOCK subscriber
+    // that is full can make that wait.
+    public static void publish(AlertEvent event) {
+        if (event == null) return;
+        for (Subscription s : subscribers) s.offer(event);
     }
 
-    public static AlertEvent poll(long timeoutMs) throws InterruptedException {
-        return QUEUE.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    public static List<Subscription> subscriptions() {
+        return new ArrayList<>(subscribers);
     }
 
-    public static int drainTo(List<AlertEvent> out) {
-        return QUEUE.drainTo(out);
+    // One line per subscriber that has seen events
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Subscription s : subscribers) {
+            if (s.published() == 0) continue;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(s.summary());
+        }
+        return sb.toString();
     }
 
-    public static int size() {
-        return QUEUE.size();
+    // ---------- SUBSCRIPTION ----------
+
+    public static final class Subscription {
+
+        private final String name;
+        private final Policy policy;
+
+        // ring[seq % length] for head <= seq < tail (guarded by lock)
+        private final AlertEvent[] ring;
+        private long head;
+        private long tail;
+        // COALESCE: path -> seq of its newest queued event (any type)
+        private final Map<String, Long> newest = new HashMap<>();
+        private boolean closed;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+
+        private long published;
+        private long delivered;
+        private long dropped;
+        private long coalesced;
+        private long blockedNanos;
+        private boolean warned; // first drop logged; the rest are counted
+
+        private Subscription(String name, Policy policy, int capacity) {
+            this.name = name;
+            this.policy = policy;
+            this.ring = new AlertEvent[Math.max(1, capacity)];
+        }
+
+        // ---------- PRODUCER ----------
+
+        private void offer(AlertEvent e) {
+            boolean warn = false;
+            lock.lock();
+            try {
+                if (closed) return;
+                published++;
+
+                String key = policy == Policy.COALESCE ? key(e) : null;
+
+                if (tail - head == ring.length) {
+                    // replacing anything but the path's newest event would
+                    // reorder that path's events
+                    Long seq = key != null ? newest.get(key) : null;
+                    if (seq != null && ring[slot(seq)].type == e.type) {
+                        ring[slot(seq)] = merge(ring[slot(seq)], e);
+                        coalesced++;
+                        return;
+                    }
+                    if (policy == Policy.BLOCK) {
+                        long t0 = System.nanoTime();
+                        try {
+                            while (tail - head == ring.length && !closed) notFull.await();
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            blockedNanos += System.nanoTime() - t0;
+                        }
+                        if (closed) return;
+                        if (tail - head == ring.length) {
+                            dropped++;
+                            return;
+                        }
+                    } else {
+                        removeHead();
+                        dropped++;
+                        warn = !warned;
+                        warned = true;
+                    }
+                }
+
+                ring[slot(tail)] = e;
+                if (key != null) newest.put(key, tail);
+                tail++;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+            if (warn) {
+                AppLog.warn("[!] Alert subscriber '" + name + "' is falling behind; dropping oldest events (see the alert delivery summary at shutdown).");
+            }
+        }
+
+        // ---------- CONSUMER ----------
+
+        // Waits for the next event; null once closed.
+        public AlertEvent take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (tail == head && !closed) notEmpty.await();
+                return closed ? null : next();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Waits up to timeoutMs; null on timeout or once closed.
+        public AlertEvent poll(long timeoutMs) throws InterruptedException {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            lock.lock();
+            try {
+                while (tail == head && !closed) {
+                    if (nanos <= 0) return null;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return closed ? null : next();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Moves everything queued to out without waiting.
+        public int drainTo(List<AlertEvent> out) {
+            lock.lock();
+            try {
+                int n = 0;
+                while (tail != head) {
+                    out.add(next());
+                    n++;
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Stops delivery; queued events are discarded and a blocked
+        // publisher or consumer returns.
+        public void close() {
+            subscribers.remove(this);
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Dispatch thread of a listener: hands over whatever has queued up
+        // since the previous call.
+        private void dispatch(Consumer<List<AlertEvent>> listener) {
+            List<AlertEvent> batch = new ArrayList<>();
+            try {
+                while (true) {
+                    AlertEvent first = take();
+                    if (first == null) return;
+                    batch.add(first);
+                    drainTo(batch);
+                    try {
+                        listener.accept(batch);
+                    } catch (Exception e) {
+                        // Ignore listener errors
+                    }
+                    batch = new ArrayList<>();
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            }
+        }
+
+        // ---------- STATS ----------
+
+        public String name() {
+            return name;
+        }
+
+        public Policy policy() {
+            return policy;
+        }
+
+        public long published() {
+            lock.lock();
+            try {
+                return published;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long delivered() {
+            lock.lock();
+            try {
+                return delivered;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long dropped() {
+            lock.lock();
+            try {
+                return dropped;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long coalesced() {
+            lock.lock();
+            try {
+                return coalesced;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Events queued, not yet taken
+        public int depth() {
+            lock.lock();
+            try {
+                return (int) (tail - head);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Age of the oldest queued event in ms (0 when caught up)
+        public long lagMs() {
+            lock.lock();
+            try {
+                if (tail == head) return 0;
+                return Math.max(0, System.currentTimeMillis() - ring[slot(head)].timestamp.toEpochMilli());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public String summary() {
+            lock.lock();
+            try {
+                return name + " (" + policy + "): " + delivered + " delivered, " + (tail - head)
+                        + " queued, " + dropped + " dropped, " + coalesced + " coalesced"
+                        + (blockedNanos > 0 ? ", publisher blocked " + blockedNanos / 1_000_000 + " ms" : "");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // ---------- RING ----------
+
+        // Caller holds the lock and has checked the ring is not empty.
+        private AlertEvent next() {
+            AlertEvent e = removeHead();
+            delivered++;
+            notFull.signal();
+            return e;
+        }
+
+        private AlertEvent removeHead() {
+            int i = slot(head);
+            AlertEvent e = ring[i];
+            ring[i] = null;
+            if (policy == Policy.COALESCE) newest.remove(key(e), head);
+            head++;
+            return e;
+        }
+
+        // The queued event takes e's detail and time but keeps counting the
+        // burst it already stood for.
+        private static AlertEvent merge(AlertEvent queued, AlertEvent e) {
+            Instant first = queued.firstTimestamp.isBefore(e.firstTimestamp)
+                    ? queued.firstTimestamp : e.firstTimestamp;
+            return AlertEvent.coalesced(e.type, e, queued.count + e.count, first, e.timestamp);
+        }
+
+        private int slot(long seq) {
+            return (int) (seq % ring.length);
+        }
+
+        private static String key(AlertEvent e) {
+            return e.absolutePath != null ? e.absolutePath : e.path;
+        }
     }
 }
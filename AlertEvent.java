@@ -19,7 +19,11 @@ public final class AlertEvent {
     public final String oldPath;
     public final String absolutePath;
     public final boolean isDirectory;
-    public final Instant timestamp;
+    public final Instant timestamp;      // last occurrence
+    public final String detail;
+    // Occurrences folded into this event by EventCoalescer, and the first one
+    public final int count;
+    public final Instant firstTimestamp;
 
     private AlertEvent(
             Type type,
@@ -27,7 +31,10 @@ public final class AlertEvent {
             String oldPath,
             String absolutePath,
             boolean isDirectory,
-            Instant timestamp
+            Instant timestamp,
+            String detail,
+            int count,
+            Instant firstTimestamp
     ) {
         this.type = type;
         this.path = path;
@@ -35,6 +42,9 @@ public final class AlertEvent {
         this.absolutePath = absolutePath;
         this.isDirectory = isDirectory;
         this.timestamp = timestamp;
+        this.detail = detail;
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
     }
 
     public static AlertEvent of(
@@ -44,6 +54,40 @@ public final class AlertEvent {
             String absolutePath,
             boolean isDirectory
     ) {
-        return new AlertEvent(type, path, oldPath, absolutePath, isDirectory, Instant.now());
+        return of(type, path, oldPath, absolutePath, isDirectory, null);
+    }
+
+    public static AlertEvent of(
+            Type type,
+            String path,
+            String oldPath,
+            String absolutePath,
+            boolean isDirectory,
+            String detail
+    ) {
+        Instant now = Instant.now();
+        return new AlertEvent(type, path, oldPath, absolutePath, isDirectory, now, detail, 1, now);
+    }
+
+    // As read back from the event log
+    static AlertEvent restore(
+            Type type,
+            String path,
+            String oldPath,
+            String absolutePath,
+            boolean isDirectory,
+            Instant timestamp,
+            String detail,
+            int count,
+            Instant firstTimestamp
+    ) {
+        return new AlertEvent(type, path, oldPath, absolutePath, isDirectory, timestamp, detail, count,
+                firstTimestamp);
+    }
+
+    // count occurrences of one change to like's path, first to last
+    static AlertEvent coalesced(Type type, AlertEvent like, int count, Instant first, Instant last) {
+        return new AlertEvent(type, like.path, like.oldPath, like.absolutePath, like.isDirectory,
+                last, like.detail, count, first);
     }
 }
@@ -0,0 +1,349 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class BaselineFormat {
+
+    // File layout (v2):
+    //   "FIMB" | version:u8 | count:u64
+    //   per entry, in PATH_ORDER:
+    //     shared:varint | suffixLen:varint | suffix:utf8 | kind:u8
+    //     FILE/UNREADABLE: size:varint | mtime:zigzag-varint
+    //                      | inode:varint | ctime:zigzag-varint   (v2+)
+    //     FILE:            digest:32 bytes
+    static final byte[] MAGIC = {'F', 'I', 'M', 'B'};
+    static final int VERSION = 2;
+    static final int DIGEST_LEN = 32;
+
+    static final byte KIND_FILE = 0;
+    static final byte KIND_DIR = 1;
+    static final byte KIND_UNREADABLE = 2;
+
+    private static final int IO_BUFFER = 256 * 1024;
+
+    // '/' sorts before every other character, so a depth-first walk that visits
+    // children in name order produces paths in exactly this order.
+    static final Comparator<String> PATH_ORDER = (a, b) -> {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x == y) continue;
+            if (x == '/') return -1;
+            if (y == '/') return 1;
+            return Character.compare(x, y);
+        }
+        return Integer.compare(a.length(), b.length());
+    };
+
+    private BaselineFormat() {}
+
+    // ---------- DETECTION ----------
+
+    static boolean isBinary(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] head = in.readNBytes(MAGIC.length);
+            return Arrays.equals(head, MAGIC);
+        }
+    }
+
+    // ---------- WRITE ----------
+
+    static void write(File target, Map<String, FIM.FileMeta> map) throws IOException {
+
+        List<String> paths = new ArrayList<>(map.keySet());
+        paths.sort(PATH_ORDER);
+
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (Writer w = new Writer(new FileOutputStream(tmp), paths.size())) {
+            for (String path : paths) {
+                w.add(path, map.get(path));
+            }
+        }
+        Files.move(tmp.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static final class Writer implements Closeable {
+
+        private final OutputStream out;
+        private byte[] prev = new byte[0];
+        private final byte[] digest = new byte[DIGEST_LEN];
+
+        Writer(OutputStream os, long count) throws IOException {
+            out = new BufferedOutputStream(os, IO_BUFFER);
+            out.write(MAGIC);
+            out.write(VERSION);
+            writeLong(out, count);
+        }
+
+        void add(String path, FIM.FileMeta meta) throws IOException {
+
+            byte[] cur = path.getBytes(StandardCharsets.UTF_8);
+            int shared = sharedPrefix(prev, cur);
+
+            writeVarint(out, shared);
+            writeVarint(out, cur.length - shared);
+            out.write(cur, shared, cur.length - shared);
+            prev = cur;
+
+            byte kind = kindOf(meta.hash);
+            out.write(kind);
+            if (kind == KIND_DIR) return;
+
+            writeVarint(out, meta.size);
+            writeVarint(out, zigzag(meta.lastModified));
+            writeVarint(out, meta.inode);
+            writeVarint(out, zigzag(meta.ctime));
+            if (kind == KIND_FILE) {
+                meta.hash.copyTo(digest, 0);
+                out.write(digest);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // ---------- READ ----------
+
+    static Reader open(File file) throws IOException {
+        return new Reader(new FileInputStream(file));
+    }
+
+    // Streams entries one at a time. The path is kept as UTF-8 bytes in a reused
+    // buffer; path() only builds a String when a caller actually asks for one.
+    static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final int version;
+        private final long count;
+        private long read;
+
+        private byte[] path = new byte[256];
+        private int pathLen;
+        private byte kind;
+        private long size;
+        private long lastModified;
+        private long inode;
+        private long ctime;
+        private final byte[] digest = new byte[DIGEST_LEN];
+
+        Reader(InputStream is) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(is, IO_BUFFER));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a binary baseline");
+            }
+            version = in.readUnsignedByte();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported baseline version: " + version);
+            }
+            count = in.readLong();
+        }
+
+        long count() {
+            return count;
+        }
+
+        boolean next() throws IOException {
+            if (read >= count) return false;
+
+            int shared = (int) readVarint(in);
+            int suffix = (int) readVarint(in);
+            if (shared > pathLen) throw new IOException("Corrupt baseline entry");
+            if (shared + suffix > path.length) {
+                path = Arrays.copyOf(path, Math.max(path.length * 2, shared + suffix));
+            }
+            in.readFully(path, shared, suffix);
+            pathLen = shared + suffix;
+
+            kind = in.readByte();
+            if (kind == KIND_DIR) {
+                size = 0;
+                lastModified = 0;
+                inode = 0;
+                ctime = 0;
+            } else {
+                size = readVarint(in);
+                lastModified = unzigzag(readVarint(in));
+                inode = version >= 2 ? readVarint(in) : 0;
+                ctime = version >= 2 ? unzigzag(readVarint(in)) : 0;
+                if (kind == KIND_FILE) {
+                    in.readFully(digest);
+                }
+            }
+
+            read++;
+            return true;
+        }
+
+        byte[] pathBytes() {
+            return path;
+        }
+
+        int pathLength() {
+            return pathLen;
+        }
+
+        String path() {
+            return new String(path, 0, pathLen, StandardCharsets.UTF_8);
+        }
+
+        byte kind() {
+            return kind;
+        }
+
+        long size() {
+            return size;
+        }
+
+        long lastModified() {
+            return lastModified;
+        }
+
+        long inode() {
+            return inode;
+        }
+
+        long ctime() {
+            return ctime;
+        }
+
+        byte[] digestBytes() {
+            return digest;
+        }
+
+        Digest hash() {
+            switch (kind) {
+                case KIND_DIR: return Digest.DIR;
+                case KIND_UNREADABLE: return Digest.UNREADABLE;
+                default: return Digest.of(digest);
+            }
+        }
+
+        FIM.FileMeta meta() {
+            return new FIM.FileMeta(size, lastModified, hash(), inode, ctime);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    static Map<String, FIM.FileMeta> readAll(File file) throws IOException {
+        try (Reader r = open(file)) {
+            Map<String, FIM.FileMeta> map = new HashMap<>((int) Math.min(r.count() * 4 / 3 + 1, 1 << 30));
+            while (r.next()) {
+                map.put(r.path(), r.meta());
+            }
+            return map;
+        }
+    }
+
+    // ---------- LEGACY TEXT ----------
+
+    static Map<String, FIM.FileMeta> readLegacy(File file) throws IOException {
+
+        Map<String, FIM.FileMeta> map = new HashMap<>();
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+
+                String[] p = line.split("\\|");
+                if (p.length != 4) continue;
+
+                try {
+                    map.put(p[0],
+                            new FIM.FileMeta(
+                                    Long.parseLong(p[1]),
+                                    Long.parseLong(p[2]),
+                                    Digest.parse(p[3])
+                            ));
+                } catch (Exception ignored) {}
+            }
+        }
+        return map;
+    }
+
+    // Rewrites a path|size|mtime|hash baseline in place. Returns false if the
+    // file is already binary.
+    static boolean convertLegacy(File file) throws IOException {
+        if (isBinary(file)) return false;
+        write(file, readLegacy(file));
+        return true;
+    }
+
+    // ---------- ENCODING ----------
+
+    private static byte kindOf(Digest hash) {
+        if (hash.isDir()) return KIND_DIR;
+        if (hash.isFile()) return KIND_FILE;
+        return KIND_UNREADABLE;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) i++;
+        return i;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void writeVarint(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeLong(OutputStream out, long v) throws IOException {
+        for (int i = 56; i >= 0; i -= 8) {
+            out.write((int) (v >>> i));
+        }
+    }
+}
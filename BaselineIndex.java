@@ -0,0 +1,369 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public final class BaselineIndex {
+
+    // File layout (v4):
+    //   header (64 bytes): "FIMI" | version:i32 | count:i64 | slotCount:i64
+    //                      | recordsStart:i64 | recordsEnd:i64
+    //                      | baselineLength:i64 | baselineModified:i64
+    //   slots:   slotCount x (pathHash:i64 | recordPos:i64), open addressing
+    //   records: pathLen:i32 | path:utf8 | kind:u8 | size:i64 | mtime:i64
+    //            | inode:i64 | ctime:i64
+    //            | digest:32 bytes (FILE only)
+    //            in baseline (PATH_ORDER) order
+    // Records never straddle a mapping segment; a pathLen of -1 (or fewer than
+    // four bytes left) means "skip to the next segment". Other versions are
+    // not current and get rebuilt from the baseline.
+    private static final int MAGIC = 0x46494D49; // "FIMI"
+    private static final int VERSION = 4;
+    private static final int HEADER = 64;
+    private static final int FIXED = 1 + 32; // kind + size/mtime/inode/ctime
+    private static final int SLOT = 16;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT = 1L << SEGMENT_SHIFT;
+    private static final int PAD = -1;
+
+    private final MappedByteBuffer[] segments;
+    private final long count;
+    private final long slotMask;
+    private final long recordsStart;
+    private final long recordsEnd;
+
+    private BaselineIndex(MappedByteBuffer[] segments) throws IOException {
+        this.segments = segments;
+        if (getInt(0) != MAGIC || getInt(4) != VERSION) {
+            throw new IOException("Not a baseline index");
+        }
+        count = getLong(8);
+        slotMask = getLong(16) - 1;
+        recordsStart = getLong(24);
+        recordsEnd = getLong(32);
+    }
+
+    // ---------- OPEN ----------
+
+    static BaselineIndex open(File index) throws IOException {
+        try (FileChannel ch = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+            return new BaselineIndex(map(ch, ch.size(), FileChannel.MapMode.READ_ONLY));
+        }
+    }
+
+    // True if the index was built from the baseline as it is on disk now.
+    static boolean isCurrent(File baseline, File index) {
+        if (!index.exists()) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(index, "r")) {
+            if (raf.length() < HEADER) return false;
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION) return false;
+            raf.seek(40);
+            return raf.readLong() == baseline.length()
+                    && raf.readLong() == baseline.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // ---------- BUILD ----------
+
+    static void build(File baseline, File index) throws IOException {
+
+        File tmp = new File(index.getParentFile(), index.getName() + ".tmp");
+
+        try (BaselineFormat.Reader r = BaselineFormat.open(baseline);
+             FileChannel ch = FileChannel.open(tmp.toPath(),
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+
+            long slotCount = 16;
+            while (slotCount < r.count() * 2) slotCount <<= 1;
+            long mask = slotCount - 1;
+            long start = HEADER + slotCount * SLOT;
+
+            MappedByteBuffer[] table = map(ch, start, FileChannel.MapMode.READ_WRITE);
+            RecordWriter out = new RecordWriter(ch, start);
+
+            while (r.next()) {
+                byte[] path = r.pathBytes();
+                int len = r.pathLength();
+                long pos = out.add(r);
+
+                long h = hash(path, len);
+                long slot = h & mask;
+                while (getLong(table, HEADER + slot * SLOT) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                putLong(table, HEADER + slot * SLOT, h);
+                putLong(table, HEADER + slot * SLOT + 8, pos);
+            }
+            long end = out.finish();
+
+            putInt(table, 0, MAGIC);
+            putInt(table, 4, VERSION);
+            putLong(table, 8, r.count());
+            putLong(table, 16, slotCount);
+            putLong(table, 24, start);
+            putLong(table, 32, end);
+            putLong(table, 40, baseline.length());
+            putLong(table, 48, baseline.lastModified());
+            for (MappedByteBuffer b : table) b.force();
+        }
+
+        Files.move(tmp.toPath(), index.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class RecordWriter {
+
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1024 * 1024);
+        private long pos;
+
+        RecordWriter(FileChannel ch, long start) {
+            this.ch = ch;
+            this.pos = start;
+        }
+
+        long add(BaselineFormat.Reader r) throws IOException {
+
+            byte[] path = r.pathBytes();
+            int len = r.pathLength();
+            byte kind = r.kind();
+
+            int recLen = recordLength(len, kind);
+
+            long left = SEGMENT - (pos & (SEGMENT - 1));
+            if (recLen > left) {
+                if (left >= 4) {
+                    ensure(4);
+                    buf.putInt(PAD);
+                }
+                for (long i = left >= 4 ? 4 : 0; i < left; i++) {
+                    ensure(1);
+                    buf.put((byte) 0);
+                }
+                pos += left;
+            }
+
+            long at = pos;
+            ensure(recLen);
+            buf.putInt(len);
+            buf.put(path, 0, len);
+            buf.put(kind);
+            buf.putLong(r.size());
+            buf.putLong(r.lastModified());
+            buf.putLong(r.inode());
+            buf.putLong(r.ctime());
+            if (kind == BaselineFormat.KIND_FILE) {
+                buf.put(r.digestBytes(), 0, BaselineFormat.DIGEST_LEN);
+            }
+            pos += recLen;
+            return at;
+        }
+
+        long finish() throws IOException {
+            flush();
+            return pos;
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        private void flush() throws IOException {
+            long at = pos - buf.position();
+            buf.flip();
+            while (buf.hasRemaining()) {
+                at += ch.write(buf, at);
+            }
+            buf.clear();
+        }
+    }
+
+    private static int recordLength(int pathLen, byte kind) {
+        int n = 4 + pathLen + FIXED;
+        if (kind == BaselineFormat.KIND_FILE) n += BaselineFormat.DIGEST_LEN;
+        return n;
+    }
+
+    // ---------- LOOKUP ----------
+
+    long size() {
+        return count;
+    }
+
+    boolean contains(String path) {
+        return find(path) >= 0;
+    }
+
+    Digest hash(String path) {
+        long pos = find(path);
+        return pos < 0 ? null : hashAt(pos);
+    }
+
+    FIM.FileMeta get(String path) {
+        long pos = find(path);
+        if (pos < 0) return null;
+        int len = getInt(pos);
+        long at = pos + 4 + len + 1;
+        return new FIM.FileMeta(
+                getLong(at),
+                getLong(at + 8),
+                hashAt(pos),
+                getLong(at + 16),
+                getLong(at + 24)
+        );
+    }
+
+    private long find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        long h = hash(key, key.length);
+        long slot = h & slotMask;
+
+        while (true) {
+            long at = HEADER + slot * SLOT;
+            long stored = getLong(at);
+            if (stored == 0) return -1;
+            if (stored == h) {
+                long pos = getLong(at + 8);
+                if (pathEquals(pos, key)) return pos;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private boolean pathEquals(long pos, byte[] key) {
+        if (getInt(pos) != key.length) return false;
+        ByteBuffer seg = segments[(int) ((pos + 4) >>> SEGMENT_SHIFT)];
+        int off = (int) ((pos + 4) & (SEGMENT - 1));
+        for (int i = 0; i < key.length; i++) {
+            if (seg.get(off + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private Digest hashAt(long pos) {
+        int len = getInt(pos);
+        long kindAt = pos + 4 + len;
+        byte kind = segments[(int) (kindAt >>> SEGMENT_SHIFT)].get((int) (kindAt & (SEGMENT - 1)));
+        if (kind == BaselineFormat.KIND_DIR) return Digest.DIR;
+        if (kind == BaselineFormat.KIND_UNREADABLE) return Digest.UNREADABLE;
+        long at = kindAt + FIXED;
+        return Digest.of(segments[(int) (at >>> SEGMENT_SHIFT)], (int) (at & (SEGMENT - 1)));
+    }
+
+    // ---------- SEQUENTIAL ----------
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Walks records in baseline order without touching the slot table.
+    final class Cursor {
+
+        private long next = recordsStart;
+        private long pos = -1;
+
+        boolean next() {
+            while (next < recordsEnd) {
+                long left = SEGMENT - (next & (SEGMENT - 1));
+                if (left < 4 || getInt(next) == PAD) {
+                    next += left;
+                    continue;
+                }
+                pos = next;
+                int len = getInt(pos);
+                next = pos + recordLength(len, kindAt(pos, len));
+                return true;
+            }
+            return false;
+        }
+
+        String path() {
+            int len = getInt(pos);
+            byte[] b = new byte[len];
+            long at = pos + 4;
+            segments[(int) (at >>> SEGMENT_SHIFT)].get((int) (at & (SEGMENT - 1)), b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        Digest hash() {
+            return hashAt(pos);
+        }
+
+        long size() {
+            return getLong(pos + 4 + getInt(pos) + 1);
+        }
+
+        long lastModified() {
+            return getLong(pos + 4 + getInt(pos) + 9);
+        }
+
+        boolean isDir() {
+            return kindAt(pos, getInt(pos)) == BaselineFormat.KIND_DIR;
+        }
+    }
+
+    private byte kindAt(long pos, int len) {
+        long at = pos + 4 + len;
+        return segments[(int) (at >>> SEGMENT_SHIFT)].get((int) (at & (SEGMENT - 1)));
+    }
+
+    // ---------- MAPPING ----------
+
+    private static MappedByteBuffer[] map(FileChannel ch, long length, FileChannel.MapMode mode)
+            throws IOException {
+        int n = (int) ((length + SEGMENT - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] out = new MappedByteBuffer[Math.max(n, 1)];
+        for (int i = 0; i < out.length; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            out[i] = ch.map(mode, start, Math.min(SEGMENT, Math.max(length - start, 0)));
+        }
+        return out;
+    }
+
+    private int getInt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & (SEGMENT - 1)));
+    }
+
+    private long getLong(long pos) {
+        return getLong(segments, pos);
+    }
+
+    private static long getLong(MappedByteBuffer[] segs, long pos) {
+        return segs[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & (SEGMENT - 1)));
+    }
+
+    private static void putLong(MappedByteBuffer[] segs, long pos, long v) {
+        segs[(int) (pos >>> SEGMENT_SHIFT)].putLong((int) (pos & (SEGMENT - 1)), v);
+    }
+
+    private static void putInt(MappedByteBuffer[] segs, long pos, int v) {
+        segs[(int) (pos >>> SEGMENT_SHIFT)].putInt((int) (pos & (SEGMENT - 1)), v);
+    }
+
+    // FNV-1a with a murmur3 finalizer; 0 is reserved for empty slots.
+    private static long hash(byte[] b, int len) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < len; i++) {
+            h ^= b[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-file Merkle trees of fixed-size block digests for large files. Leading
+// full blocks also keep the SHA-256 chaining state after them, so when only
+// a short tail changed (appends, trailer rewrites) the file-level digest (the
+// one stored in the baseline) is resumed instead of recomputed from byte 0.
+public final class BlockHashes {
+
+    // Multiple of 64 so block boundaries are SHA-256 block boundaries; 64 B to 1 GiB
+    static final int BLOCK_SIZE = (int) (Math.max(64, Math.min(Env.getLong("FIM_MERKLE_BLOCK", 4L * 1024 * 1024, 1),
+            1L << 30)) & ~63L);
+    // Files at or above this size get a block tree (0 = disabled). Below a
+    // few blocks a tree cannot narrow a change down enough to pay for its
+    // sidecar entry.
+    static final long MIN_BYTES = Env.getLong("FIM_MERKLE_MIN_BYTES", 16L * BLOCK_SIZE, 0);
+    // Size grew and mtime moved forward: trust leading blocks without reading
+    // them, re-hash only the tail. Opt-in: an in-place edit plus an append
+    // would go unnoticed.
+    static final boolean TRUST_APPEND = "true".equalsIgnoreCase(System.getenv("FIM_MERKLE_TRUST_APPEND"));
+    // The resumable hasher is plain Java and several times slower than the
+    // MessageDigest intrinsic, so after an edit it only runs over at most
+    // 1/RESUME_FRACTION of the file; a longer tail is hashed with MessageDigest.
+    private static final int RESUME_FRACTION = 8;
+
+    private static final byte[] MAGIC = {'F', 'I', 'M', 'K'};
+    private static final int VERSION = 3;
+    private static final int DIGEST = 32;
+
+    private BlockHashes() {}
+
+    static boolean tracks(long size) {
+        return MIN_BYTES > 0 && size >= MIN_BYTES;
+    }
+
+    // ---------- TREE ----------
+
+    static final class Tree {
+        final long size;
+        final long lastModified;
+        final byte[] fileDigest;
+        final byte[] root;
+        final byte[] blocks; // blockCount x 32
+        final int[] states;  // resumable x 8, state after block i
+
+        Tree(long size, long lastModified, byte[] fileDigest, byte[] root, byte[] blocks, int[] states) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileDigest = fileDigest;
+            this.root = root;
+            this.blocks = blocks;
+            this.states = states;
+        }
+
+        // Leading full blocks whose chaining state is known
+        int resumable() {
+            return states.length / 8;
+        }
+
+        int blockCount() {
+            return blocks.length / DIGEST;
+        }
+
+        int fullBlocks() {
+            return (int) (size / BLOCK_SIZE);
+        }
+
+        Digest fileHash() {
+            return Digest.of(fileDigest);
+        }
+    }
+
+    static final class Result {
+        final Tree tree;
+        final List<long[]> changed; // [start, end) byte ranges
+
+        Result(Tree tree, List<long[]> changed) {
+            this.tree = tree;
+            this.changed = changed;
+        }
+
+        String describe() {
+            if (changed.isEmpty()) return null;
+            StringBuilder sb = new StringBuilder("changed bytes ");
+            for (int i = 0; i < changed.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(changed.get(i)[0]).append('-').append(changed.get(i)[1]);
+            }
+            return sb.toString();
+        }
+    }
+
+    // ---------- BUILD / UPDATE ----------
+
+    static Tree build(Path path) throws Exception {
+        return update(null, path).tree;
+    }
+
+    // prev is the tree of the previous version of the file (or null).
+    static Result update(Tree prev, Path path) throws Exception {
+
+        FileStat st = FileStat.read(path);
+
+        if (prev != null
+                && TRUST_APPEND
+                && st.size > prev.size
+                && st.lastModified >= prev.lastModified) {
+            return append(prev, path, st);
+        }
+        return full(prev, path, st);
+    }
+
+    // One pass over the file for the block digests. Leading blocks that match
+    // prev reuse its chaining states. From the first block without a state
+    // the file digest is resumed if the tail is short (or there is no prev);
+    // otherwise it is recomputed with MessageDigest, which has been fed the
+    // leading blocks as they went by, and the chaining states are only
+    // extended by up to 1/RESUME_FRACTION of the file so later updates can
+    // resume again.
+    private static Result full(Tree prev, Path path, FileStat st) throws Exception {
+
+        long size = st.size;
+        int count = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int full = (int) (size / BLOCK_SIZE);
+        byte[] blocks = new byte[count * DIGEST];
+        int[] states = new int[full * 8];
+        int resumable = 0;
+        List<long[]> changed = new ArrayList<>();
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        Sha256 sha = null;          // file digest, or catching up states next to plain
+        MessageDigest plain = prev == null ? null : MessageDigest.getInstance("SHA-256"); // recomputed file digest
+        boolean diverged = false;
+        long catchUp = 0;
+        long resumeFrom = size - size / RESUME_FRACTION;
+        byte[] buf = new byte[BLOCK_SIZE];
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < count; i++) {
+                long start = (long) i * BLOCK_SIZE;
+                int len = (int) Math.min(BLOCK_SIZE, size - start);
+                readFully(ch, buf, start, len);
+
+                md.update(buf, 0, len);
+                md.digest(blocks, i * DIGEST, DIGEST);
+
+                boolean same = prev != null
+                        && sameBlock(prev, i, len, blocks, i * DIGEST);
+                if (!same) {
+                    addRange(changed, start, start + len);
+                }
+
+                if (!diverged) {
+                    if (same && len == BLOCK_SIZE && i < prev.resumable()) {
+                        System.arraycopy(prev.states, i * 8, states, i * 8, 8);
+                        resumable = i + 1;
+                        if (plain != null && start < resumeFrom) plain.update(buf, 0, len);
+                        continue;
+                    }
+                    diverged = true;
+                    sha = i == 0 ? new Sha256() : Sha256.resume(states, (i - 1) * 8, start);
+                    if (start < resumeFrom) {
+                        catchUp = size / RESUME_FRACTION;
+                    } else {
+                        plain = null;
+                    }
+                }
+                if (plain != null) {
+                    plain.update(buf, 0, len);
+                }
+                if (sha != null) {
+                    sha.update(buf, 0, len);
+                    if (len == BLOCK_SIZE) {
+                        sha.exportState(states, i * 8);
+                        resumable = i + 1;
+                    }
+                    if (plain != null && (catchUp -= len) <= 0) {
+                        sha = null;
+                    }
+                }
+            }
+        }
+
+        byte[] fileDigest;
+        if (diverged && plain != null) {
+            fileDigest = plain.digest();
+        } else if (sha != null) {
+            fileDigest = sha.digest();
+        } else {
+            fileDigest = full == 0
+                    ? new Sha256().digest()
+                    : Sha256.resume(states, (full - 1) * 8, (long) full * BLOCK_SIZE).digest();
+        }
+
+        if (prev != null && size < prev.size) {
+            addRange(changed, size, prev.size);
+        }
+        if (prev == null) {
+            changed.clear();
+        }
+
+        Tree tree = new Tree(size, st.lastModified, fileDigest, merkleRoot(blocks), blocks,
+                Arrays.copyOf(states, resumable * 8));
+        return new Result(tree, changed);
+    }
+
+    // Re-reads only from the start of prev's last partial block; the bytes of
+    // that block which already existed are checked against prev's digest.
+    private static Result append(Tree prev, Path path, FileStat st) throws Exception {
+
+        if (prev.resumable() < prev.fullBlocks()) {
+            return full(prev, path, st);
+        }
+
+        long size = st.size;
+        int first = prev.fullBlocks();
+        int count = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int full = (int) (size / BLOCK_SIZE);
+
+        byte[] blocks = Arrays.copyOf(prev.blocks, count * DIGEST);
+        int[] states = Arrays.copyOf(prev.states, full * 8);
+        List<long[]> changed = new ArrayList<>();
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        Sha256 sha = first == 0
+                ? new Sha256()
+                : Sha256.resume(prev.states, (first - 1) * 8, (long) first * BLOCK_SIZE);
+        byte[] buf = new byte[BLOCK_SIZE];
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = first; i < count; i++) {
+                long start = (long) i * BLOCK_SIZE;
+                int len = (int) Math.min(BLOCK_SIZE, size - start);
+                readFully(ch, buf, start, len);
+
+                int oldLen = (int) Math.max(0, Math.min(BLOCK_SIZE, prev.size - start));
+                if (oldLen > 0) {
+                    md.update(buf, 0, oldLen);
+                    byte[] old = ((MessageDigest) md.clone()).digest();
+                    if (!Arrays.equals(old, 0, DIGEST, prev.blocks, i * DIGEST, i * DIGEST + DIGEST)) {
+                        addRange(changed, start, start + oldLen);
+                    }
+                    md.update(buf, oldLen, len - oldLen);
+                } else {
+                    md.update(buf, 0, len);
+                }
+                md.digest(blocks, i * DIGEST, DIGEST);
+
+                sha.update(buf, 0, len);
+                if (len == BLOCK_SIZE) {
+                    sha.exportState(states, i * 8);
+                }
+            }
+        }
+
+        addRange(changed, prev.size, size);
+
+        Tree tree = new Tree(size, st.lastModified, sha.digest(), merkleRoot(blocks), blocks, states);
+        return new Result(tree, changed);
+    }
+
+    private static boolean sameBlock(Tree prev, int i, int len, byte[] blocks, int off) {
+        if (i >= prev.blockCount()) return false;
+        long prevLen = Math.min(BLOCK_SIZE, prev.size - (long) i * BLOCK_SIZE);
+        if (prevLen != len) return false;
+        return Arrays.equals(blocks, off, off + DIGEST, prev.blocks, i * DIGEST, i * DIGEST + DIGEST);
+    }
+
+    private static void addRange(List<long[]> ranges, long start, long end) {
+        if (end <= start) return;
+        if (!ranges.isEmpty()) {
+            long[] last = ranges.get(ranges.size() - 1);
+            if (last[1] == start) {
+                last[1] = end;
+                return;
+            }
+        }
+        ranges.add(new long[]{start, end});
+    }
+
+    private static byte[] merkleRoot(byte[] blocks) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] level = blocks;
+        if (level.length == 0) return md.digest();
+        while (level.length > DIGEST) {
+            int n = level.length / DIGEST;
+            byte[] next = new byte[((n + 1) / 2) * DIGEST];
+            for (int i = 0; i < n; i += 2) {
+                md.update(level, i * DIGEST, DIGEST);
+                if (i + 1 < n) md.update(level, (i + 1) * DIGEST, DIGEST);
+                md.digest(next, (i / 2) * DIGEST, DIGEST);
+            }
+            level = next;
+        }
+        return level;
+    }
+
+    private static void readFully(FileChannel ch, byte[] buf, long pos, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, pos + bb.position());
+            if (n < 0) throw new IOException("File shrank while hashing");
+        }
+    }
+
+    // ---------- SIDECAR ----------
+
+    // "FIMK" | version:u8 | blockSize:i32 | count:i32
+    // per tree: path | size:i64 | mtime:i64 | fileDigest:32 | root:32
+    //           | blockCount:i32 | blocks:32 each | resumable:i32 | resumable x 8 x i32
+    // (path is len:varint | utf8, as in the baseline)
+    static void write(File target, Map<String, Tree> trees) throws IOException {
+
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 256 * 1024))) {
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.writeInt(BLOCK_SIZE);
+            out.writeInt(trees.size());
+            for (Map.Entry<String, Tree> e : trees.entrySet()) {
+                Tree t = e.getValue();
+                byte[] path = e.getKey().getBytes(StandardCharsets.UTF_8);
+                BaselineFormat.writeVarint(out, path.length);
+                out.write(path);
+                out.writeLong(t.size);
+                out.writeLong(t.lastModified);
+                out.write(t.fileDigest);
+                out.write(t.root);
+                out.writeInt(t.blockCount());
+                out.write(t.blocks);
+                out.writeInt(t.resumable());
+                for (int s : t.states) out.writeInt(s);
+            }
+        }
+        Files.move(tmp.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns an empty map if the sidecar is missing or was written with a
+    // different block size.
+    static Map<String, Tree> read(File file) throws IOException {
+
+        Map<String, Tree> trees = new HashMap<>();
+        if (!file.exists()) return trees;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 256 * 1024))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            int version = Arrays.equals(magic, MAGIC) ? in.readUnsignedByte() : -1;
+            if (version != VERSION) {
+                throw new IOException("Not a block hash file: " + file);
+            }
+            if (in.readInt() != BLOCK_SIZE) return trees;
+
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                byte[] name = new byte[(int) BaselineFormat.readVarint(in)];
+                in.readFully(name);
+                String path = new String(name, StandardCharsets.UTF_8);
+                long size = in.readLong();
+                long mtime = in.readLong();
+                byte[] fileDigest = new byte[DIGEST];
+                in.readFully(fileDigest);
+                byte[] root = new byte[DIGEST];
+                in.readFully(root);
+                byte[] blocks = new byte[in.readInt() * DIGEST];
+                in.readFully(blocks);
+                int resumable = in.readInt();
+                int[] states = new int[resumable * 8];
+                for (int j = 0; j < states.length; j++) states[j] = in.readInt();
+                trees.put(path, new Tree(size, mtime, fileDigest, root, blocks, states));
+            }
+        }
+        return trees;
+    }
+}
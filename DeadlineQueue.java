@@ -0,0 +1,56 @@
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+// Min-heap of (deadline, key) pairs for the watch loop's debounce and
+// verification windows. Entries are never cancelled: the owner re-checks its
+// own pending map when an entry fires and re-arms it if the window moved on.
+// Pushing a deadline back is therefore free, and a pass only touches the
+// entries that are due.
+public final class DeadlineQueue<K> {
+
+    private final PriorityQueue<Entry<K>> heap =
+            new PriorityQueue<>((a, b) -> Long.compare(a.at, b.at));
+
+    void schedule(K key, long at) {
+        heap.add(new Entry<>(key, at));
+    }
+
+    // Wall-clock time of the earliest entry, Long.MAX_VALUE if none
+    long next() {
+        Entry<K> e = heap.peek();
+        return e == null ? Long.MAX_VALUE : e.at;
+    }
+
+    // Pops every entry due at now. fire may schedule new entries; those are
+    // only considered on a later pass if they are not due yet.
+    void fire(long now, Consumer<K> fire) {
+        while (!heap.isEmpty() && heap.peek().at <= now) {
+            fire.accept(heap.poll().key);
+        }
+    }
+
+    // Pops the earliest entry if it is due at now, else null.
+    K poll(long now) {
+        Entry<K> e = heap.peek();
+        if (e == null || e.at > now) return null;
+        return heap.poll().key;
+    }
+
+    int size() {
+        return heap.size();
+    }
+
+    void clear() {
+        heap.clear();
+    }
+
+    private static final class Entry<K> {
+        final K key;
+        final long at;
+
+        Entry(K key, long at) {
+            this.key = key;
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+
+// Immutable SHA-256 value held as four big-endian longs (48 bytes per instance
+// versus ~120 for a 64-char hex String). DIR and UNREADABLE are sentinels that
+// only ever equal themselves. Hex is produced only for logs and alerts.
+public final class Digest {
+
+    static final int LENGTH = 32;
+
+    static final Digest DIR = new Digest(0, 0, 0, 0, Kind.DIR);
+    static final Digest UNREADABLE = new Digest(0, 0, 0, 0, Kind.UNREADABLE);
+
+    private enum Kind { FILE, DIR, UNREADABLE }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long a;
+    private final long b;
+    private final long c;
+    private final long d;
+    private final Kind kind;
+
+    private Digest(long a, long b, long c, long d, Kind kind) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.kind = kind;
+    }
+
+    // ---------- CREATE ----------
+
+    static Digest of(byte[] bytes) {
+        return of(bytes, 0);
+    }
+
+    static Digest of(byte[] bytes, int off) {
+        return new Digest(
+                longAt(bytes, off),
+                longAt(bytes, off + 8),
+                longAt(bytes, off + 16),
+                longAt(bytes, off + 24),
+                Kind.FILE
+        );
+    }
+
+    // Absolute read; the buffer's position is left alone.
+    static Digest of(ByteBuffer buf, int index) {
+        return new Digest(
+                buf.getLong(index),
+                buf.getLong(index + 8),
+                buf.getLong(index + 16),
+                buf.getLong(index + 24),
+                Kind.FILE
+        );
+    }
+
+    // Parses legacy text values: "DIR", "UNREADABLE" or 64 hex chars. Anything
+    // else is treated as unreadable, which is how it was always reported.
+    static Digest parse(String s) {
+        if (s == null) return UNREADABLE;
+        if ("DIR".equals(s)) return DIR;
+        if (s.length() != LENGTH * 2) return UNREADABLE;
+        long[] v = new long[4];
+        for (int i = 0; i < s.length(); i++) {
+            int n = Character.digit(s.charAt(i), 16);
+            if (n < 0) return UNREADABLE;
+            v[i >>> 4] = (v[i >>> 4] << 4) | n;
+        }
+        return new Digest(v[0], v[1], v[2], v[3], Kind.FILE);
+    }
+
+    // ---------- ACCESS ----------
+
+    boolean isDir() {
+        return kind == Kind.DIR;
+    }
+
+    boolean isUnreadable() {
+        return kind == Kind.UNREADABLE;
+    }
+
+    boolean isFile() {
+        return kind == Kind.FILE;
+    }
+
+    void copyTo(byte[] out, int off) {
+        putLong(out, off, a);
+        putLong(out, off + 8, b);
+        putLong(out, off + 16, c);
+        putLong(out, off + 24, d);
+    }
+
+    byte[] toBytes() {
+        byte[] out = new byte[LENGTH];
+        copyTo(out, 0);
+        return out;
+    }
+
+    String toHex() {
+        char[] out = new char[LENGTH * 2];
+        hex(out, 0, a);
+        hex(out, 16, b);
+        hex(out, 32, c);
+        hex(out, 48, d);
+        return new String(out);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case DIR: return "DIR";
+            case UNREADABLE: return "UNREADABLE";
+            default: return toHex();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Digest)) return false;
+        Digest x = (Digest) o;
+        return kind == Kind.FILE && x.kind == Kind.FILE
+                && a == x.a && b == x.b && c == x.c && d == x.d;
+    }
+
+    @Override
+    public int hashCode() {
+        // SHA-256 output is already uniformly distributed
+        return (int) (a ^ (a >>> 32));
+    }
+
+    // ---------- HELPERS ----------
+
+    private static long longAt(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static void putLong(byte[] out, int off, long v) {
+        for (int i = 7; i >= 0; i--) {
+            out[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static void hex(char[] out, int off, long v) {
+        for (int i = 15; i >= 0; i--) {
+            out[off + i] = HEX[(int) (v & 0x0f)];
+            v >>>= 4;
+        }
+    }
+}
@@ -42,6 +42,8 @@ public class EmailNotifier implements Runnable {
     private final ErrorListener errorListener;
     private final Thread thread;
     private volatile boolean running = true;
+    // Repeats of the same change to a path collapse while SMTP is slow
+    private volatile AlertBus.Subscription alerts;
 
     public EmailNotifier(ConfigProvider configProvider, ErrorListener errorListener) {
         this.configProvider = configProvider;
@@ -61,11 +63,14 @@ public class EmailNotifier implements Runnable {
     }
 
     public void start() {
+        alerts = AlertBus.subscribe("email", AlertBus.Policy.COALESCE, AlertBus.DEFAULT_CAPACITY);
         thread.start();
     }
 
     public void stop() {
         running = false;
+        AlertBus.Subscription s = alerts;
+        if (s != null) s.close();
         thread.interrupt();
     }
 
@@ -73,7 +78,8 @@ public class EmailNotifier implements Runnable {
     public void run() {
         while (running) {
             try {
-                AlertEvent first = AlertBus.take();
+                AlertEvent first = alerts.take();
+                if (first == null) return;
                 List<AlertEvent> batch = new ArrayList<>();
                 batch.add(first);
 
@@ -82,7 +88,7 @@ public class EmailNotifier implements Runnable {
                 while (true) {
                     long remaining = deadline - System.currentTimeMillis();
                     if (remaining <= 0) break;
-                    AlertEvent next = AlertBus.poll(remaining);
+                    AlertEvent next = alerts.poll(remaining);
                     if (next == null) break;
                     batch.add(next);
                 }
@@ -121,6 +127,13 @@ public class EmailNotifier implements Runnable {
             if (e.oldPath != null && !e.oldPath.isEmpty()) {
                 body.append("  (from: ").append(e.oldPath).append(")");
             }
+            if (e.detail != null && !e.detail.isEmpty()) {
+                body.append("  [").append(e.detail).append("]");
+            }
+            if (e.count > 1) {
+                body.append("  (").append(e.count).append(" times since ")
+                        .append(TIME_FMT.format(e.firstTimestamp)).append(")");
+            }
             body.append("\n");
         }
 
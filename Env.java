@@ -0,0 +1,21 @@
+// Numeric settings read from environment variables. A missing or unparsable
+// value, or one below min, falls back to the default.
+public final class Env {
+
+    private Env() {}
+
+    static int getInt(String key, int def, int min) {
+        long n = getLong(key, def, min);
+        return n <= Integer.MAX_VALUE ? (int) n : def;
+    }
+
+    static long getLong(String key, long def, long min) {
+        try {
+            String v = System.getenv(key);
+            long n = v == null ? def : Long.parseLong(v.trim());
+            return n >= min ? n : def;
+        } catch (Exception e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+// Merges bursts of alert events per path before they reach AlertBus. The
+// first event of a path is held for WINDOW_MS; what follows for the same path
+// inside that window is folded into it:
+//   MODIFIED x N            -> one MODIFIED with count N, first/last time
+//   NEW_FILE, MODIFIED...   -> one NEW_FILE
+//   NEW_* then DELETED_*    -> nothing (the path never existed for long)
+// Anything else releases the held event first, so per-path order is kept.
+// Renames and moves are not held: they release both paths and go out at once.
+// A folder delete or rename first releases what is held below the folder;
+// when the folder itself cancels out, that is dropped with it.
+public final class EventCoalescer {
+
+    // 0 publishes every event as is
+    static final long WINDOW_MS = Env.getLong("FIM_COALESCE_MS", 1000, 0);
+
+    // Everything below is guarded by LOCK. Released events are queued in
+    // outbox under it and published after it is let go, one thread at a time
+    // under PUBLISHING, so a release by the flusher never overtakes a newer
+    // event and a blocked subscriber does not hold up the folding.
+    private static final Object LOCK = new Object();
+    private static final Object PUBLISHING = new Object();
+    private static final ArrayDeque<AlertEvent> outbox = new ArrayDeque<>();
+    // sorted, so what is held below a folder is one sub-map
+    private static final TreeMap<String, Pending> pending = new TreeMap<>();
+    private static final DeadlineQueue<String> due = new DeadlineQueue<>();
+    private static Thread flusher;
+
+    private static long in;
+    private static long out;
+    private static long cancelled;
+
+    private EventCoalescer() {}
+
+    // ---------- PUBLISH ----------
+
+    static void publish(AlertEvent e) {
+        if (e == null) return;
+        if (WINDOW_MS <= 0) {
+            AlertBus.publish(e);
+            return;
+        }
+
+        boolean released;
+        synchronized (LOCK) {
+            in++;
+            String key = key(e, e.path);
+            Pending p = pending.get(key);
+
+            if (isMove(e.type)) {
+                release(key);
+                releaseBelow(key, false);
+                if (e.oldPath != null) {
+                    release(key(e, e.oldPath));
+                    releaseBelow(key(e, e.oldPath), false);
+                }
+                emit(e);
+            } else {
+                fold(key, p, e);
+            }
+            released = !outbox.isEmpty();
+        }
+        // an event that was only folded in need not wait for the bus
+        if (released) drain();
+    }
+
+    // Releases everything held (the last root stopped).
+    static void flush() {
+        synchronized (LOCK) {
+            for (String key : new ArrayList<>(pending.keySet())) release(key);
+            due.clear();
+            if (in > 0) {
+                AppLog.info("[+] Event coalescing: " + in + " events in, " + out + " out ("
+                        + cancelled + " cancelled out).");
+            }
+            in = 0;
+            out = 0;
+            cancelled = 0;
+        }
+        drain();
+    }
+
+    // ---------- INTERNAL ----------
+
+    // Holds e, folds it into what is held for its path, or releases that first.
+    private static void fold(String key, Pending p, AlertEvent e) {
+
+        if (e.type == AlertEvent.Type.DELETED_FOLDER) {
+            releaseBelow(key, p != null && cancels(p.first.type, e.type));
+        }
+
+        if (p == null) {
+            hold(key, e);
+        } else if (e.type == AlertEvent.Type.MODIFIED
+                && (p.first.type == AlertEvent.Type.MODIFIED || p.first.type == AlertEvent.Type.NEW_FILE)) {
+            p.last = e;
+            p.count++;
+        } else if (cancels(p.first.type, e.type)) {
+            pending.remove(key);
+            cancelled += p.count + 1;
+        } else {
+            release(key);
+            hold(key, e);
+        }
+    }
+
+    private static void hold(String key, AlertEvent e) {
+        long at = System.currentTimeMillis() + WINDOW_MS;
+        pending.put(key, new Pending(e, at));
+        due.schedule(key, at);
+        if (flusher == null) {
+            flusher = new Thread(EventCoalescer::run, "fim-coalesce");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else if (due.next() == at) {
+            LOCK.notifyAll();
+        }
+    }
+
+    private static void release(String key) {
+        Pending p = pending.remove(key);
+        if (p == null) return;
+        if (p.count == 1) {
+            emit(p.first);
+            return;
+        }
+        // a created file keeps its NEW_FILE; a modify burst reports the last detail
+        AlertEvent detailFrom = p.first.type == AlertEvent.Type.MODIFIED ? p.last : p.first;
+        emit(AlertEvent.coalesced(p.first.type, detailFrom, p.count, p.first.timestamp, p.last.timestamp));
+    }
+
+    // Everything held for paths below the folder key.
+    private static void releaseBelow(String key, boolean drop) {
+        for (String k : new ArrayList<>(pending.subMap(key + "/", key + "0").keySet())) {
+            if (drop) {
+                cancelled += pending.remove(k).count;
+            } else {
+                release(k);
+            }
+        }
+    }
+
+    private static void emit(AlertEvent e) {
+        out++;
+        outbox.add(e);
+    }
+
+    // Publishes the outbox in order. Whoever gets PUBLISHING first also
+    // publishes what others queued meanwhile; the rest wait for it, so a
+    // BLOCK subscriber still holds publishers back and flush() returns only
+    // once everything released is on the bus.
+    private static void drain() {
+        synchronized (PUBLISHING) {
+            while (true) {
+                AlertEvent e;
+                synchronized (LOCK) {
+                    e = outbox.poll();
+                }
+                if (e == null) return;
+                AlertBus.publish(e);
+            }
+        }
+    }
+
+    // Sleeps until the earliest window closes. An entry whose path was
+    // released and held again meanwhile is left to the newer entry.
+    private static void run() {
+        while (true) {
+            synchronized (LOCK) {
+                long next = due.next();
+                try {
+                    LOCK.wait(next == Long.MAX_VALUE ? 0 : Math.max(1, next - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                due.fire(now, key -> {
+                    Pending p = pending.get(key);
+                    if (p != null && p.due <= now) release(key);
+                });
+            }
+            drain();
+        }
+    }
+
+    private static boolean isMove(AlertEvent.Type t) {
+        return t == AlertEvent.Type.RENAMED_FILE
+                || t == AlertEvent.Type.MOVED_FILE
+                || t == AlertEvent.Type.RENAMED_FOLDER;
+    }
+
+    private static boolean cancels(AlertEvent.Type held, AlertEvent.Type next) {
+        return (held == AlertEvent.Type.NEW_FILE && next == AlertEvent.Type.DELETED_FILE)
+                || (held == AlertEvent.Type.NEW_FOLDER && next == AlertEvent.Type.DELETED_FOLDER);
+    }
+
+    // Root prefix of e's absolute path plus relPath: unique across roots and
+    // computable for oldPath too.
+    private static String key(AlertEvent e, String relPath) {
+        String abs = e.absolutePath;
+        if (abs == null || abs.length() < e.path.length()) return relPath;
+        return abs.substring(0, abs.length() - e.path.length()) + relPath;
+    }
+
+    private static final class Pending {
+        final AlertEvent first;
+        final long due;
+        AlertEvent last;
+        int count = 1;
+
+        Pending(AlertEvent first, long due) {
+            this.first = first;
+            this.last = first;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,694 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Answers "what changed under this path, of these types, in this time range"
+// from the event log without reading it end to end. Each sealed segment gets
+// a memory-mapped sidecar index (<seq>.idx): per-record columns of offset,
+// time and type, a posting list of record numbers per type, and a sorted
+// dictionary of the paths the records touch, each with its posting list. A
+// path prefix is a binary search into the dictionary plus the run of entries
+// after it; time and type are then checked on the columns, segments whose
+// time span misses the range are skipped, and only matching records are
+// decoded. The segment still being written is indexed on the heap, catching
+// up on each query.
+public final class EventHistory {
+
+    // Index: header | offset:i32 x count | time:i64 x count
+    //        | type:u8 x count (padded to 4) | (min:i64 | max:i64) x blocks
+    //        | (start:i32 | len:i32) x types
+    //        | (nameOff:i32 | nameLen:i32 | start:i32 | len:i32) x paths
+    //        | roots: (len:i32 | utf8) x roots | names: utf8 | postings: i32
+    // Header: magic:i32 | version:i32 | firstSeq:i64 | count:i32 | types:i32
+    //         | paths:i32 | roots:i32 | rootsLen:i32 | namesLen:i32
+    //         | postingsLen:i32 | minTime:i64 | maxTime:i64
+    // Paths are absolute (old paths of moves included) and sorted by their
+    // UTF-8 bytes, so a prefix is matched without decoding names. Blocks hold
+    // the time span of every BLOCK records: the log is only roughly in time
+    // order (coalesced events come out late), so a time range is narrowed to
+    // the records between the first block reaching it and the last block
+    // starting inside it.
+    private static final int MAGIC = 0x46494D58; // "FIMX"
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int BLOCK = 1024;
+    private static final String SUFFIX = ".idx";
+    private static final AlertEvent.Type[] TYPES = EventLog.TYPE_CODES;
+
+    private final File dir;
+    private final Map<Long, SegmentIndex> sealed = new HashMap<>();
+    private LiveIndex live;
+
+    private EventHistory(File dir) {
+        this.dir = dir;
+    }
+
+    static EventHistory open(File dir) {
+        return new EventHistory(dir);
+    }
+
+    // ---------- QUERY ----------
+
+    static final class Query {
+        // absolute, or relative to every monitored root; null matches all
+        String prefix;
+        EnumSet<AlertEvent.Type> types = EnumSet.allOf(AlertEvent.Type.class);
+        long from = Long.MIN_VALUE; // epoch ms, inclusive
+        long to = Long.MAX_VALUE;   // epoch ms, exclusive
+        int limit = 1000;
+
+        Query prefix(String prefix) {
+            this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+            return this;
+        }
+
+        Query types(EnumSet<AlertEvent.Type> types) {
+            this.types = types.isEmpty() ? EnumSet.allOf(AlertEvent.Type.class) : EnumSet.copyOf(types);
+            return this;
+        }
+
+        Query between(long from, long to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        Query limit(int limit) {
+            this.limit = Math.max(0, limit);
+            return this;
+        }
+    }
+
+    static final class Result {
+        final List<EventLog.Record> records; // oldest first, at most limit
+        final long matched;
+        final long searched; // events in the segments whose time span overlaps
+        final long elapsedMs;
+
+        Result(List<EventLog.Record> records, long matched, long searched, long elapsedMs) {
+            this.records = records;
+            this.matched = matched;
+            this.searched = searched;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    synchronized Result query(Query q) throws IOException {
+        long t0 = System.nanoTime();
+        long[] seqs = EventLog.segments(dir);
+        refresh(seqs);
+
+        boolean[] want = new boolean[TYPES.length];
+        for (AlertEvent.Type t : q.types) want[EventLog.typeCode(t)] = true;
+
+        List<EventLog.Record> out = new ArrayList<>();
+        long matched = 0;
+        long searched = 0;
+        for (int s = 0; s < seqs.length; s++) {
+            SegmentIndex idx = s == seqs.length - 1 ? live : sealed.get(seqs[s]);
+            if (idx == null || idx.count() == 0) continue;
+            if (idx.maxTime() < q.from || idx.minTime() >= q.to) continue;
+            searched += idx.count();
+            matched += search(idx, q, want, out);
+        }
+        return new Result(out, matched, searched, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    private static long search(SegmentIndex idx, Query q, boolean[] want, List<EventLog.Record> out)
+            throws IOException {
+
+        // records [lo, hi) can be in the time range
+        int blocks = (idx.count() + BLOCK - 1) / BLOCK;
+        int bl = 0;
+        while (bl < blocks && idx.blockMax(bl) < q.from) bl++;
+        int bh = blocks;
+        while (bh > bl && idx.blockMin(bh - 1) >= q.to) bh--;
+        int lo = bl * BLOCK;
+        int hi = Math.min(idx.count(), bh * BLOCK);
+        if (lo >= hi) return 0;
+
+        // candidates from the most selective index at hand; null = [lo, hi)
+        Ints cand = null;
+        if (q.prefix != null) {
+            cand = new Ints();
+            for (String p : prefixes(q.prefix, idx.roots())) {
+                idx.prefixPostings(p.getBytes(StandardCharsets.UTF_8), lo, hi, cand);
+            }
+            cand.sortUnique();
+        } else if (q.types.size() < TYPES.length) {
+            cand = new Ints();
+            for (AlertEvent.Type t : q.types) idx.typePostings(EventLog.typeCode(t), lo, hi, cand);
+            cand.sortUnique();
+        }
+
+        long matched = 0;
+        int n = cand == null ? hi - lo : cand.size();
+        for (int k = 0; k < n; k++) {
+            int i = cand == null ? lo + k : cand.get(k);
+            long t = idx.time(i);
+            if (t < q.from || t >= q.to || !want[idx.type(i)]) continue;
+            matched++;
+            if (out.size() < q.limit) {
+                out.add(new EventLog.Record(idx.firstSeq() + i, EventLog.readRecord(idx.segment(), idx.offset(i))));
+            }
+        }
+        return matched;
+    }
+
+    // A path that extends prefix by next is below it (not /var/log vs
+    // /var/logs) if the prefix ends in a separator or next is one.
+    private static boolean below(byte[] prefix, char next) {
+        char last = prefix.length == 0 ? '/' : (char) prefix[prefix.length - 1];
+        return isSeparator(last) || isSeparator(next);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == File.separatorChar;
+    }
+
+    // An absolute prefix as is; a relative one under each root of the segment
+    private static List<String> prefixes(String prefix, List<String> roots) {
+        if (new File(prefix).isAbsolute()) return List.of(prefix);
+        List<String> out = new ArrayList<>();
+        for (String root : roots) out.add(root + prefix);
+        return out;
+    }
+
+    // Loads or builds the index of every sealed segment not seen yet and
+    // brings the live one up to date.
+    private void refresh(long[] seqs) throws IOException {
+        Set<Long> present = new LinkedHashSet<>();
+        for (long s : seqs) present.add(s);
+        sealed.keySet().retainAll(present);
+        if (seqs.length == 0) {
+            live = null;
+            return;
+        }
+
+        long last = seqs[seqs.length - 1];
+        for (int s = 0; s < seqs.length - 1; s++) {
+            if (sealed.containsKey(seqs[s])) continue;
+            LiveIndex was = live != null && live.firstSeq == seqs[s] ? live : null;
+            sealed.put(seqs[s], loadSealed(dir, seqs[s], was));
+        }
+        if (live == null || live.firstSeq != last) live = new LiveIndex(last, mapSegment(dir, last));
+        live.catchUp();
+    }
+
+    // ---------- SEALED SEGMENTS ----------
+
+    static File indexFile(File dir, long seq) {
+        return new File(dir, String.format("%020d", seq) + SUFFIX);
+    }
+
+    // Called by the event log for each segment it leaves behind, so queries
+    // find its index ready.
+    static void sealInBackground(File dir, long seq) {
+        Thread t = new Thread(() -> {
+            try {
+                loadSealed(dir, seq, null);
+            } catch (IOException e) {
+                AppLog.warn("[!] Event index of segment " + seq + " not written: " + e.getMessage());
+            }
+        }, "fim-event-index");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    // The segment's index file, written first if missing or stale. built is
+    // the heap index of the segment if it was live until now.
+    private static SegmentIndex loadSealed(File dir, long seq, LiveIndex built) throws IOException {
+        File f = indexFile(dir, seq);
+        if (f.exists()) {
+            try {
+                return MappedIndex.open(dir, seq, f);
+            } catch (IOException stale) {
+                // rebuilt below
+            }
+        }
+        LiveIndex idx = built != null ? built : new LiveIndex(seq, mapSegment(dir, seq));
+        idx.catchUp();
+        try {
+            idx.write(f);
+            return MappedIndex.open(dir, seq, f);
+        } catch (IOException e) {
+            // disk full or read-only: keep it on the heap
+            return idx;
+        }
+    }
+
+    private static MappedByteBuffer mapSegment(File dir, long seq) throws IOException {
+        try (FileChannel ch = FileChannel.open(EventLog.segmentFile(dir, seq).toPath(), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    // ---------- SEGMENT INDEXES ----------
+
+    private interface SegmentIndex {
+        long firstSeq();
+        int count();
+        long minTime();
+        long maxTime();
+        List<String> roots();
+        int offset(int i);
+        long time(int i);
+        int type(int i);
+        long blockMin(int b);
+        long blockMax(int b);
+        // adds the record numbers in [lo, hi) of type / of prefix and every
+        // path below it
+        void typePostings(int type, int lo, int hi, Ints out);
+        void prefixPostings(byte[] prefix, int lo, int hi, Ints out);
+        ByteBuffer segment() throws IOException;
+    }
+
+    // Built on the heap by reading the segment; serves the live segment and
+    // writes the index file of a sealed one.
+    private static final class LiveIndex implements SegmentIndex {
+
+        final long firstSeq;
+        private final ByteBuffer segment;
+        private final CRC32 crc = new CRC32();
+        private int position = EventLog.HEADER;
+
+        private final Ints offsets = new Ints();
+        private final Ints types = new Ints();
+        private long[] times = new long[1024];
+        private long[] blockMin = new long[16];
+        private long[] blockMax = new long[16];
+        private final Ints[] byType = new Ints[TYPES.length];
+        private final TreeMap<String, Ints> paths = new TreeMap<>();
+        private final Set<String> roots = new LinkedHashSet<>();
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        LiveIndex(long firstSeq, ByteBuffer segment) {
+            this.firstSeq = firstSeq;
+            this.segment = segment;
+            for (int t = 0; t < byType.length; t++) byType[t] = new Ints();
+        }
+
+        // Indexes the records appended since the previous call.
+        void catchUp() throws IOException {
+            int len;
+            while ((len = EventLog.recordLength(segment, position, crc)) >= 0) {
+                add(position, EventLog.readRecord(segment, position));
+                position += 8 + len;
+            }
+        }
+
+        private void add(int offset, AlertEvent e) {
+            int i = offsets.size();
+            long t = e.timestamp.toEpochMilli();
+            offsets.add(offset);
+            types.add(EventLog.typeCode(e.type));
+            if (i == times.length) times = Arrays.copyOf(times, i * 2);
+            times[i] = t;
+            int b = i / BLOCK;
+            if (b == blockMin.length) {
+                blockMin = Arrays.copyOf(blockMin, b * 2);
+                blockMax = Arrays.copyOf(blockMax, b * 2);
+            }
+            blockMin[b] = i % BLOCK == 0 ? t : Math.min(blockMin[b], t);
+            blockMax[b] = i % BLOCK == 0 ? t : Math.max(blockMax[b], t);
+            minTime = Math.min(minTime, t);
+            maxTime = Math.max(maxTime, t);
+            byType[EventLog.typeCode(e.type)].add(i);
+
+            String root = e.absolutePath.substring(0, e.absolutePath.length() - e.path.length());
+            roots.add(root);
+            paths.computeIfAbsent(e.absolutePath, k -> new Ints()).add(i);
+            if (e.oldPath != null) {
+                Ints p = paths.computeIfAbsent(root + e.oldPath, k -> new Ints());
+                if (p.size() == 0 || p.get(p.size() - 1) != i) p.add(i);
+            }
+        }
+
+        @Override public long firstSeq() { return firstSeq; }
+        @Override public int count() { return offsets.size(); }
+        @Override public long minTime() { return minTime; }
+        @Override public long maxTime() { return maxTime; }
+        @Override public List<String> roots() { return new ArrayList<>(roots); }
+        @Override public int offset(int i) { return offsets.get(i); }
+        @Override public long time(int i) { return times[i]; }
+        @Override public int type(int i) { return types.get(i); }
+        @Override public long blockMin(int b) { return blockMin[b]; }
+        @Override public long blockMax(int b) { return blockMax[b]; }
+        @Override public ByteBuffer segment() { return segment; }
+
+        @Override
+        public void typePostings(int type, int lo, int hi, Ints out) {
+            out.addRange(byType[type], lo, hi);
+        }
+
+        @Override
+        public void prefixPostings(byte[] prefix, int lo, int hi, Ints out) {
+            String p = new String(prefix, StandardCharsets.UTF_8);
+            for (Map.Entry<String, Ints> en : paths.tailMap(p, true).entrySet()) {
+                String name = en.getKey();
+                if (!name.startsWith(p)) break;
+                if (name.length() > p.length() && !below(prefix, name.charAt(p.length()))) continue;
+                out.addRange(en.getValue(), lo, hi);
+            }
+        }
+
+        // Writes the index file next to a temp name first, so a reader never
+        // maps half of it.
+        void write(File f) throws IOException {
+            int count = offsets.size();
+            byte[][] names = new byte[paths.size()][];
+            Ints[] posts = new Ints[names.length];
+            int k = 0;
+            for (String p : paths.keySet()) names[k++] = p.getBytes(StandardCharsets.UTF_8);
+            Arrays.sort(names, Arrays::compareUnsigned);
+            for (k = 0; k < names.length; k++) posts[k] = paths.get(new String(names[k], StandardCharsets.UTF_8));
+
+            List<byte[]> rootBytes = new ArrayList<>();
+            int rootsLen = 0;
+            for (String r : roots) {
+                byte[] b = r.getBytes(StandardCharsets.UTF_8);
+                rootBytes.add(b);
+                rootsLen += 4 + b.length;
+            }
+            int namesLen = 0;
+            for (byte[] n : names) namesLen += n.length;
+            int postingsLen = 0;
+            for (Ints t : byType) postingsLen += t.size();
+            for (Ints p : posts) postingsLen += p.size();
+
+            Path tmp = Files.createTempFile(f.getParentFile().toPath(), f.getName(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(firstSeq);
+                    out.writeInt(count);
+                    out.writeInt(TYPES.length);
+                    out.writeInt(names.length);
+                    out.writeInt(rootBytes.size());
+                    out.writeInt(rootsLen);
+                    out.writeInt(namesLen);
+                    out.writeInt(postingsLen);
+                    out.writeLong(minTime);
+                    out.writeLong(maxTime);
+                    out.write(new byte[HEADER - out.size()]);
+
+                    for (int i = 0; i < count; i++) out.writeInt(offsets.get(i));
+                    for (int i = 0; i < count; i++) out.writeLong(times[i]);
+                    for (int i = 0; i < count; i++) out.writeByte(types.get(i));
+                    out.write(new byte[pad4(count) - count]);
+                    for (int b = 0; b * BLOCK < count; b++) {
+                        out.writeLong(blockMin[b]);
+                        out.writeLong(blockMax[b]);
+                    }
+
+                    int start = 0;
+                    for (Ints t : byType) {
+                        out.writeInt(start);
+                        out.writeInt(t.size());
+                        start += t.size();
+                    }
+                    int nameOff = 0;
+                    for (k = 0; k < names.length; k++) {
+                        out.writeInt(nameOff);
+                        out.writeInt(names[k].length);
+                        out.writeInt(start);
+                        out.writeInt(posts[k].size());
+                        nameOff += names[k].length;
+                        start += posts[k].size();
+                    }
+                    for (byte[] r : rootBytes) {
+                        out.writeInt(r.length);
+                        out.write(r);
+                    }
+                    for (byte[] n : names) out.write(n);
+                    for (Ints t : byType) t.writeTo(out);
+                    for (Ints p : posts) p.writeTo(out);
+                }
+                try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    ch.force(true);
+                }
+                Files.move(tmp, f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    // A written index file, used in place.
+    private static final class MappedIndex implements SegmentIndex {
+
+        private final File dir;
+        private final long firstSeq;
+        private final MappedByteBuffer m;
+        private final int count;
+        private final int pathCount;
+        private final long minTime;
+        private final long maxTime;
+        private final int timePos;
+        private final int typePos;
+        private final int blockPos;
+        private final int typeDirPos;
+        private final int pathDirPos;
+        private final int namesPos;
+        private final int postingsPos;
+        private final List<String> roots = new ArrayList<>();
+        private ByteBuffer segment;
+
+        private MappedIndex(File dir, long seq, MappedByteBuffer m) throws IOException {
+            this.dir = dir;
+            this.m = m;
+            if (m.capacity() < HEADER || m.getInt(0) != MAGIC || m.getInt(4) != VERSION
+                    || m.getLong(8) != seq || m.getInt(20) != TYPES.length) {
+                throw new IOException("Stale event index");
+            }
+            firstSeq = seq;
+            count = m.getInt(16);
+            pathCount = m.getInt(24);
+            int rootCount = m.getInt(28);
+            int rootsLen = m.getInt(32);
+            int namesLen = m.getInt(36);
+            int postingsLen = m.getInt(40);
+            minTime = m.getLong(44);
+            maxTime = m.getLong(52);
+
+            timePos = HEADER + 4 * count;
+            typePos = timePos + 8 * count;
+            blockPos = typePos + pad4(count);
+            typeDirPos = blockPos + 16 * ((count + BLOCK - 1) / BLOCK);
+            pathDirPos = typeDirPos + 8 * TYPES.length;
+            int rootsPos = pathDirPos + 16 * pathCount;
+            namesPos = rootsPos + rootsLen;
+            postingsPos = namesPos + namesLen;
+            if ((long) postingsPos + 4L * postingsLen != m.capacity()) throw new IOException("Stale event index");
+
+            int at = rootsPos;
+            for (int r = 0; r < rootCount; r++) {
+                byte[] b = new byte[m.getInt(at)];
+                m.get(at + 4, b);
+                roots.add(new String(b, StandardCharsets.UTF_8));
+                at += 4 + b.length;
+            }
+        }
+
+        static MappedIndex open(File dir, long seq, File f) throws IOException {
+            try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                return new MappedIndex(dir, seq, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            }
+        }
+
+        @Override public long firstSeq() { return firstSeq; }
+        @Override public int count() { return count; }
+        @Override public long minTime() { return minTime; }
+        @Override public long maxTime() { return maxTime; }
+        @Override public List<String> roots() { return roots; }
+        @Override public int offset(int i) { return m.getInt(HEADER + 4 * i); }
+        @Override public long time(int i) { return m.getLong(timePos + 8 * i); }
+        @Override public int type(int i) { return m.get(typePos + i) & 0xFF; }
+        @Override public long blockMin(int b) { return m.getLong(blockPos + 16 * b); }
+        @Override public long blockMax(int b) { return m.getLong(blockPos + 16 * b + 8); }
+
+        @Override
+        public ByteBuffer segment() throws IOException {
+            if (segment == null) segment = mapSegment(dir, firstSeq);
+            return segment;
+        }
+
+        @Override
+        public void typePostings(int type, int lo, int hi, Ints out) {
+            int at = typeDirPos + 8 * type;
+            addPostings(m.getInt(at), m.getInt(at + 4), lo, hi, out);
+        }
+
+        // binary search for the first path >= prefix, then every path after
+        // it while it still starts with prefix (on a component boundary)
+        @Override
+        public void prefixPostings(byte[] prefix, int lo, int hi, Ints out) {
+            int l = 0;
+            int h = pathCount;
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (compareName(mid, prefix, Integer.MAX_VALUE) < 0) l = mid + 1;
+                else h = mid;
+            }
+            for (int k = l; k < pathCount && compareName(k, prefix, prefix.length) == 0; k++) {
+                int at = pathDirPos + 16 * k;
+                if (m.getInt(at + 4) > prefix.length
+                        && !below(prefix, (char) m.get(namesPos + m.getInt(at) + prefix.length))) {
+                    continue;
+                }
+                addPostings(m.getInt(at + 8), m.getInt(at + 12), lo, hi, out);
+            }
+        }
+
+        // Unsigned byte order of name k (its first max bytes) against key
+        private int compareName(int k, byte[] key, int max) {
+            int at = pathDirPos + 16 * k;
+            int off = namesPos + m.getInt(at);
+            int len = Math.min(m.getInt(at + 4), max);
+            int n = Math.min(len, key.length);
+            for (int j = 0; j < n; j++) {
+                int c = (m.get(off + j) & 0xFF) - (key[j] & 0xFF);
+                if (c != 0) return c;
+            }
+            return Math.min(len, max) - Math.min(key.length, max);
+        }
+
+        // a posting list is ascending: binary search for lo, stop at hi
+        private void addPostings(int start, int len, int lo, int hi, Ints out) {
+            int at = postingsPos + 4 * start;
+            int l = 0;
+            int h = len;
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (m.getInt(at + 4 * mid) < lo) l = mid + 1;
+                else h = mid;
+            }
+            for (int j = l; j < len; j++) {
+                int v = m.getInt(at + 4 * j);
+                if (v >= hi) break;
+                out.add(v);
+            }
+        }
+    }
+
+    // ---------- PARSING ----------
+
+    // "2026-10-16 02:00[:ss]", "2026-10-16" (midnight), "02:00[:ss]" (today)
+    // or an ISO instant, in the local time zone unless it says otherwise.
+    static long parseTime(String text) {
+        String s = text.trim();
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            return Instant.parse(s).toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        try {
+            return LocalDateTime.parse(s.replace(' ', 'T')).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        try {
+            return LocalDate.parse(s).atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        try {
+            return LocalTime.parse(s).atDate(LocalDate.now(zone)).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        throw new IllegalArgumentException("Unrecognized time: " + text);
+    }
+
+    // Comma-separated type names; "DELETED" stands for DELETED_FILE and
+    // DELETED_FOLDER, and so on. Blank means every type.
+    static EnumSet<AlertEvent.Type> parseTypes(String text) {
+        EnumSet<AlertEvent.Type> out = EnumSet.noneOf(AlertEvent.Type.class);
+        for (String part : text.split(",")) {
+            String name = part.trim().toUpperCase();
+            if (name.isEmpty()) continue;
+            boolean known = false;
+            for (AlertEvent.Type t : TYPES) {
+                if (t.name().equals(name) || t.name().startsWith(name + "_")) {
+                    out.add(t);
+                    known = true;
+                }
+            }
+            if (!known) throw new IllegalArgumentException("Unknown event type: " + part.trim());
+        }
+        return out.isEmpty() ? EnumSet.allOf(AlertEvent.Type.class) : out;
+    }
+
+    // ---------- HELPERS ----------
+
+    private static int pad4(int n) {
+        return (n + 3) & ~3;
+    }
+
+    // Growable int array for record numbers
+    private static final class Ints {
+        private int[] a = new int[16];
+        private int size;
+
+        void add(int v) {
+            if (size == a.length) a = Arrays.copyOf(a, size * 2);
+            a[size++] = v;
+        }
+
+        // the values of ascending o that lie in [lo, hi)
+        void addRange(Ints o, int lo, int hi) {
+            int from = Arrays.binarySearch(o.a, 0, o.size, lo);
+            if (from < 0) from = -from - 1;
+            int to = Arrays.binarySearch(o.a, from, o.size, hi);
+            if (to < 0) to = -to - 1;
+            int n = to - from;
+            if (size + n > a.length) a = Arrays.copyOf(a, Math.max(size + n, size * 2));
+            System.arraycopy(o.a, from, a, size, n);
+            size += n;
+        }
+
+        int get(int i) {
+            return a[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void sortUnique() {
+            Arrays.sort(a, 0, size);
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (n == 0 || a[n - 1] != a[i]) a[n++] = a[i];
+            }
+            size = n;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) out.writeInt(a[i]);
+        }
+    }
+}
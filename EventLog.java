@@ -0,0 +1,525 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+// Durable audit trail of every alert event, in fixed-size segment files named
+// after the sequence number of their first record. The active segment is
+// preallocated and memory-mapped; records are copied into the mapping and
+// forced to disk at most every SYNC_MS, so one fsync commits every event of
+// that interval (group commit). Sealed segments are only read, through plain
+// streams, and dropped oldest first by size and age retention. One process
+// writes a log directory at a time (a lock file guards it).
+public final class EventLog implements Closeable {
+
+    static final boolean ENABLED = !"off".equalsIgnoreCase(System.getenv("FIM_EVENT_LOG"));
+
+    private static final long SEGMENT_BYTES =
+            Math.max(1, Math.min(256, Env.getLong("FIM_EVENT_LOG_SEGMENT_MB", 64, 0))) * 1024 * 1024;
+    private static final long MAX_BYTES = Env.getLong("FIM_EVENT_LOG_MAX_MB", 1024, 0) * 1024 * 1024;
+    private static final long MAX_AGE_MS = Env.getLong("FIM_EVENT_LOG_MAX_DAYS", 30, 0) * 24 * 3600 * 1000;
+    private static final long SYNC_MS = Env.getLong("FIM_EVENT_LOG_SYNC_MS", 50, 0);
+
+    // Segment: magic:8 | firstSeq:i64 | record* | len 0 (zero fill)
+    // Record:  len:i32 | payload | crc32(payload):i32
+    // Payload: time:varint (epoch ms) | type:u8 | flags:u8
+    //          | count:varint | span:varint (ms since first)   (F_COUNT)
+    //          | root | path | oldPath (F_OLD) | detail (F_DETAIL)
+    //          (strings are len:varint | utf8; root + path is the absolute path)
+    private static final byte[] MAGIC = "FIMEVLOG".getBytes(StandardCharsets.US_ASCII);
+    static final int HEADER = 16;
+    private static final int F_DIR = 1;
+    private static final int F_OLD = 2;
+    private static final int F_DETAIL = 4;
+    private static final int F_COUNT = 8;
+    private static final String SUFFIX = ".seg";
+    private static final String LOCK = "lock";
+
+    // Stored type codes (index = code). Fixed once written: new types are
+    // appended, never inserted or reordered.
+    static final AlertEvent.Type[] TYPE_CODES = {
+            AlertEvent.Type.NEW_FILE,        // 0
+            AlertEvent.Type.NEW_FOLDER,      // 1
+            AlertEvent.Type.MODIFIED,        // 2
+            AlertEvent.Type.RESTORED,        // 3
+            AlertEvent.Type.DELETED_FILE,    // 4
+            AlertEvent.Type.DELETED_FOLDER,  // 5
+            AlertEvent.Type.RENAMED_FILE,    // 6
+            AlertEvent.Type.MOVED_FILE,      // 7
+            AlertEvent.Type.RENAMED_FOLDER   // 8
+    };
+    private static final int[] CODE_OF = new int[AlertEvent.Type.values().length];
+
+    // Directories with an open log in this process. Checked before the lock
+    // file is touched: closing any channel of it drops the process's lock.
+    private static final Set<String> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Arrays.fill(CODE_OF, -1);
+        for (int c = 0; c < TYPE_CODES.length; c++) CODE_OF[TYPE_CODES[c].ordinal()] = c;
+    }
+
+    private final File dir;
+    private final String key;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final AlertBus.Subscription alerts;
+    private final Thread appender;
+    private volatile boolean closing;
+
+    // appender thread only
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream payload = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer segment;
+    private long segmentSeq;
+    private volatile long nextSeq;
+    private boolean dirty;
+    private long lastSync;
+    private boolean failed;
+
+    private long appended;
+    private long syncs;
+
+    // Reopens the newest segment (dropping a torn tail) and starts taking
+    // every event published on AlertBus. Nothing is lost to a full ring: the
+    // monitor waits for the log instead. Fails if another process (or
+    // another log in this one) already writes dir.
+    private EventLog(File dir) throws IOException {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        key = dir.getCanonicalPath();
+        if (!OPEN.add(key)) throw new IOException("already open (" + dir + ")");
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(new File(dir, LOCK).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock l;
+            try {
+                l = ch.tryLock();
+            } catch (OverlappingFileLockException e) {
+                l = null;
+            }
+            if (l == null) throw new IOException("in use by another process (" + dir + ")");
+            lockChannel = ch;
+            lock = l;
+            recover();
+        } catch (IOException | RuntimeException e) {
+            if (ch != null) ch.close();
+            OPEN.remove(key);
+            throw e;
+        }
+        enforceRetention();
+        alerts = AlertBus.subscribe("event-log", AlertBus.Policy.BLOCK, AlertBus.DEFAULT_CAPACITY);
+        appender = new Thread(this::run, "fim-event-log");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    static EventLog open(File dir) throws IOException {
+        return new EventLog(dir);
+    }
+
+    // Sequence number the next event will get
+    long nextSeq() {
+        return nextSeq;
+    }
+
+    // Appends what is still queued, forces it to disk and stops. Call after
+    // the last event was published.
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            appender.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        alerts.close();
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException ignored) {}
+        OPEN.remove(key);
+    }
+
+    // ---------- APPEND ----------
+
+    private void run() {
+        List<AlertEvent> batch = new ArrayList<>();
+        try {
+            while (true) {
+                long wait = dirty ? Math.max(1, lastSync + SYNC_MS - System.currentTimeMillis()) : SYNC_MS;
+                AlertEvent first = alerts.poll(wait);
+                if (first != null) {
+                    batch.add(first);
+                    alerts.drainTo(batch);
+                    for (AlertEvent e : batch) append(e);
+                    batch.clear();
+                }
+                if (dirty && System.currentTimeMillis() - lastSync >= SYNC_MS) sync();
+                if (closing && alerts.depth() == 0) break;
+            }
+        } catch (InterruptedException e) {
+            // shutting down
+        } catch (RuntimeException e) {
+            AppLog.warn("[!] Event log stopped: " + e);
+        } finally {
+            // publishers must never wait on a log that is gone
+            alerts.close();
+        }
+        if (dirty) sync();
+        if (appended > 0) {
+            AppLog.info("[+] Event log: " + appended + " events appended (" + syncs + " syncs), next seq "
+                    + nextSeq + ".");
+        }
+    }
+
+    private void append(AlertEvent e) {
+        if (failed) return;
+        try {
+            byte[] body = encode(e);
+            int size = 4 + body.length + 4;
+            if (HEADER + size + 4 > SEGMENT_BYTES) return; // larger than any segment
+            if (segment == null || segment.position() + size + 4 > SEGMENT_BYTES) roll();
+
+            crc.reset();
+            crc.update(body);
+            int at = segment.position();
+            segment.putInt(at + size, 0); // end mark, whatever the file held before
+            segment.position(at + 4);
+            segment.put(body);
+            segment.putInt((int) crc.getValue());
+            // the length goes in last: a reader never sees a record before its body
+            segment.putInt(at, body.length);
+
+            nextSeq++;
+            appended++;
+            dirty = true;
+        } catch (IOException ex) {
+            failed = true;
+            AppLog.warn("[!] Event log disabled: " + ex.getMessage());
+        }
+    }
+
+    // Group commit: everything appended since the previous sync.
+    private void sync() {
+        if (segment != null) segment.force();
+        dirty = false;
+        lastSync = System.currentTimeMillis();
+        syncs++;
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) {
+            segment.force();
+            dirty = false;
+            EventHistory.sealInBackground(dir, segmentSeq);
+        }
+        segmentSeq = nextSeq;
+        segment = map(segmentFile(dir, segmentSeq), true);
+        segment.put(MAGIC);
+        segment.putLong(segmentSeq);
+        enforceRetention();
+    }
+
+    private byte[] encode(AlertEvent e) throws IOException {
+        record.reset();
+        long time = e.timestamp.toEpochMilli();
+        int flags = (e.isDirectory ? F_DIR : 0)
+                | (e.oldPath != null ? F_OLD : 0)
+                | (e.detail != null ? F_DETAIL : 0)
+                | (e.count > 1 ? F_COUNT : 0);
+        BaselineFormat.writeVarint(payload, time);
+        payload.writeByte(typeCode(e.type));
+        payload.writeByte(flags);
+        if (e.count > 1) {
+            BaselineFormat.writeVarint(payload, e.count);
+            BaselineFormat.writeVarint(payload, Math.max(0, time - e.firstTimestamp.toEpochMilli()));
+        }
+        writeString(payload, rootOf(e));
+        writeString(payload, e.path);
+        if (e.oldPath != null) writeString(payload, e.oldPath);
+        if (e.detail != null) writeString(payload, e.detail);
+        payload.flush();
+        return record.toByteArray();
+    }
+
+    // ---------- RECOVERY + RETENTION ----------
+
+    // Continues in the newest segment after its last intact record.
+    private void recover() throws IOException {
+        long[] seqs = segments(dir);
+        if (seqs.length == 0) return;
+
+        segmentSeq = seqs[seqs.length - 1];
+        MappedByteBuffer m = map(segmentFile(dir, segmentSeq), false);
+        long count = 0;
+        if (m.capacity() >= HEADER) {
+            byte[] magic = new byte[MAGIC.length];
+            m.get(magic);
+            if (Arrays.equals(magic, MAGIC)) {
+                segmentSeq = m.getLong();
+                int len;
+                while ((len = recordLength(m, m.position(), crc)) >= 0) {
+                    m.position(m.position() + 8 + len);
+                    count++;
+                }
+            } else {
+                m.position(0);
+            }
+        }
+        if (m.position() < HEADER || m.capacity() < SEGMENT_BYTES) {
+            // unreadable or written with a smaller segment size: start a new one
+            nextSeq = segmentSeq + count;
+            segment = null;
+            return;
+        }
+        // a torn record is cut off so readers stop before it
+        if (m.position() + 4 <= m.capacity()) m.putInt(m.position(), 0);
+        nextSeq = segmentSeq + count;
+        segment = m;
+        if (count > 0) {
+            AppLog.info("[+] Event log: continuing at seq " + nextSeq + ".");
+        }
+    }
+
+    // Oldest sealed segments go first, while over MAX_BYTES or older than MAX_AGE_MS.
+    private void enforceRetention() {
+        long[] seqs = segments(dir);
+        long total = 0;
+        for (long s : seqs) total += segmentFile(dir, s).length();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < seqs.length - 1; i++) {
+            File f = segmentFile(dir, seqs[i]);
+            if (seqs[i] == segmentSeq && segment != null) break;
+            boolean old = MAX_AGE_MS > 0 && now - f.lastModified() > MAX_AGE_MS;
+            boolean big = MAX_BYTES > 0 && total > MAX_BYTES;
+            if (!old && !big) break;
+            long len = f.length();
+            if (f.delete()) total -= len;
+            EventHistory.indexFile(dir, seqs[i]).delete();
+        }
+    }
+
+    private MappedByteBuffer map(File f, boolean create) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+             FileChannel ch = raf.getChannel()) {
+            long size = create ? SEGMENT_BYTES : Math.max(ch.size(), Math.min(SEGMENT_BYTES, HEADER));
+            if (ch.size() < size) raf.setLength(size);
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // ---------- READER ----------
+
+    // Every record from fromSeq on, oldest first. Events appended while
+    // reading are included up to the point the reader gets to.
+    static Reader reader(File dir, long fromSeq) {
+        return new Reader(dir, fromSeq);
+    }
+
+    static final class Record {
+        final long seq;
+        final AlertEvent event;
+
+        Record(long seq, AlertEvent event) {
+            this.seq = seq;
+            this.event = event;
+        }
+    }
+
+    static final class Reader implements Closeable {
+
+        private final File dir;
+        private final long fromSeq;
+        private long[] seqs;
+        private int index = -1;
+        private DataInputStream in;
+        private long seq;
+        private final CRC32 crc = new CRC32();
+
+        private Reader(File dir, long fromSeq) {
+            this.dir = dir;
+            this.fromSeq = fromSeq;
+            this.seqs = segments(dir);
+            // start in the last segment beginning at or before fromSeq
+            while (index + 1 < seqs.length && seqs[index + 1] <= fromSeq) index++;
+            if (index < 0) index = 0;
+            index--;
+        }
+
+        // Next record, or null at the end of the log.
+        Record next() throws IOException {
+            while (true) {
+                if (in == null && !openNext()) return null;
+                Record r = read();
+                if (r == null) {
+                    closeSegment();
+                    continue;
+                }
+                if (r.seq >= fromSeq) return r;
+            }
+        }
+
+        private boolean openNext() throws IOException {
+            while (++index < seqs.length) {
+                File f = segmentFile(dir, seqs[index]);
+                DataInputStream s;
+                try {
+                    s = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+                } catch (IOException e) {
+                    continue; // dropped by retention meanwhile
+                }
+                byte[] magic = new byte[MAGIC.length];
+                try {
+                    s.readFully(magic);
+                    if (!Arrays.equals(magic, MAGIC)) {
+                        s.close();
+                        continue;
+                    }
+                    seq = s.readLong();
+                } catch (EOFException e) {
+                    s.close();
+                    continue;
+                }
+                in = s;
+                return true;
+            }
+            return false;
+        }
+
+        // null at the segment's end (zero fill, EOF or a record not yet complete)
+        private Record read() throws IOException {
+            try {
+                int len = in.readInt();
+                if (len <= 0 || len > SEGMENT_BYTES) return null;
+                byte[] body = new byte[len];
+                in.readFully(body);
+                int stored = in.readInt();
+                crc.reset();
+                crc.update(body);
+                if (stored != (int) crc.getValue()) return null;
+                return new Record(seq++, decode(body));
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private void closeSegment() throws IOException {
+            if (in != null) in.close();
+            in = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeSegment();
+            index = seqs.length;
+        }
+    }
+
+    // Payload length of the intact record at position at of a segment, or -1
+    // at its end (zero fill, a torn record or one not yet complete).
+    static int recordLength(ByteBuffer seg, int at, CRC32 crc) {
+        if (at + 4 > seg.capacity()) return -1;
+        int len = seg.getInt(at);
+        if (len <= 0 || at + 8L + len > seg.capacity()) return -1;
+        crc.reset();
+        crc.update(seg.slice(at + 4, len));
+        return seg.getInt(at + 4 + len) == (int) crc.getValue() ? len : -1;
+    }
+
+    // The event of the record at position at (checked by recordLength before)
+    static AlertEvent readRecord(ByteBuffer seg, int at) throws IOException {
+        byte[] body = new byte[seg.getInt(at)];
+        seg.get(at + 4, body);
+        return decode(body);
+    }
+
+    private static AlertEvent decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long time = BaselineFormat.readVarint(in);
+        int code = in.readUnsignedByte();
+        if (code >= TYPE_CODES.length) throw new IOException("Unknown event type " + code);
+        AlertEvent.Type type = TYPE_CODES[code];
+        int flags = in.readUnsignedByte();
+        int count = 1;
+        long span = 0;
+        if ((flags & F_COUNT) != 0) {
+            count = (int) BaselineFormat.readVarint(in);
+            span = BaselineFormat.readVarint(in);
+        }
+        String root = readString(in);
+        String path = readString(in);
+        String oldPath = (flags & F_OLD) != 0 ? readString(in) : null;
+        String detail = (flags & F_DETAIL) != 0 ? readString(in) : null;
+        String abs = root + path;
+        return AlertEvent.restore(type, path, oldPath, abs, (flags & F_DIR) != 0, Instant.ofEpochMilli(time),
+                detail, count, Instant.ofEpochMilli(time - span));
+    }
+
+    // ---------- HELPERS ----------
+
+    static int typeCode(AlertEvent.Type t) {
+        int code = CODE_OF[t.ordinal()];
+        if (code < 0) throw new IllegalStateException("No stored code for " + t);
+        return code;
+    }
+
+    // First sequence numbers of the segments in dir, ascending
+    static long[] segments(File dir) {
+        String[] names = dir.list((d, n) -> n.endsWith(SUFFIX));
+        if (names == null) return new long[0];
+        List<Long> out = new ArrayList<>();
+        for (String n : names) {
+            try {
+                out.add(Long.parseLong(n.substring(0, n.length() - SUFFIX.length())));
+            } catch (NumberFormatException ignored) {}
+        }
+        return out.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    static File segmentFile(File dir, long seq) {
+        return new File(dir, String.format("%020d", seq) + SUFFIX);
+    }
+
+    // The root folder the event's path is relative to
+    private static String rootOf(AlertEvent e) {
+        String abs = e.absolutePath;
+        if (abs == null || abs.length() < e.path.length()) return "";
+        return abs.substring(0, abs.length() - e.path.length());
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        BaselineFormat.writeVarint(out, b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[(int) BaselineFormat.readVarint(in)];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.File;
+import java.nio.file.Files;
+
+// Usage: java EventLogBench [events] [rounds] [dir]
+// Publishes alert events on AlertBus and times them until the event log has
+// appended and forced them, then reads them back and checks the count.
+public final class EventLogBench {
+
+    private EventLogBench() {}
+
+    public static void main(String[] args) throws Exception {
+
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File dir;
+        boolean temp = args.length <= 2;
+        if (temp) {
+            dir = Files.createTempDirectory("fim-eventlog-bench").toFile();
+        } else {
+            dir = new File(args[2]);
+        }
+        System.out.println("Log: " + dir + " (" + events + " events per round)");
+
+        // warm-up (JIT, segment preallocation)
+        run(dir, Math.min(events, 100_000));
+
+        double best = 0;
+        for (int i = 0; i < rounds; i++) {
+            best = Math.max(best, run(dir, events));
+        }
+        System.out.printf("publish to disk: %.0f events/s%n", best);
+
+        if (temp) delete(dir);
+    }
+
+    // Events per second from the first publish until close() has forced the
+    // last record.
+    private static double run(File dir, int events) throws Exception {
+
+        EventLog log = EventLog.open(dir);
+        long first = log.nextSeq();
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            String rel = "dir" + (i % 50) + "/file" + i + ".txt";
+            AlertBus.publish(AlertEvent.of(
+                    i % 3 == 0 ? AlertEvent.Type.MODIFIED : AlertEvent.Type.NEW_FILE,
+                    rel,
+                    null,
+                    "/data/root/" + rel,
+                    false,
+                    i % 7 == 0 ? "hash changed" : null
+            ));
+        }
+        log.close();
+        long ns = System.nanoTime() - t0;
+
+        long read = 0;
+        try (EventLog.Reader r = EventLog.reader(dir, first)) {
+            while (r.next() != null) read++;
+        }
+        if (read != events) {
+            throw new IllegalStateException("Appended " + events + " events, read back " + read);
+        }
+        return events / (ns / 1e9);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) delete(c);
+        }
+        f.delete();
+    }
+}
@@ -9,13 +9,22 @@ import java.util.Locale;
 public class EventTableModel extends AbstractTableModel {
 
     private static final String[] COLUMNS = {"Time", "Type", "File Path"};
-    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss")
-            .withLocale(Locale.US)
-            .withZone(ZoneId.systemDefault());
+    private final DateTimeFormatter timeFmt;
 
     private final List<AlertEvent> events = Collections.synchronizedList(new ArrayList<>());
     private static final int MAX_EVENTS = 1000;
 
+    public EventTableModel() {
+        this("HH:mm:ss");
+    }
+
+    // History results span days, so they show the date as well
+    public EventTableModel(String timePattern) {
+        this.timeFmt = DateTimeFormatter.ofPattern(timePattern)
+                .withLocale(Locale.US)
+                .withZone(ZoneId.systemDefault());
+    }
+
     public void addEvent(AlertEvent event) {
         events.add(0, event); // Add to top
         if (events.size() > MAX_EVENTS) {
@@ -24,6 +33,30 @@ public class EventTableModel extends AbstractTableModel {
         fireTableRowsInserted(0, 0);
     }
 
+    // A dispatch batch in one table update; the newest event ends up on top.
+    public void addEvents(List<AlertEvent> batch) {
+        if (batch.isEmpty()) return;
+        int n = Math.min(batch.size(), MAX_EVENTS);
+        List<AlertEvent> newest = new ArrayList<>(batch.subList(batch.size() - n, batch.size()));
+        Collections.reverse(newest);
+        synchronized (events) {
+            events.addAll(0, newest);
+            if (events.size() > MAX_EVENTS) {
+                events.subList(MAX_EVENTS, events.size()).clear();
+            }
+        }
+        fireTableRowsInserted(0, n - 1);
+    }
+
+    // Replaces the rows, in the given order (query results).
+    public void setEvents(List<AlertEvent> list) {
+        synchronized (events) {
+            events.clear();
+            events.addAll(list.subList(0, Math.min(list.size(), MAX_EVENTS)));
+        }
+        fireTableDataChanged();
+    }
+
     public void clear() {
         events.clear();
         fireTableDataChanged();
@@ -53,8 +86,8 @@ public class EventTableModel extends AbstractTableModel {
     public Object getValueAt(int rowIndex, int columnIndex) {
         AlertEvent e = events.get(rowIndex);
         switch (columnIndex) {
-            case 0: return TIME_FMT.format(e.timestamp);
-            case 1: return e.type;
+            case 0: return timeFmt.format(e.timestamp);
+            case 1: return e.count > 1 ? e.type + " x" + e.count : e.type;
             case 2: return e.path;
             default: return "";
         }
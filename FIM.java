@@ -2,13 +2,25 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.security.MessageDigest;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class FIM {
 
-    static String rootPath;
-    static final String DIR_HASH = "DIR";
-    static final String UNREADABLE_HASH = "UNREADABLE";
+    static final Digest DIR_HASH = Digest.DIR;
+    static final Digest UNREADABLE_HASH = Digest.UNREADABLE;
+
+    // "full" (load baseline + scan, then compare), "streaming" (sorted
+    // merge-join) or "incremental" (only hash files whose metadata changed)
+    static final String CHECK_MODE =
+            System.getenv().getOrDefault("FIM_CHECK_MODE", "full").trim().toLowerCase();
+
+    // Every Nth incremental check hashes everything anyway (0 = never)
+    static final int PARANOID_EVERY = Env.getInt("FIM_PARANOID_EVERY", 10, 0);
+
+    // Events printed by an event history query (the total is always shown)
+    static final int HISTORY_LIMIT = Env.getInt("FIM_HISTORY_LIMIT", 500, 0);
 
     // ---------- MAIN ----------
 
@@ -16,15 +28,28 @@ public class FIM {
 
         Scanner sc = new Scanner(System.in);
 
+        // Several folders (separated by File.pathSeparator) can be monitored
+        // together; the other options use the first one.
         System.out.print("Enter folder path: ");
         String folderPath = sc.nextLine();
 
-        File folder = new File(folderPath);
-        if (!folder.exists() || !folder.isDirectory()) {
+        List<File> folders = new ArrayList<>();
+        for (String part : folderPath.split(java.util.regex.Pattern.quote(File.pathSeparator))) {
+            if (part.isBlank()) continue;
+            File f = new File(part.trim());
+            if (!f.exists() || !f.isDirectory()) {
+                AppLog.error("Invalid folder path: " + part);
+                return;
+            }
+            folders.add(f);
+        }
+        if (folders.isEmpty()) {
             AppLog.error("Invalid folder path: " + folderPath);
             return;
         }
+        File folder = folders.get(0);
 
+        String rootPath;
         try {
             rootPath = folder.getCanonicalPath();
         } catch (IOException e) {
@@ -36,13 +61,15 @@ public class FIM {
         AppLog.info("2. Check Integrity");
         AppLog.info("3. Start Real-Time Monitoring");
         AppLog.info("4. Update Baseline");
+        AppLog.info("5. Convert Legacy Baseline");
+        AppLog.info("6. Query Event History");
         System.out.print("Choose option: ");
 
         int choice;
         try {
             choice = Integer.parseInt(sc.nextLine());
         } catch (Exception e) {
-            AppLog.error("Invalid choice. Please enter 1-4.");
+            AppLog.error("Invalid choice. Please enter 1-6.");
             return;
         }
 
@@ -54,30 +81,54 @@ public class FIM {
                 }
                 case 2 -> checkIntegrity(folder);
                 case 3 -> {
-                    if (!getBaselineFile().exists()) {
-                        AppLog.warn("[!] Baseline not found. Creating baseline first...");
-                        createBaseline(folder);
-                        AppLog.info("[+] Baseline created successfully.");
+                    for (File f : folders) {
+                        if (!getBaselineFile(f.getCanonicalPath()).exists()) {
+                            AppLog.warn("[!] Baseline not found for " + f + ". Creating baseline first...");
+                            createBaseline(f);
+                            AppLog.info("[+] Baseline created successfully.");
+                        }
                     }
                     EmailNotifier notifier = EmailNotifier.startDefault();
                     Runtime.getRuntime().addShutdownHook(new Thread(notifier::stop));
-                    Monitor.start(folder.toPath());
+                    monitorAll(folders);
                     notifier.stop();
                 }
                 case 4 -> {
                     createBaseline(folder);
                     AppLog.info("\n[+] Baseline updated successfully.");
                 }
-                default -> AppLog.error("Invalid choice. Please enter 1-4.");
+                case 5 -> convertBaseline(rootPath);
+                case 6 -> queryHistory(sc, rootPath);
+                default -> AppLog.error("Invalid choice. Please enter 1-6.");
             }
         } catch (Exception e) {
             AppLog.error("Operation failed: " + e.getMessage());
         }
     }
 
+    // All roots share one event loop; returns once every root has stopped.
+    static void monitorAll(List<File> folders) throws Exception {
+
+        if (folders.size() == 1) {
+            Monitor.start(folders.get(0).toPath());
+            return;
+        }
+
+        List<Monitor> monitors = new ArrayList<>();
+        try {
+            for (File f : folders) monitors.add(Monitor.open(f.toPath()));
+        } catch (Exception e) {
+            for (Monitor m : monitors) m.close();
+            throw e;
+        }
+        for (Monitor m : monitors) m.await(0);
+    }
+
     // ---------- BASELINE FILE (SECURE LOCATION) ----------
 
-    static File getBaselineFile() {
+    // Every file of a root is named after its canonical path, so any number
+    // of roots can be baselined and monitored side by side.
+    static File getBaselineFile(String rootPath) {
 
         File dir = new File(System.getProperty("user.home"), ".fim");
         if (!dir.exists()) dir.mkdirs();
@@ -89,168 +140,302 @@ public class FIM {
         return new File(dir, name);
     }
 
-    // ---------- BASELINE CREATION ----------
+    static File getBaselineIndexFile(String rootPath) {
+        File baseline = getBaselineFile(rootPath);
+        String name = baseline.getName().replaceFirst("\\.db$", ".idx");
+        return new File(baseline.getParentFile(), name);
+    }
 
-    static void createBaseline(File folder) throws Exception {
+    static File getBlockHashFile(String rootPath) {
+        File baseline = getBaselineFile(rootPath);
+        String name = baseline.getName().replaceFirst("\\.db$", ".blk");
+        return new File(baseline.getParentFile(), name);
+    }
 
-        Map<String, FileMeta> map = new HashMap<>();
-        scanFolder(folder, map);
+    static File getStateCheckpointFile(String rootPath) {
+        File baseline = getBaselineFile(rootPath);
+        String name = baseline.getName().replaceFirst("\\.db$", ".ckpt");
+        return new File(baseline.getParentFile(), name);
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(getBaselineFile()))) {
-            for (Map.Entry<String, FileMeta> e : map.entrySet()) {
-                FileMeta m = e.getValue();
-                bw.write(e.getKey() + "|" + m.size + "|" + m.lastModified + "|" + m.hash);
-                bw.newLine();
-            }
-        }
+    static File getStateJournalFile(String rootPath) {
+        File baseline = getBaselineFile(rootPath);
+        String name = baseline.getName().replaceFirst("\\.db$", ".wal");
+        return new File(baseline.getParentFile(), name);
     }
 
-    // ---------- INTEGRITY CHECK ----------
+    // Which folders of the running monitors are event-watched and which are
+    // polled (written only while some folder is polled)
+    static File getCoverageReportFile() {
+        File dir = new File(System.getProperty("user.home"), ".fim");
+        if (!dir.exists()) dir.mkdirs();
+        return new File(dir, "watch_coverage.txt");
+    }
 
-    static void checkIntegrity(File folder) throws Exception {
+    // Segments of the durable alert event log (all roots)
+    static File getEventLogDir() {
+        return new File(new File(System.getProperty("user.home"), ".fim"), "events");
+    }
 
-        Map<String, FileMeta> oldData = loadBaseline();
-        Map<String, FileMeta> newData = new HashMap<>();
+    // ---------- EVENT HISTORY ----------
 
-        scanFolder(folder, newData);
+    // Kept for the session: sealed segment indexes stay mapped and the live
+    // segment's heap index only catches up on new records between queries.
+    private static EventHistory history;
 
-        boolean changesFound = false;
+    private static synchronized EventHistory history() {
+        if (history == null) history = EventHistory.open(getEventLogDir());
+        return history;
+    }
 
-        for (String path : oldData.keySet()) {
-            if (!newData.containsKey(path)) {
-                FileMeta o = oldData.get(path);
-                if (DIR_HASH.equals(o.hash)) {
-                    AppLog.info("[DELETED FOLDER] " + path);
-                } else {
-                    AppLog.info("[DELETED FILE] " + path);
-                }
-                changesFound = true;
-            } else {
-                FileMeta o = oldData.get(path);
-                FileMeta n = newData.get(path);
-
-                if (DIR_HASH.equals(o.hash)) {
-                    if (!DIR_HASH.equals(n.hash)) {
-                        AppLog.info("[TYPE CHANGED] " + path);
-                        changesFound = true;
-                    }
-                    continue;
-                }
+    // Asks for a path prefix, types and a time range and prints the matching
+    // events of the event log, oldest first. A relative prefix (or none) is
+    // taken under the chosen folder.
+    static void queryHistory(Scanner sc, String rootPath) throws IOException {
+        System.out.print("Path prefix (blank = whole folder): ");
+        String prefix = sc.nextLine().trim();
+        System.out.print("Types, e.g. MODIFIED,DELETED (blank = all): ");
+        String types = sc.nextLine();
+        System.out.print("From, e.g. 2026-01-31 02:00 or 02:00 (blank = oldest): ");
+        String from = sc.nextLine();
+        System.out.print("To (blank = now): ");
+        String to = sc.nextLine();
+
+        if (!new File(prefix).isAbsolute()) prefix = rootPath + File.separator + prefix;
+        EventHistory.Query q = new EventHistory.Query()
+                .prefix(prefix)
+                .types(EventHistory.parseTypes(types))
+                .between(from.isBlank() ? Long.MIN_VALUE : EventHistory.parseTime(from),
+                        to.isBlank() ? Long.MAX_VALUE : EventHistory.parseTime(to))
+                .limit(HISTORY_LIMIT);
+
+        EventHistory.Result r = history().query(q);
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .withZone(ZoneId.systemDefault());
+        for (EventLog.Record rec : r.records) {
+            AlertEvent e = rec.event;
+            AppLog.info(fmt.format(e.timestamp) + "  " + e.type + (e.count > 1 ? " x" + e.count : "")
+                    + "  " + (e.oldPath != null ? e.oldPath + " -> " : "") + e.path
+                    + (e.detail != null ? "  (" + e.detail + ")" : ""));
+        }
+        AppLog.info("\n[+] " + r.matched + " matching events"
+                + (r.matched > r.records.size() ? " (first " + r.records.size() + " shown)" : "")
+                + ", " + r.searched + " searched in " + r.elapsedMs + " ms.");
+    }
 
-                if (DIR_HASH.equals(n.hash)) {
-                    AppLog.info("[TYPE CHANGED] " + path);
-                    changesFound = true;
-                    continue;
-                }
+    // ---------- BASELINE CREATION ----------
 
-                if (UNREADABLE_HASH.equals(n.hash)) {
-                    AppLog.warn("[SKIPPED] " + path + " (unreadable)");
-                    changesFound = true;
-                    continue;
-                }
+    static void createBaseline(File folder) throws Exception {
+
+        String rootPath = folder.getCanonicalPath();
+        Map<String, FileMeta> map = new HashMap<>();
+        ParallelScanner.Stats stats = new ParallelScanner.Stats(BlockHashes.MIN_BYTES > 0);
+        ParallelScanner.scan(folder, Paths.get(rootPath), map::get, map, stats);
 
-                if (o.size != n.size ||
-                        o.lastModified != n.lastModified ||
-                        !o.hash.equals(n.hash)) {
+        BaselineFormat.write(getBaselineFile(rootPath), map);
+        BaselineIndex.build(getBaselineFile(rootPath), getBaselineIndexFile(rootPath));
 
-                    AppLog.info("[MODIFIED] " + path);
-                    changesFound = true;
-                }
-            }
+        File blocks = getBlockHashFile(rootPath);
+        if (stats.blockTrees != null) {
+            BlockHashes.write(blocks, stats.blockTrees);
+        } else {
+            Files.deleteIfExists(blocks.toPath());
         }
+    }
 
-        for (String path : newData.keySet()) {
-            if (!oldData.containsKey(path)) {
-                FileMeta n = newData.get(path);
-                if (DIR_HASH.equals(n.hash)) {
-                    AppLog.info("[NEW FOLDER] " + path);
-                } else {
-                    AppLog.info("[NEW FILE] " + path);
-                }
-                changesFound = true;
+    // ---------- INTEGRITY CHECK ----------
+
+    static void checkIntegrity(File folder) throws Exception {
+
+        String rootPath = folder.getCanonicalPath();
+        if ("streaming".equals(CHECK_MODE)) {
+            File baseline = getBaselineFile(rootPath);
+            if (!baseline.exists()) {
+                throw new FileNotFoundException("Baseline not found. Create baseline first.");
             }
+            StreamingCheck.run(folder, Paths.get(rootPath), baseline);
+            return;
+        }
+
+        Map<String, FileMeta> oldData = loadBaseline(rootPath);
+        Map<String, FileMeta> newData = new HashMap<>();
+
+        boolean incremental = "incremental".equals(CHECK_MODE);
+        boolean paranoid = incremental && paranoidRunDue(rootPath);
+        if (paranoid) {
+            AppLog.info("[+] Paranoid run: hashing every file.");
         }
 
+        ParallelScanner.Stats stats = new ParallelScanner.Stats();
+        ParallelScanner.scan(
+                folder,
+                Paths.get(rootPath),
+                incremental && !paranoid ? oldData::get : path -> null,
+                newData,
+                stats
+        );
+
+        boolean changesFound = compareTrees(oldData, newData);
+
         if (!changesFound) {
             AppLog.info("[OK] No changes detected.");
         }
 
+        if (incremental) {
+            backfillStat(rootPath, oldData, newData);
+            AppLog.info("[+] Hashed " + stats.hashed.sum() + " of " + stats.files.sum()
+                    + " files (" + stats.trusted() + " verified by metadata).");
+        }
+
         AppLog.info("\nIntegrity check completed.");
     }
 
-    // ---------- SCAN ----------
+    // Baselines written before inode/ctime were recorded load with both 0, so
+    // incremental checks could never trust those files by metadata. The first
+    // incremental check (which opted into the fast path) gives unchanged files
+    // the values just read from disk and rewrites the baseline once; changed
+    // files keep their entry until the baseline is updated. Full and streaming
+    // checks never write the baseline.
+    private static void backfillStat(String rootPath, Map<String, FileMeta> oldData,
+                                     Map<String, FileMeta> newData) throws IOException {
+
+        File baseline = getBaselineFile(rootPath);
+        if (!BaselineFormat.isBinary(baseline)) return;
+
+        int filled = 0;
+        for (Map.Entry<String, FileMeta> e : oldData.entrySet()) {
+            FileMeta o = e.getValue();
+            if (o.inode != 0 || o.ctime != 0 || o.hash == null || !o.hash.isFile()) continue;
+
+            FileMeta cur = newData.get(e.getKey());
+            if (cur == null || cur.inode == 0 && cur.ctime == 0) continue;
+            if (cur.size != o.size || cur.lastModified != o.lastModified || !o.hash.equals(cur.hash)) continue;
+
+            e.setValue(new FileMeta(o.size, o.lastModified, o.hash, cur.inode, cur.ctime));
+            filled++;
+        }
+        if (filled == 0) return;
 
-    static void scanFolder(File folder, Map<String, FileMeta> map) throws Exception {
+        BaselineFormat.write(baseline, oldData);
+        BaselineIndex.build(baseline, getBaselineIndexFile(rootPath));
+        AppLog.info("[+] Baseline: inode/ctime recorded for " + filled + " files.");
+    }
 
-        File[] files = folder.listFiles();
-        if (files == null) return;
+    // Merge-joins both sides in PATH_ORDER, so changes are reported in path
+    // order.
+    private static boolean compareTrees(Map<String, FileMeta> oldData, Map<String, FileMeta> newData) {
 
-        Path root = Paths.get(rootPath);
+        List<String> oldPaths = new ArrayList<>(oldData.keySet());
+        List<String> newPaths = new ArrayList<>(newData.keySet());
+        oldPaths.sort(BaselineFormat.PATH_ORDER);
+        newPaths.sort(BaselineFormat.PATH_ORDER);
+
+        boolean changesFound = false;
+        int i = 0;
+        int j = 0;
 
-        for (File file : files) {
+        while (i < oldPaths.size() || j < newPaths.size()) {
 
-            if (Files.isSymbolicLink(file.toPath())) continue;
+            String oldPath = i < oldPaths.size() ? oldPaths.get(i) : null;
+            String newPath = j < newPaths.size() ? newPaths.get(j) : null;
+            int cmp = oldPath == null ? 1
+                    : newPath == null ? -1
+                    : BaselineFormat.PATH_ORDER.compare(oldPath, newPath);
 
-            Path filePath;
-            try {
-                filePath = file.getCanonicalFile().toPath();
-            } catch (IOException e) {
+            if (cmp < 0) {
+                if (DIR_HASH.equals(oldData.get(oldPath).hash)) {
+                    AppLog.info("[DELETED FOLDER] " + oldPath);
+                } else {
+                    AppLog.info("[DELETED FILE] " + oldPath);
+                }
+                changesFound = true;
+                i++;
                 continue;
             }
 
-            if (!filePath.startsWith(root)) continue;
+            if (cmp > 0) {
+                if (DIR_HASH.equals(newData.get(newPath).hash)) {
+                    AppLog.info("[NEW FOLDER] " + newPath);
+                } else {
+                    AppLog.info("[NEW FILE] " + newPath);
+                }
+                changesFound = true;
+                j++;
+                continue;
+            }
 
-            String relativePath = root.relativize(filePath)
-                    .toString()
-                    .replace(File.separatorChar, '/');
+            String path = oldPath;
+            i++;
+            j++;
 
-            if (file.isDirectory()) {
-                if (!relativePath.isEmpty()) {
-                    map.put(relativePath, new FileMeta(0, 0, DIR_HASH));
+            FileMeta o = oldData.get(path);
+            FileMeta n = newData.get(path);
+
+            if (DIR_HASH.equals(o.hash)) {
+                if (!DIR_HASH.equals(n.hash)) {
+                    AppLog.info("[TYPE CHANGED] " + path);
+                    changesFound = true;
                 }
-                scanFolder(file, map);
                 continue;
             }
 
-            long size = file.length();
-            long lastModified = file.lastModified();
-
-            FileMeta old = map.get(relativePath);
-            if (old != null &&
-                    old.size == size &&
-                    old.lastModified == lastModified) {
+            if (DIR_HASH.equals(n.hash)) {
+                AppLog.info("[TYPE CHANGED] " + path);
+                changesFound = true;
                 continue;
             }
 
-            String hash;
-            try {
-                hash = getFileHash(file);
-            } catch (Exception e) {
-                hash = UNREADABLE_HASH;
+            if (UNREADABLE_HASH.equals(n.hash)) {
+                AppLog.warn("[SKIPPED] " + path + " (unreadable)");
+                changesFound = true;
+                continue;
             }
 
-            map.put(relativePath, new FileMeta(size, lastModified, hash));
+            if (o.size != n.size ||
+                    o.lastModified != n.lastModified ||
+                    !o.hash.equals(n.hash)) {
+
+                AppLog.info("[MODIFIED] " + path);
+                changesFound = true;
+            }
         }
+        return changesFound;
     }
 
-    // ---------- HASH ----------
+    // Counts incremental runs per root; returns true (and resets) every Nth run.
+    private static boolean paranoidRunDue(String rootPath) {
 
-    static String getFileHash(File file) throws Exception {
+        if (PARANOID_EVERY <= 0) return false;
 
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        File baseline = getBaselineFile(rootPath);
+        File state = new File(baseline.getParentFile(),
+                baseline.getName().replaceFirst("\\.db$", ".runs"));
 
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buffer = new byte[4096];
-            int n;
-            while ((n = fis.read(buffer)) != -1) {
-                digest.update(buffer, 0, n);
-            }
+        int runs = 0;
+        try {
+            runs = Integer.parseInt(Files.readString(state.toPath()).trim());
+        } catch (Exception ignored) {}
+
+        runs++;
+        boolean due = runs >= PARANOID_EVERY;
+        try {
+            Files.writeString(state.toPath(), String.valueOf(due ? 0 : runs));
+        } catch (IOException e) {
+            AppLog.warn("[!] Could not record check run count: " + e.getMessage());
         }
+        return due;
+    }
+
+    // ---------- SCAN ----------
 
-        byte[] hash = digest.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hash) sb.append(String.format("%02x", b));
-        return sb.toString();
+    static void scanFolder(File folder, Map<String, FileMeta> map) throws Exception {
+        ParallelScanner.scan(folder, Paths.get(folder.getCanonicalPath()), map);
+    }
+
+    // ---------- HASH ----------
+
+    static Digest getFileHash(File file) throws Exception {
+        return HashEngine.hash(file);
     }
 
     private static String hashString(String input) {
@@ -267,46 +452,55 @@ public class FIM {
 
     // ---------- LOAD BASELINE ----------
 
-    static Map<String, FileMeta> loadBaseline() throws Exception {
+    static Map<String, FileMeta> loadBaseline(String rootPath) throws Exception {
 
-        File baseline = getBaselineFile();
+        File baseline = getBaselineFile(rootPath);
         if (!baseline.exists()) {
             throw new FileNotFoundException("Baseline not found. Create baseline first.");
         }
 
-        Map<String, FileMeta> map = new HashMap<>();
+        if (BaselineFormat.isBinary(baseline)) {
+            return BaselineFormat.readAll(baseline);
+        }
+        return BaselineFormat.readLegacy(baseline);
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(baseline))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-
-                String[] p = line.split("\\|");
-                if (p.length != 4) continue;
-
-                try {
-                    map.put(p[0],
-                            new FileMeta(
-                                    Long.parseLong(p[1]),
-                                    Long.parseLong(p[2]),
-                                    p[3]
-                            ));
-                } catch (Exception ignored) {}
-            }
+    // ---------- LEGACY CONVERSION ----------
+
+    static void convertBaseline(String rootPath) throws Exception {
+
+        File baseline = getBaselineFile(rootPath);
+        if (!baseline.exists()) {
+            throw new FileNotFoundException("Baseline not found. Create baseline first.");
+        }
+
+        if (BaselineFormat.convertLegacy(baseline)) {
+            AppLog.info("[+] Baseline converted to binary format.");
+        } else {
+            AppLog.info("[OK] Baseline is already in binary format.");
         }
-        return map;
     }
 
     // ---------- MONITOR COMPATIBILITY ----------
 
-    public static Map<String, String> loadBaselineForMonitor() throws Exception {
+    // Serves the baseline from the mapped on-disk index instead of loading it
+    // on heap. The index is (re)built when missing or older than the baseline.
+    public static BaselineIndex openBaselineIndex(String rootPath) throws Exception {
 
-        Map<String, FileMeta> metaMap = loadBaseline();
-        Map<String, String> simpleMap = new HashMap<>();
+        File baseline = getBaselineFile(rootPath);
+        if (!baseline.exists()) {
+            throw new FileNotFoundException("Baseline not found. Create baseline first.");
+        }
 
-        for (Map.Entry<String, FileMeta> e : metaMap.entrySet()) {
-            simpleMap.put(e.getKey(), e.getValue().hash);
+        if (BaselineFormat.convertLegacy(baseline)) {
+            AppLog.info("[+] Legacy baseline converted to binary format.");
         }
-        return simpleMap;
+
+        File index = getBaselineIndexFile(rootPath);
+        if (!BaselineIndex.isCurrent(baseline, index)) {
+            BaselineIndex.build(baseline, index);
+        }
+        return BaselineIndex.open(index);
     }
 
     // ---------- META CLASS ----------
@@ -314,12 +508,20 @@ public class FIM {
     static class FileMeta {
         long size;
         long lastModified;
-        String hash;
+        Digest hash;
+        long inode;
+        long ctime;
+
+        FileMeta(long s, long lm, Digest h) {
+            this(s, lm, h, 0, 0);
+        }
 
-        FileMeta(long s, long lm, String h) {
+        FileMeta(long s, long lm, Digest h, long ino, long ct) {
             size = s;
             lastModified = lm;
             hash = h;
+            inode = ino;
+            ctime = ct;
         }
     }
 }
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// One stat call per file. inode/ctime are 0 where the platform has no "unix"
+// attribute view (e.g. Windows); the metadata fast path degrades to size +
+// mtime there.
+public final class FileStat {
+
+    private static final boolean UNIX =
+            FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    final long size;
+    final long lastModified;
+    final long inode;
+    final long ctime; // nanoseconds
+
+    private FileStat(long size, long lastModified, long inode, long ctime) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.inode = inode;
+        this.ctime = ctime;
+    }
+
+    static FileStat read(Path path) throws IOException {
+        if (UNIX) {
+            Map<String, Object> a = Files.readAttributes(
+                    path,
+                    "unix:size,lastModifiedTime,ino,ctime",
+                    LinkOption.NOFOLLOW_LINKS
+            );
+            return new FileStat(
+                    (Long) a.get("size"),
+                    ((FileTime) a.get("lastModifiedTime")).toMillis(),
+                    (Long) a.get("ino"),
+                    ((FileTime) a.get("ctime")).to(TimeUnit.NANOSECONDS)
+            );
+        }
+        BasicFileAttributes a = Files.readAttributes(
+                path,
+                BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS
+        );
+        return new FileStat(a.size(), a.lastModifiedTime().toMillis(), 0, 0);
+    }
+
+    // Attributes for changedMillis: kind, mtime and (where there is one) ctime.
+    static final String CHANGE_ATTRIBUTES = UNIX
+            ? "unix:isDirectory,isSymbolicLink,lastModifiedTime,ctime"
+            : "isDirectory,isSymbolicLink,lastModifiedTime";
+
+    // Last change of an entry read with CHANGE_ATTRIBUTES, in ms. ctime also
+    // moves when a file is renamed in, chmod-ed or written with an old mtime
+    // (touch -d, tar -x, rsync -t), all of which leave mtime behind.
+    static long changedMillis(Map<String, Object> a) {
+        long m = ((FileTime) a.get("lastModifiedTime")).toMillis();
+        Object c = a.get("ctime");
+        return c == null ? m : Math.max(m, ((FileTime) c).toMillis());
+    }
+
+    // Entries from legacy (v1 or text) baselines carry no inode/ctime (both
+    // 0). Where this platform does report them that is "unknown", not a
+    // match: the file is hashed once and its entry picks up the real values.
+    boolean matches(FIM.FileMeta m) {
+        if (m.size != size || m.lastModified != lastModified) return false;
+        return m.inode == inode && m.ctime == ctime;
+    }
+}
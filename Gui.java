@@ -4,6 +4,7 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.util.List;
 
 public class Gui {
 
@@ -28,6 +29,7 @@ public class Gui {
         ModernButton startMonitoring = new ModernButton("Start Monitoring");
         ModernButton stopMonitoring = new ModernButton("Stop Monitoring");
         stopMonitoring.setEnabled(false);
+        ModernButton history = new ModernButton("Event History");
 
         JCheckBox emailEnabled = new JCheckBox("Email Enabled");
         JTextField batchSec = new JTextField(5);
@@ -87,6 +89,38 @@ public class Gui {
         JScrollPane scroll = new JScrollPane(table);
         scroll.setPreferredSize(new Dimension(800, 300)); // Adjusted height
 
+        // Event History dialog: queries the event log, results oldest first
+        EventTableModel historyModel = new EventTableModel("yyyy-MM-dd HH:mm:ss");
+        JTable historyTable = new JTable(historyModel);
+        historyTable.setFillsViewportHeight(true);
+        historyTable.setRowHeight(26);
+        JTextField historyPrefix = new JTextField(16);
+        JTextField historyTypes = new JTextField(12);
+        JTextField historyFrom = new JTextField(12);
+        JTextField historyTo = new JTextField(12);
+        ModernButton historySearch = new ModernButton("Search");
+        JLabel historySummary = new JLabel("Prefix is relative to the folder above; times as 2026-01-31 02:00 or 02:00.");
+        historySummary.setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
+
+        JPanel historyQuery = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
+        historyQuery.add(new JLabel("Path prefix:"));
+        historyQuery.add(historyPrefix);
+        historyQuery.add(new JLabel("Types:"));
+        historyQuery.add(historyTypes);
+        historyQuery.add(new JLabel("From:"));
+        historyQuery.add(historyFrom);
+        historyQuery.add(new JLabel("To:"));
+        historyQuery.add(historyTo);
+        historyQuery.add(historySearch);
+
+        JScrollPane historyScroll = new JScrollPane(historyTable);
+        historyScroll.setPreferredSize(new Dimension(900, 400));
+        JDialog historyDialog = new JDialog(frame, "Event History", false);
+        historyDialog.add(historyQuery, BorderLayout.NORTH);
+        historyDialog.add(historyScroll, BorderLayout.CENTER);
+        historyDialog.add(historySummary, BorderLayout.SOUTH);
+        historyDialog.pack();
+
         // --- LAYOUT ---
 
         // Top Bar
@@ -103,6 +137,7 @@ public class Gui {
         actions.add(checkIntegrity);
         actions.add(startMonitoring);
         actions.add(stopMonitoring);
+        actions.add(history);
 
         // Email Settings Bar
         JPanel emailPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
@@ -169,14 +204,24 @@ public class Gui {
                 return result[0];
             }
 
+            @Override
+            public boolean confirmStopAll(int roots) {
+                if (SwingUtilities.isEventDispatchThread()) {
+                    return confirmStopAllOnEdt(frame, roots);
+                }
+                final boolean[] result = new boolean[1];
+                try {
+                    SwingUtilities.invokeAndWait(() -> result[0] = confirmStopAllOnEdt(frame, roots));
+                } catch (Exception e) {
+                    return false;
+                }
+                return result[0];
+            }
+
             @Override
             public void setMonitoringState(boolean running) {
-                runOnEdt(() -> {
-                    startMonitoring.setEnabled(!running);
-                    stopMonitoring.setEnabled(running);
-                    browse.setEnabled(!running);
-                    pathField.setEnabled(!running);
-                });
+                // further roots can be added while others are monitored
+                runOnEdt(() -> stopMonitoring.setEnabled(running));
             }
 
             @Override
@@ -190,8 +235,16 @@ public class Gui {
             }
 
             @Override
-            public void addEvent(AlertEvent event) {
-                runOnEdt(() -> model.addEvent(event));
+            public void addEvents(List<AlertEvent> events) {
+                runOnEdt(() -> model.addEvents(events));
+            }
+
+            @Override
+            public void showHistory(List<AlertEvent> events, String summary) {
+                runOnEdt(() -> {
+                    historyModel.setEvents(events);
+                    historySummary.setText(summary);
+                });
             }
         });
 
@@ -217,7 +270,13 @@ public class Gui {
         createBaseline.addActionListener(e -> controller.createBaseline(pathField.getText()));
         checkIntegrity.addActionListener(e -> controller.checkIntegrity(pathField.getText()));
         startMonitoring.addActionListener(e -> controller.startMonitoring(pathField.getText()));
-        stopMonitoring.addActionListener(e -> controller.stopMonitoring());
+        stopMonitoring.addActionListener(e -> controller.stopMonitoring(pathField.getText()));
+        history.addActionListener(e -> {
+            historyDialog.setLocationRelativeTo(frame);
+            historyDialog.setVisible(true);
+        });
+        historySearch.addActionListener(e -> controller.queryHistory(pathField.getText(),
+                historyPrefix.getText(), historyTypes.getText(), historyFrom.getText(), historyTo.getText()));
 
         emailEnabled.addActionListener(e -> controller.setEmailEnabled(emailEnabled.isSelected()));
 
@@ -254,6 +313,17 @@ public class Gui {
         return result == JOptionPane.YES_OPTION;
     }
 
+    private static boolean confirmStopAllOnEdt(JFrame frame, int roots) {
+        int result = JOptionPane.showConfirmDialog(
+                frame,
+                "The folder field does not name a monitored folder.\n\nStop monitoring all "
+                        + roots + (roots == 1 ? " folder?" : " folders?"),
+                "Stop Monitoring",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+        return result == JOptionPane.YES_OPTION;
+    }
+
     private static void applyEmailSettings(
             GuiController controller,
             JTextField batchSec,
@@ -1,5 +1,8 @@
 import java.io.File;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public final class GuiController {
@@ -8,16 +11,22 @@ public final class GuiController {
         void showError(String message);
         void showInfo(String message);
         boolean confirmBaselineCreate(File folder);
+        boolean confirmStopAll(int roots);
         void setMonitoringState(boolean running);
         void setMonitorStatus(String text);
         void setEmailStatus(String text);
-        void addEvent(AlertEvent event);
+        void addEvents(List<AlertEvent> events);
+        void showHistory(List<AlertEvent> events, String summary);
     }
 
+    // Rows of one history query (the table keeps no more)
+    private static final int HISTORY_ROWS = 1000;
+
     private final View view;
     private final MonitorSession session;
     private final GuiConfig guiConfig;
     private final EmailService emailService;
+    private final EventHistory history = EventHistory.open(FIM.getEventLogDir());
     private boolean emailDesiredEnabled;
 
     public GuiController(View view) {
@@ -37,8 +46,9 @@ public final class GuiController {
         view.setMonitorStatus("Monitor: Stopped");
         view.setEmailStatus("Email: " + (emailDesiredEnabled ? "Enabled" : "Disabled"));
 
-        // Subscribe to live events
-        AlertBus.register(event -> view.addEvent(event));
+        // Subscribe to live events: one EDT hop per batch, and repeats of
+        // the same change to a path collapse while the table is behind
+        AlertBus.register("gui", AlertBus.Policy.COALESCE, AlertBus.DEFAULT_CAPACITY, view::addEvents);
     }
 
     public void shutdown() {
@@ -51,7 +61,6 @@ public final class GuiController {
         if (folder == null) return;
         new Thread(() -> {
             try {
-                FIM.rootPath = folder.getCanonicalPath();
                 FIM.createBaseline(folder);
                 AppLog.info("[+] Baseline created successfully.");
             } catch (Exception ex) {
@@ -65,7 +74,6 @@ public final class GuiController {
         if (folder == null) return;
         new Thread(() -> {
             try {
-                FIM.rootPath = folder.getCanonicalPath();
                 FIM.checkIntegrity(folder);
             } catch (Exception ex) {
                 view.showError("Integrity check failed: " + ex.getMessage());
@@ -73,20 +81,19 @@ public final class GuiController {
         }, "fim-integrity").start();
     }
 
+    // Adds a root; roots already being monitored keep running.
     public void startMonitoring(String pathText) {
-        if (session.isRunning()) {
-            view.showInfo("Monitoring is already running.");
-            return;
-        }
-
         File folder = validateFolder(pathText);
         if (folder == null) return;
 
+        if (session.isRunning(folder.toPath())) {
+            view.showInfo("This folder is already being monitored.");
+            return;
+        }
+
         new Thread(() -> {
             try {
-                FIM.rootPath = folder.getCanonicalPath();
-
-                if (!FIM.getBaselineFile().exists()) {
+                if (!FIM.getBaselineFile(folder.getCanonicalPath()).exists()) {
                     if (!view.confirmBaselineCreate(folder)) {
                         return;
                     }
@@ -97,40 +104,88 @@ public final class GuiController {
                 boolean started = session.start(
                         Paths.get(folder.getAbsolutePath()),
                         ex -> view.showError("Monitor failed: " + ex.getMessage()),
-                        () -> view.setMonitoringState(false)
+                        this::monitorsChanged
                 );
 
                 if (started) {
-                    refreshEmailEnabled();
-                    view.setMonitoringState(true);
-                    view.setMonitorStatus("Monitor: Running");
+                    monitorsChanged();
                 } else {
                     refreshEmailEnabled();
-                    view.showInfo("Monitoring is already running.");
+                    view.showInfo("This folder is already being monitored.");
                 }
             } catch (Exception ex) {
                 view.showError("Monitor failed: " + ex.getMessage());
-                view.setMonitoringState(false);
-                refreshEmailEnabled();
+                monitorsChanged();
             }
         }, "fim-gui-monitor").start();
     }
 
-    public void stopMonitoring() {
+    // Stops the root in pathText. Any other path (or none) stops every root,
+    // once the user has confirmed that.
+    public void stopMonitoring(String pathText) {
         if (!session.isRunning()) {
             view.showInfo("Monitoring is not running.");
             return;
         }
+
+        Path only = null;
+        File folder = new File(pathText.trim());
+        if (!pathText.isBlank() && folder.isDirectory() && session.isRunning(folder.toPath())) {
+            only = folder.toPath();
+        }
+        if (only == null && !view.confirmStopAll(session.rootCount())) {
+            return;
+        }
+
         AppLog.warn("[!] Stop requested.");
-        boolean stopped = session.stopAndWait(TimeUnit.SECONDS.toMillis(2));
-        refreshEmailEnabled();
+        boolean stopped = session.stopAndWait(only, TimeUnit.SECONDS.toMillis(2));
+        monitorsChanged();
         if (!stopped) {
             view.showError("Monitor did not stop within timeout.");
-        } else {
-            view.setMonitorStatus("Monitor: Stopped");
         }
     }
 
+    // Events of the event log under prefix (relative to the folder in
+    // pathText unless absolute), of the given types, between from and to.
+    public void queryHistory(String pathText, String prefix, String types, String from, String to) {
+        new Thread(() -> {
+            try {
+                String p = prefix.trim();
+                if (!new File(p).isAbsolute()) {
+                    File folder = validateFolder(pathText);
+                    if (folder == null) return;
+                    p = folder.getCanonicalPath() + File.separator + p;
+                }
+                EventHistory.Query q = new EventHistory.Query()
+                        .prefix(p)
+                        .types(EventHistory.parseTypes(types))
+                        .between(from.isBlank() ? Long.MIN_VALUE : EventHistory.parseTime(from),
+                                to.isBlank() ? Long.MAX_VALUE : EventHistory.parseTime(to))
+                        .limit(HISTORY_ROWS);
+                EventHistory.Result r = history.query(q);
+
+                List<AlertEvent> events = new ArrayList<>(r.records.size());
+                for (EventLog.Record rec : r.records) events.add(rec.event);
+                view.showHistory(events, r.matched + " matching events"
+                        + (r.matched > events.size() ? " (first " + events.size() + " shown)" : "")
+                        + ", " + r.searched + " searched in " + r.elapsedMs + " ms");
+            } catch (IllegalArgumentException ex) {
+                view.showError(ex.getMessage());
+            } catch (Exception ex) {
+                view.showError("History query failed: " + ex.getMessage());
+            }
+        }, "fim-history").start();
+    }
+
+    private void monitorsChanged() {
+        refreshEmailEnabled();
+        int roots = session.rootCount();
+        view.setMonitoringState(roots > 0);
+        view.setMonitorStatus(roots == 0 ? "Monitor: Stopped"
+                : roots == 1 ? "Monitor: Running"
+                : "Monitor: Running (" + roots + " roots)");
+    }
+
     public void setEmailEnabled(boolean enabled) {
         emailDesiredEnabled = enabled;
         refreshEmailEnabled();
@@ -0,0 +1,89 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Random;
+
+// Usage: java HashBench [sizeMB] [rounds] [file]
+// Compares the legacy 4 KB stream loop with HashEngine on the same file.
+public final class HashBench {
+
+    private HashBench() {}
+
+    public static void main(String[] args) throws Exception {
+
+        long sizeMb = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File file;
+        boolean temp = args.length <= 2;
+        if (temp) {
+            file = File.createTempFile("fim-bench", ".bin");
+            file.deleteOnExit();
+            fill(file, sizeMb * 1024 * 1024);
+        } else {
+            file = new File(args[2]);
+        }
+
+        long bytes = file.length();
+        System.out.println("File: " + file + " (" + (bytes / (1024 * 1024)) + " MB)");
+        System.out.println("mmap threshold: " + HashEngine.MMAP_THRESHOLD + " bytes");
+
+        // warm-up both paths once (page cache + JIT)
+        byte[] expected = legacyHash(file);
+        if (!Digest.of(expected).equals(HashEngine.hash(file))) {
+            throw new IllegalStateException("HashEngine digest differs from legacy digest");
+        }
+
+        double legacy = 0;
+        double engine = 0;
+        for (int i = 0; i < rounds; i++) {
+            legacy = Math.max(legacy, measure(bytes, () -> legacyHash(file)));
+            engine = Math.max(engine, measure(bytes, () -> HashEngine.hash(file)));
+        }
+
+        System.out.printf("legacy stream : %.2f GB/s%n", legacy);
+        System.out.printf("HashEngine    : %.2f GB/s%n", engine);
+        System.out.printf("speedup       : %.2fx%n", engine / legacy);
+
+        if (temp) file.delete();
+    }
+
+    private interface HashCall {
+        Object run() throws Exception;
+    }
+
+    private static double measure(long bytes, HashCall call) throws Exception {
+        long t0 = System.nanoTime();
+        call.run();
+        long ns = System.nanoTime() - t0;
+        return (bytes / 1e9) / (ns / 1e9);
+    }
+
+    private static byte[] legacyHash(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = fis.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void fill(File file, long size) throws IOException {
+        Random rnd = new Random(42);
+        byte[] chunk = new byte[8 * 1024 * 1024];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long written = 0;
+            while (written < size) {
+                rnd.nextBytes(chunk);
+                int n = (int) Math.min(chunk.length, size - written);
+                raf.write(chunk, 0, n);
+                written += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class HashEngine {
+
+    private static final int BUFFER_SIZE = Env.getInt("FIM_HASH_BUFFER", 1024 * 1024, 1);
+    private static final long MAP_REGION = 128L * 1024 * 1024;
+
+    // Files at or above this size are hashed through mapped regions. Mapped files
+    // stay locked on Windows until the mapping is collected, so mmap is off there.
+    static final long MMAP_THRESHOLD = Env.getLong(
+            "FIM_MMAP_THRESHOLD",
+            isWindows() ? Long.MAX_VALUE : 64L * 1024 * 1024,
+            1
+    );
+
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            ThreadLocal.withInitial(HashEngine::newDigest);
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private static final ThreadLocal<byte[]> OUT =
+            ThreadLocal.withInitial(() -> new byte[Digest.LENGTH]);
+
+    private HashEngine() {}
+
+    // ---------- HASH ----------
+
+    static Digest hash(File file) throws IOException {
+        return hash(file.toPath());
+    }
+
+    static Digest hash(Path path) throws IOException {
+
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size >= MMAP_THRESHOLD) {
+                try {
+                    hashMapped(ch, size, digest);
+                } catch (InternalError truncated) {
+                    // the file shrank under the mapping (SIGBUS on the next
+                    // page); hash what is there now through plain reads
+                    digest.reset();
+                    ch.position(0);
+                    hashChannel(ch, digest);
+                }
+            } else {
+                hashChannel(ch, digest);
+            }
+        }
+
+        byte[] out = OUT.get();
+        try {
+            digest.digest(out, 0, out.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        return Digest.of(out);
+    }
+
+    private static void hashChannel(FileChannel ch, MessageDigest digest) throws IOException {
+        ByteBuffer buf = BUFFER.get();
+        buf.clear();
+        while (ch.read(buf) != -1) {
+            buf.flip();
+            digest.update(buf);
+            buf.clear();
+        }
+    }
+
+    private static void hashMapped(FileChannel ch, long size, MessageDigest digest) throws IOException {
+        long pos = 0;
+        while (pos < size) {
+            long len = Math.min(MAP_REGION, size - pos);
+            MappedByteBuffer region = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            digest.update(region);
+            pos += len;
+        }
+    }
+
+    // ---------- HELPERS ----------
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name", "").toLowerCase().contains("win");
+    }
+}
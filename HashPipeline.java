@@ -0,0 +1,202 @@
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Hashes settled modifies off the watch loop. Every job carries a per-path
+// generation; the loop drains finished jobs and applies only the newest one
+// per path, so a hash that completes after a later event on the same path is
+// dropped instead of overwriting fresher state. Each monitored root has its
+// own pipeline; all of them feed one pool owned by MonitorHub.
+public final class HashPipeline {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    static final int THREADS = Env.getInt("FIM_MODIFY_THREADS", Math.min(4, CORES), 1);
+    static final int QUEUE = Env.getInt("FIM_MODIFY_QUEUE", 1024, 1);
+    // Smaller files are hashed on the caller: a handoff costs more than the hash
+    static final long INLINE_BYTES = Env.getLong("FIM_MODIFY_INLINE_BYTES", 1024 * 1024, 0);
+
+    private static final long BACKLOG_WARN_MS = 10_000;
+
+    private final ThreadPoolExecutor pool;
+
+    // relPath -> generation of its newest job (loop thread only)
+    private final Map<String, Long> latest = new HashMap<>();
+    private final Queue<Result> done = new ConcurrentLinkedQueue<>();
+    private long generation;
+    private long lastBacklogWarn;
+    private boolean closed;
+
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    HashPipeline(ThreadPoolExecutor pool) {
+        this.pool = pool;
+    }
+
+    static ThreadPoolExecutor newPool() {
+        return new ThreadPoolExecutor(
+                THREADS,
+                THREADS,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE),
+                ParallelScanner.namedThreads("fim-modify"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    // ---------- SUBMIT ----------
+
+    // prev is the block tree of the version runtimeState holds (or null).
+    // Returns false when the queue is full; the caller retries on a later pass.
+    boolean submit(String relPath, File file, BlockHashes.Tree prev, long settledAt) {
+
+        Job job = new Job(relPath, file, prev, ++generation, settledAt);
+
+        if (file.length() < INLINE_BYTES) {
+            done.add(run(job));
+        } else {
+            try {
+                pool.execute(() -> done.add(run(job)));
+            } catch (RejectedExecutionException e) {
+                long now = System.currentTimeMillis();
+                if (now - lastBacklogWarn >= BACKLOG_WARN_MS) {
+                    lastBacklogWarn = now;
+                    AppLog.warn("[!] Modify hashing backlog: " + queueDepth()
+                            + " queued, " + latest.size() + " in flight.");
+                }
+                return false;
+            }
+        }
+
+        latest.put(relPath, job.generation);
+        return true;
+    }
+
+    // A newer event on relPath makes any running hash of it stale.
+    void invalidate(String relPath) {
+        latest.remove(relPath);
+    }
+
+    // Hands every current result to apply, dropping superseded ones.
+    void drain(Consumer<Result> apply) {
+        Result r;
+        while ((r = done.poll()) != null) {
+            Long current = latest.get(r.job.relPath);
+            if (current == null || current != r.job.generation) {
+                stale.increment();
+                continue;
+            }
+            latest.remove(r.job.relPath);
+            apply.accept(r);
+        }
+    }
+
+    boolean busy() {
+        return !latest.isEmpty();
+    }
+
+    // Results still in flight are dropped; the shared pool keeps running.
+    // true only for the first call.
+    synchronized boolean close() {
+        if (closed) return false;
+        closed = true;
+        return true;
+    }
+
+    // ---------- WORKER ----------
+
+    // Stat before hashing: if the file changes mid-hash its ctime moves on,
+    // so the (stat, digest) pair is never trusted wrongly later.
+    private Result run(Job job) {
+        Result r = new Result(job);
+        try {
+            r.stat = FileStat.read(job.file.toPath());
+            if (BlockHashes.tracks(r.stat.size)) {
+                r.blocks = BlockHashes.update(job.prevTree, job.file.toPath());
+                r.hash = r.blocks.tree.fileHash();
+            } else {
+                r.hash = FIM.getFileHash(job.file);
+            }
+        } catch (Exception e) {
+            r.hash = null;
+        }
+
+        long nanos = System.nanoTime() - job.queuedAt;
+        hashed.increment();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        return r;
+    }
+
+    // ---------- STATS ----------
+
+    int queueDepth() {
+        return pool.getQueue().size();
+    }
+
+    long hashed() {
+        return hashed.sum();
+    }
+
+    long staleDropped() {
+        return stale.sum();
+    }
+
+    // Submit-to-result latency, queue wait included
+    double meanLatencyMs() {
+        long n = hashed.sum();
+        return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+    }
+
+    double maxLatencyMs() {
+        return maxNanos.get() / 1e6;
+    }
+
+    String summary() {
+        return hashed() + " files hashed, mean " + String.format("%.1f", meanLatencyMs())
+                + " ms, max " + String.format("%.1f", maxLatencyMs()) + " ms, "
+                + staleDropped() + " stale results dropped";
+    }
+
+    // ---------- TYPES ----------
+
+    static final class Job {
+        final String relPath;
+        final File file;
+        final BlockHashes.Tree prevTree;
+        final long generation;
+        final long settledAt; // wall clock when the modify was considered stable
+        final long queuedAt = System.nanoTime();
+
+        Job(String relPath, File file, BlockHashes.Tree prevTree, long generation, long settledAt) {
+            this.relPath = relPath;
+            this.file = file;
+            this.prevTree = prevTree;
+            this.generation = generation;
+            this.settledAt = settledAt;
+        }
+    }
+
+    static final class Result {
+        final Job job;
+        FileStat stat;
+        Digest hash;               // null if the file could not be read
+        BlockHashes.Result blocks; // set for block-tracked files
+
+        Result(Job job) {
+            this.job = job;
+        }
+    }
+}
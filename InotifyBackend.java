@@ -0,0 +1,462 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Linux inotify read directly through the FFM API (java.lang.foreign, JDK 22+).
+// Compared to WatchService it reports IN_CLOSE_WRITE, so a modify can be
+// hashed as soon as the writer closes the file, and pairs IN_MOVED_FROM /
+// IN_MOVED_TO by cookie, so renames are exact. The FFM classes are bound
+// reflectively: the project still builds and runs on JDK 17, where open()
+// returns null and Monitor stays on WatchService.
+public final class InotifyBackend implements WatchBackend {
+
+    private static final int IN_MODIFY = 0x2;
+    private static final int IN_ATTRIB = 0x4;
+    private static final int IN_CLOSE_WRITE = 0x8;
+    private static final int IN_MOVED_FROM = 0x40;
+    private static final int IN_MOVED_TO = 0x80;
+    private static final int IN_CREATE = 0x100;
+    private static final int IN_DELETE = 0x200;
+    private static final int IN_Q_OVERFLOW = 0x4000;
+    private static final int IN_IGNORED = 0x8000;
+    private static final int IN_ONLYDIR = 0x01000000;
+    private static final int IN_DONT_FOLLOW = 0x02000000;
+    private static final int IN_EXCL_UNLINK = 0x04000000;
+
+    private static final int WATCH_MASK = IN_CREATE | IN_DELETE | IN_MODIFY | IN_ATTRIB
+            | IN_CLOSE_WRITE | IN_MOVED_FROM | IN_MOVED_TO
+            | IN_ONLYDIR | IN_DONT_FOLLOW | IN_EXCL_UNLINK;
+
+    private static final int O_NONBLOCK = 0x800;
+    private static final int O_CLOEXEC = 0x80000;
+    private static final short POLLIN = 1;
+
+    private static final int EVENT_HEADER = 16; // wd, mask, cookie, len
+    private static final int PATH_MAX = 4096;
+
+    // Read buffer; the kernel queue itself is bounded by fs.inotify.max_queued_events
+    private static final int BUFFER = Env.getInt("FIM_INOTIFY_BUFFER", 256 * 1024, 1);
+
+    // How long an unpaired IN_MOVED_FROM waits for its IN_MOVED_TO
+    private static final int MOVE_PAIR_MS = 20;
+
+    private final Native lib;
+    private final int fd;
+    private final int wakeFd;
+
+    private final Object bufSeg;
+    private final ByteBuffer buf;
+    private final Object pollSeg;
+    private final ByteBuffer pollFds;
+    private final Object pathSeg;
+    private final ByteBuffer pathBuf;
+    private final Object wakeSeg;
+    private final Object drainSeg;
+
+    private final Map<Integer, Path> wdDir = new HashMap<>();
+    private final Map<Path, Integer> dirWd = new HashMap<>();
+
+    // cookie -> source of an IN_MOVED_FROM still waiting for its partner
+    // (only the last event of a read is carried over to the next one)
+    private final Map<Integer, HeldMove> heldMoves = new LinkedHashMap<>();
+
+    private boolean polling;
+    private boolean closed;
+    private boolean released;
+
+    // null when not on Linux or when the FFM API is missing (JDK < 22)
+    static InotifyBackend open() throws Throwable {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux")) return null;
+        if (Runtime.version().feature() < 22) return null;
+        return new InotifyBackend(new Native());
+    }
+
+    private InotifyBackend(Native lib) throws Throwable {
+        this.lib = lib;
+
+        fd = (int) lib.inotifyInit1.invokeWithArguments(O_NONBLOCK | O_CLOEXEC);
+        if (fd < 0) throw new IOException("inotify_init1 failed");
+        wakeFd = (int) lib.eventfd.invokeWithArguments(0, O_NONBLOCK | O_CLOEXEC);
+        if (wakeFd < 0) {
+            lib.close.invokeWithArguments(fd);
+            throw new IOException("eventfd failed");
+        }
+
+        bufSeg = lib.allocate(BUFFER);
+        buf = lib.buffer(bufSeg);
+        pathSeg = lib.allocate(PATH_MAX + 1);
+        pathBuf = lib.buffer(pathSeg);
+        wakeSeg = lib.allocate(8);
+        lib.buffer(wakeSeg).putLong(0, 1);
+        drainSeg = lib.allocate(8);
+
+        // struct pollfd { int fd; short events; short revents; } x 2
+        pollSeg = lib.allocate(16);
+        pollFds = lib.buffer(pollSeg);
+        pollFds.putInt(0, fd).putShort(4, POLLIN);
+        pollFds.putInt(8, wakeFd).putShort(12, POLLIN);
+    }
+
+    // ---------- REGISTRATION ----------
+
+    @Override
+    public synchronized void register(Path dir) throws IOException {
+        if (closed) throw new IOException("inotify backend closed");
+
+        byte[] b = dir.toString().getBytes(StandardCharsets.UTF_8);
+        if (b.length > PATH_MAX) throw new IOException("Path too long: " + dir);
+        pathBuf.clear();
+        pathBuf.put(b).put((byte) 0);
+
+        int wd;
+        try {
+            wd = (int) lib.addWatch.invokeWithArguments(fd, pathSeg, WATCH_MASK);
+        } catch (Throwable e) {
+            throw new IOException("inotify_add_watch failed: " + dir, e);
+        }
+        if (wd < 0) throw new IOException("inotify_add_watch failed: " + dir);
+
+        // the same inode keeps its wd; drop a stale path for it
+        Path previous = wdDir.put(wd, dir);
+        if (previous != null && !previous.equals(dir)) dirWd.remove(previous);
+        dirWd.put(dir, wd);
+    }
+
+    @Override
+    public synchronized void moved(Path from, Path to) {
+        List<Map.Entry<Integer, Path>> rebased = new ArrayList<>();
+        for (Map.Entry<Integer, Path> e : wdDir.entrySet()) {
+            if (e.getValue().startsWith(from)) rebased.add(e);
+        }
+        for (Map.Entry<Integer, Path> e : rebased) {
+            Path now = to.resolve(from.relativize(e.getValue()));
+            dirWd.remove(e.getValue());
+            dirWd.put(now, e.getKey());
+            e.setValue(now);
+        }
+    }
+
+    // Watches of a deleted folder are dropped by the kernel (IN_IGNORED);
+    // this covers folders moved out of the tree, which keep reporting.
+    @Override
+    public synchronized void forget(Path dir) {
+        List<Integer> gone = new ArrayList<>();
+        for (Map.Entry<Integer, Path> e : wdDir.entrySet()) {
+            if (e.getValue().startsWith(dir)) gone.add(e.getKey());
+        }
+        for (Integer wd : gone) {
+            dirWd.remove(wdDir.remove(wd));
+            try {
+                lib.rmWatch.invokeWithArguments(fd, wd.intValue());
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    @Override
+    public synchronized void unregister(Path dir) {
+        Integer wd = dirWd.remove(dir);
+        if (wd == null) return;
+        wdDir.remove(wd);
+        try {
+            lib.rmWatch.invokeWithArguments(fd, wd.intValue());
+        } catch (Throwable ignored) {}
+    }
+
+    // ---------- EVENTS ----------
+
+    @Override
+    public List<Event> poll(long timeoutMs) throws InterruptedException {
+
+        synchronized (this) {
+            if (closed) {
+                release();
+                return null;
+            }
+            polling = true;
+        }
+
+        List<Event> events = new ArrayList<>();
+        try {
+            int timeout = (int) Math.min(timeoutMs, Integer.MAX_VALUE);
+            if (!heldMoves.isEmpty()) timeout = Math.min(timeout, MOVE_PAIR_MS);
+
+            pollFds.putShort(6, (short) 0).putShort(14, (short) 0);
+            int ready = (int) lib.poll.invokeWithArguments(pollSeg, 2L, timeout);
+
+            synchronized (this) {
+                polling = false;
+                if (closed) {
+                    release();
+                    return null;
+                }
+                if (ready > 0 && (pollFds.getShort(6) & POLLIN) != 0) {
+                    long n = (long) lib.read.invokeWithArguments(fd, bufSeg, (long) BUFFER);
+                    if (n > 0) parse((int) n, events);
+                }
+                if (ready > 0 && (pollFds.getShort(14) & POLLIN) != 0) {
+                    // reset the eventfd counter after a wakeup()
+                    lib.read.invokeWithArguments(wakeFd, drainSeg, 8L);
+                }
+                expireHeldMoves(events);
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                polling = false;
+                if (closed) {
+                    release();
+                    return null;
+                }
+            }
+            throw new IllegalStateException("inotify read failed", e);
+        }
+
+        if (Thread.interrupted()) throw new InterruptedException();
+        return events;
+    }
+
+    private void parse(int n, List<Event> events) {
+
+        Integer lastHeld = null;
+        int off = 0;
+        while (off + EVENT_HEADER <= n) {
+            int wd = buf.getInt(off);
+            int mask = buf.getInt(off + 4);
+            int cookie = buf.getInt(off + 8);
+            int len = buf.getInt(off + 12);
+            String name = len == 0 ? null : readName(off + EVENT_HEADER, len);
+            off += EVENT_HEADER + len;
+            lastHeld = null;
+
+            if ((mask & IN_Q_OVERFLOW) != 0) {
+                events.add(new Event(Kind.OVERFLOW, null, null));
+                continue;
+            }
+
+            Path dir = wdDir.get(wd);
+            if ((mask & IN_IGNORED) != 0) {
+                if (dir != null) {
+                    wdDir.remove(wd);
+                    if (Integer.valueOf(wd).equals(dirWd.get(dir))) dirWd.remove(dir);
+                }
+                continue;
+            }
+            if (dir == null || name == null) continue;
+
+            Path path = dir.resolve(name);
+            HeldMove paired = (mask & IN_MOVED_TO) != 0 ? heldMoves.remove(cookie) : null;
+            // an unpaired move-out is a delete that happened before this event
+            flushHeld(path, events);
+
+            if ((mask & IN_CREATE) != 0) {
+                events.add(new Event(Kind.CREATE, path, null));
+            } else if ((mask & IN_DELETE) != 0) {
+                events.add(new Event(Kind.DELETE, path, null));
+            } else if ((mask & IN_MOVED_FROM) != 0) {
+                heldMoves.put(cookie, new HeldMove(path));
+                lastHeld = cookie;
+            } else if ((mask & IN_MOVED_TO) != 0) {
+                events.add(paired == null
+                        ? new Event(Kind.CREATE, path, null)   // moved in from outside
+                        : new Event(Kind.MOVE, path, paired.path));
+            } else if ((mask & IN_CLOSE_WRITE) != 0) {
+                events.add(new Event(Kind.CLOSE_WRITE, path, null));
+            } else if ((mask & (IN_MODIFY | IN_ATTRIB)) != 0) {
+                events.add(new Event(Kind.MODIFY, path, null));
+            }
+        }
+
+        // the kernel queues both halves of a move together: only a move-out
+        // that ended the read can still find its partner in the next one
+        Iterator<Map.Entry<Integer, HeldMove>> it = heldMoves.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, HeldMove> h = it.next();
+            if (h.getKey().equals(lastHeld)) continue;
+            events.add(new Event(Kind.DELETE, h.getValue().path, null));
+            it.remove();
+        }
+    }
+
+    // Held move-outs of path or a folder above it go out as deletes first,
+    // so `mv d /elsewhere && mkdir d` reads DELETE d, CREATE d.
+    private void flushHeld(Path path, List<Event> events) {
+        Iterator<HeldMove> it = heldMoves.values().iterator();
+        while (it.hasNext()) {
+            HeldMove h = it.next();
+            if (path.startsWith(h.path)) {
+                events.add(new Event(Kind.DELETE, h.path, null));
+                it.remove();
+            }
+        }
+    }
+
+    // An IN_MOVED_FROM that stayed unpaired through one more read moved out
+    // of the watched tree: report it as a delete.
+    private void expireHeldMoves(List<Event> events) {
+        Iterator<HeldMove> it = heldMoves.values().iterator();
+        while (it.hasNext()) {
+            HeldMove h = it.next();
+            if (h.waited) {
+                events.add(new Event(Kind.DELETE, h.path, null));
+                it.remove();
+            } else {
+                h.waited = true;
+            }
+        }
+    }
+
+    private String readName(int start, int len) {
+        int end = start;
+        while (end < start + len && buf.get(end) != 0) end++;
+        byte[] b = new byte[end - start];
+        buf.get(start, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String name() {
+        return "inotify";
+    }
+
+    @Override
+    public synchronized void wakeup() {
+        if (closed) return;
+        signal();
+    }
+
+    // Safe from any thread: a blocked poll is woken through the eventfd.
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (!polling) {
+                release();
+                return;
+            }
+        }
+        signal();
+    }
+
+    private void signal() {
+        try {
+            lib.write.invokeWithArguments(wakeFd, wakeSeg, 8L);
+        } catch (Throwable ignored) {}
+    }
+
+    private void release() {
+        if (released) return;
+        released = true;
+        try {
+            lib.close.invokeWithArguments(fd);
+            lib.close.invokeWithArguments(wakeFd);
+        } catch (Throwable ignored) {}
+        lib.closeArena();
+    }
+
+    private static final class HeldMove {
+        final Path path;
+        boolean waited;
+
+        HeldMove(Path path) {
+            this.path = path;
+        }
+    }
+
+    // ---------- NATIVE ----------
+
+    // libc entry points and a shared arena, bound without compiling against
+    // java.lang.foreign.
+    private static final class Native {
+
+        final MethodHandle inotifyInit1;
+        final MethodHandle addWatch;
+        final MethodHandle rmWatch;
+        final MethodHandle eventfd;
+        final MethodHandle poll;
+        final MethodHandle read;
+        final MethodHandle write;
+        final MethodHandle close;
+
+        private final Object linker;
+        private final Object lookup;
+        private final Method find;
+        private final Method describe;
+        private final Method downcall;
+        private final Class<?> layoutClass;
+        private final Object noOptions;
+
+        private final Object arena;
+        private final Method allocate;
+        private final Method asByteBuffer;
+
+        Native() throws Throwable {
+            Class<?> linkerC = Class.forName("java.lang.foreign.Linker");
+            Class<?> lookupC = Class.forName("java.lang.foreign.SymbolLookup");
+            Class<?> descC = Class.forName("java.lang.foreign.FunctionDescriptor");
+            Class<?> segC = Class.forName("java.lang.foreign.MemorySegment");
+            Class<?> valueC = Class.forName("java.lang.foreign.ValueLayout");
+            Class<?> optionC = Class.forName("java.lang.foreign.Linker$Option");
+            Class<?> arenaC = Class.forName("java.lang.foreign.Arena");
+            layoutClass = Class.forName("java.lang.foreign.MemoryLayout");
+
+            linker = linkerC.getMethod("nativeLinker").invoke(null);
+            lookup = linkerC.getMethod("defaultLookup").invoke(linker);
+            find = lookupC.getMethod("find", String.class);
+            describe = descC.getMethod("of", layoutClass, layoutClass.arrayType());
+            downcall = linkerC.getMethod("downcallHandle", segC, descC, optionC.arrayType());
+            noOptions = Array.newInstance(optionC, 0);
+
+            Object i32 = valueC.getField("JAVA_INT").get(null);
+            Object i64 = valueC.getField("JAVA_LONG").get(null);
+            Object ptr = valueC.getField("ADDRESS").get(null);
+
+            inotifyInit1 = bind("inotify_init1", i32, i32);
+            addWatch = bind("inotify_add_watch", i32, i32, ptr, i32);
+            rmWatch = bind("inotify_rm_watch", i32, i32, i32);
+            eventfd = bind("eventfd", i32, i32, i32);
+            poll = bind("poll", i32, ptr, i64, i32);
+            read = bind("read", i64, i32, ptr, i64);
+            write = bind("write", i64, i32, ptr, i64);
+            close = bind("close", i32, i32);
+
+            arena = arenaC.getMethod("ofShared").invoke(null);
+            allocate = arenaC.getMethod("allocate", long.class, long.class);
+            asByteBuffer = segC.getMethod("asByteBuffer");
+        }
+
+        private MethodHandle bind(String symbol, Object result, Object... args) throws Throwable {
+            Object layouts = Array.newInstance(layoutClass, args.length);
+            for (int i = 0; i < args.length; i++) Array.set(layouts, i, args[i]);
+            Object descriptor = describe.invoke(null, result, layouts);
+            Object address = ((Optional<?>) find.invoke(lookup, symbol))
+                    .orElseThrow(() -> new IOException("Symbol not found: " + symbol));
+            return (MethodHandle) downcall.invoke(linker, address, descriptor, noOptions);
+        }
+
+        Object allocate(long bytes) throws Throwable {
+            return allocate.invoke(arena, bytes, 8L);
+        }
+
+        ByteBuffer buffer(Object segment) throws Throwable {
+            return ((ByteBuffer) asByteBuffer.invoke(segment)).order(ByteOrder.nativeOrder());
+        }
+
+        void closeArena() {
+            try {
+                ((AutoCloseable) arena).close();
+            } catch (Exception ignored) {}
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Portable backend over the JDK WatchService. No close-write or move
+// events: Monitor debounces modifies and pairs renames by digest.
+// WatchService cannot be woken, so a pump thread takes keys and hands their
+// events over a queue that wakeup() can also post to.
+public final class JdkWatchBackend implements WatchBackend {
+
+    // Batches the pump may run ahead of the loop; past that, keys stay
+    // signalled in the WatchService and overflow there as before
+    private static final int PUMP_BATCHES = 256;
+
+    private static final List<Event> WAKE = new ArrayList<>(0);
+    private static final List<Event> CLOSED = new ArrayList<>(0);
+
+    private final WatchService watchService;
+
+    // WatchKey → Directory, and back
+    private final Map<WatchKey, Path> keyDirMap = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> dirKeyMap = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<List<Event>> ready = new LinkedBlockingQueue<>(PUMP_BATCHES);
+    private volatile boolean closed;
+
+    JdkWatchBackend() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Thread pump = new Thread(this::pump, "fim-watch");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    @Override
+    public void register(Path dir) throws IOException {
+        WatchKey key = dir.register(
+                watchService,
+                ENTRY_CREATE,
+                ENTRY_DELETE,
+                ENTRY_MODIFY
+        );
+        Path previous = keyDirMap.put(key, dir);
+        if (previous != null && !previous.equals(dir)) dirKeyMap.remove(previous, key);
+        dirKeyMap.put(dir, key);
+    }
+
+    // Keys under dir are cancelled; a deleted folder's key is already invalid.
+    @Override
+    public void forget(Path dir) {
+        keyDirMap.entrySet().removeIf(e -> {
+            if (!e.getValue().startsWith(dir)) return false;
+            e.getKey().cancel();
+            dirKeyMap.remove(e.getValue(), e.getKey());
+            return true;
+        });
+    }
+
+    @Override
+    public void unregister(Path dir) {
+        WatchKey key = dirKeyMap.remove(dir);
+        if (key == null) return;
+        key.cancel();
+        keyDirMap.remove(key, dir);
+    }
+
+    @Override
+    public List<Event> poll(long timeoutMs) throws InterruptedException {
+
+        if (closed) return null;
+        List<Event> batch = ready.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (batch == CLOSED || closed) return null;
+
+        List<Event> events = new ArrayList<>();
+        while (batch != null) {
+            if (batch == CLOSED) {
+                ready.offer(CLOSED);
+                break;
+            }
+            events.addAll(batch);
+            batch = ready.poll();
+        }
+        return events;
+    }
+
+    @Override
+    public void wakeup() {
+        ready.offer(WAKE);
+    }
+
+    private void pump() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                List<Event> events = drain(key);
+                if (!events.isEmpty()) ready.put(events);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        } finally {
+            closed = true;
+            ready.clear();
+            ready.offer(CLOSED);
+        }
+    }
+
+    private List<Event> drain(WatchKey key) {
+
+        List<Event> events = new ArrayList<>();
+        Path dir = keyDirMap.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            // lost events of an unknown folder are reported against the root
+            if (event.kind() == OVERFLOW) {
+                events.add(new Event(Kind.OVERFLOW, dir, null));
+                continue;
+            }
+            if (dir == null) continue;
+
+            Path path = dir.resolve((Path) event.context());
+            Kind kind = event.kind() == ENTRY_CREATE ? Kind.CREATE
+                    : event.kind() == ENTRY_DELETE ? Kind.DELETE
+                    : Kind.MODIFY;
+            events.add(new Event(kind, path, null));
+        }
+
+        if (!key.reset()) {
+            Path gone = keyDirMap.remove(key);
+            if (gone != null) dirKeyMap.remove(gone, key);
+        }
+        return events;
+    }
+
+    @Override
+    public String name() {
+        return "WatchService";
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+        ready.offer(CLOSED);
+    }
+}
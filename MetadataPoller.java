@@ -0,0 +1,153 @@
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+// Covers the folders of one root that WatchCoverage could not give a watch.
+// Each folder is re-listed on its own schedule: the interval halves after a
+// listing that changed and doubles (up to POLL_MAX_MS) after one that did
+// not. Only changed listings reach the loop, which diffs them against
+// runtimeState like an overflow rescan. Loop thread only.
+public final class MetadataPoller {
+
+    private static final long POLL_MIN_MS = Env.getLong("FIM_POLL_MIN_MS", 2000, 1);
+    private static final long POLL_MAX_MS = Math.max(POLL_MIN_MS, Env.getLong("FIM_POLL_MAX_MS", 60_000, 1));
+    // Listings in flight at once
+    private static final int POLL_BATCH = Env.getInt("FIM_POLL_BATCH", 64, 1);
+
+    private final Executor pool;
+
+    // relDir -> schedule
+    private final Map<String, Folder> polled = new HashMap<>();
+    private final DeadlineQueue<String> due = new DeadlineQueue<>();
+    private final Queue<OverflowRecovery.Listing> done = new ConcurrentLinkedQueue<>();
+    private int inFlight;
+    private boolean closed;
+
+    private long listings;
+    private long changedListings;
+
+    MetadataPoller(Executor pool) {
+        this.pool = pool;
+    }
+
+    // ---------- FOLDERS ----------
+
+    // The first listing runs right away.
+    void add(String relDir, long now) {
+        if (polled.containsKey(relDir)) return;
+        polled.put(relDir, new Folder());
+        due.schedule(relDir, now);
+    }
+
+    // Watched from now on (or gone).
+    void remove(String relDir) {
+        polled.remove(relDir);
+    }
+
+    int size() {
+        return polled.size();
+    }
+
+    // Wall-clock time of the next listing, Long.MAX_VALUE if none
+    long next() {
+        return polled.isEmpty() ? Long.MAX_VALUE : due.next();
+    }
+
+    boolean busy() {
+        return inFlight > 0;
+    }
+
+    // ---------- POLLING ----------
+
+    // Starts the listings that are due, at most POLL_BATCH at a time.
+    void tick(long now, Path root) {
+        if (closed) return;
+        String relDir;
+        while (inFlight < POLL_BATCH && (relDir = due.poll(now)) != null) {
+            Folder f = polled.get(relDir);
+            if (f == null || f.listing) continue;
+            String dir = relDir;
+            f.listing = true;
+            try {
+                pool.execute(() -> done.add(OverflowRecovery.list(root, dir)));
+                inFlight++;
+            } catch (RejectedExecutionException e) {
+                f.listing = false;
+                return; // shutting down
+            }
+        }
+    }
+
+    // Hands each listing that differs from the previous one of its folder to
+    // apply and its relDir to changed; reschedules every folder.
+    void drain(long now, Consumer<OverflowRecovery.Listing> apply, Consumer<String> changed) {
+        OverflowRecovery.Listing l;
+        while ((l = done.poll()) != null) {
+            inFlight--;
+            listings++;
+            Folder f = polled.get(l.relDir);
+            if (f == null) continue; // promoted to a watch meanwhile
+
+            f.listing = false;
+            if (l.entries == null) {
+                // gone: the parent's listing (or a DELETE event) covers it
+                polled.remove(l.relDir);
+                continue;
+            }
+
+            long sig = signature(l);
+            if (sig != f.signature) {
+                boolean first = f.signature == 0;
+                f.signature = sig;
+                f.interval = Math.max(POLL_MIN_MS, f.interval / 2);
+                apply.accept(l);
+                if (!first) {
+                    changedListings++;
+                    changed.accept(l.relDir);
+                }
+            } else {
+                f.interval = Math.min(POLL_MAX_MS, f.interval * 2);
+            }
+            due.schedule(l.relDir, now + f.interval);
+        }
+    }
+
+    void close() {
+        closed = true;
+        if (listings > 0) {
+            AppLog.info("[+] Metadata polling: " + polled.size() + " folders, " + listings
+                    + " listings, " + changedListings + " with changes.");
+        }
+    }
+
+    // Order-independent digest of names and stats; 0 is reserved for "never listed".
+    private static long signature(OverflowRecovery.Listing l) {
+        long sig = 1;
+        for (Map.Entry<String, FileStat> e : l.entries.entrySet()) {
+            long h = e.getKey().hashCode();
+            FileStat st = e.getValue();
+            if (st != null) {
+                h = h * 31 + st.size;
+                h = h * 31 + st.lastModified;
+                h = h * 31 + st.inode;
+                h = h * 31 + st.ctime;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            sig += h;
+        }
+        return sig == 0 ? 1 : sig;
+    }
+
+    private static final class Folder {
+        long interval = POLL_MIN_MS;
+        long signature;   // of the last listing, 0 before the first
+        boolean listing;  // a listing is in flight
+    }
+}
@@ -1,611 +1,1247 @@
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-import static java.nio.file.StandardWatchEventKinds.*;
-
+// Real-time monitor of one root. Any number of roots run side by side in one
+// JVM: MonitorHub owns the watch backend, the event-loop thread and the
+// modify-hashing pool, and hands each root the events below its folder.
 public class Monitor {
 
-    private static WatchService watchService;
-
-    // WatchKey → Directory
-    private static final Map<WatchKey, Path> keyDirMap =
-            new ConcurrentHashMap<>();
-
-    // Immutable baseline
-    private static final Map<String, String> baselineDisk =
-            new ConcurrentHashMap<>();
+    private final MonitorHub hub;
 
-    // Runtime state (GROUND TRUTH)
-    private static final Map<String, String> runtimeState =
-            new ConcurrentHashMap<>();
+    // Canonical root; names the baseline and state files
+    private final String rootPath;
+    private final Path root;
 
-    // Pending file modifies (for stable hashing)
-    private static final Map<String, Long> pendingModifies =
-            new ConcurrentHashMap<>();
+    // Immutable baseline (memory-mapped index, probed on demand)
+    private volatile BaselineIndex baselineDisk;
 
+    // Runtime state (GROUND TRUTH), with the stat each digest was taken under;
+    // one slice per shard
+    private final ShardedTrie<FIM.FileMeta> runtimeState = new ShardedTrie<>(SHARDS);
 
-    // Pending file deletes
-    private static final Map<String, Long> pendingDeletes =
-            new ConcurrentHashMap<>();
+    // Write-ahead log of runtimeState (null when FIM_JOURNAL=off)
+    private StateJournal journal;
 
-    // Pending file renames (oldPath → hash/time/parent)
-    private static final Map<String, PendingFileRename> pendingFileRenames =
+    // Block trees of large files (last hashed version per path)
+    private final Map<String, BlockHashes.Tree> blockTrees =
             new ConcurrentHashMap<>();
 
-    // Pending folder renames (oldPath → time)
-    private static final Map<String, Long> pendingRenames =
-            new ConcurrentHashMap<>();
+    // Event handling, split by top-level folder
+    private final Shard[] shards;
+
+    // Folders whose events were lost to an OVERFLOW, re-listed in the background
+    private final OverflowRecovery overflowRecovery = new OverflowRecovery();
+
+    // Watches registered in the background while events are already handled
+    private final WatchRegistrar registrar;
+    // Folders over the watch budget, listed on an adaptive schedule
+    private final MetadataPoller poller;
+    // Coverage changes from WatchCoverage (any thread), applied on the loop
+    private final Queue<CoverageChange> coverageChanges = new ConcurrentLinkedQueue<>();
+    // Folders a shard wants re-listed by the hub (recreated after a delete)
+    private final Queue<String> relist = new ConcurrentLinkedQueue<>();
+    // When the startup scan began; older changes are in the snapshot
+    private long snapshotStart;
+
+    // Pending file renames (oldPath → time/parent, indexed by old digest);
+    // shared by the shards, which lock it, so renames pair across shards
+    private final RenameIndex<Digest> pendingFileRenames =
+            new RenameIndex<>();
+
+    // Pending folder renames (oldPath → time/parent), likewise shared
+    private final RenameIndex<String> pendingRenames =
+            new RenameIndex<>();
+    private static final String FOLDERS = "";
 
     private static final long MODIFY_STABLE_MS = 600;
     private static final long DELETE_VERIFY_MS = 300;
     private static final long RENAME_WINDOW_MS = 1200;
+    // How long past its window a file rename stays pairable while hashes are
+    // in flight; under constant hashing it would otherwise never expire
+    private static final long RENAME_HOLD_MAX_MS = 30_000;
+
+    // Loop wake-up while background work (hashing, verification) may finish
+    private static final long BUSY_POLL_MS = 200;
+    // Upper bound on an idle shard sleep
+    private static final long IDLE_POLL_MS = 60_000;
+
+    // Shards per root: threads handling events, keyed by top-level folder
+    private static final int SHARDS = Env.getInt("FIM_MONITOR_SHARDS",
+            Math.min(4, Runtime.getRuntime().availableProcessors()), 1);
+
+    // Startup trusts files whose stat matches the baseline instead of hashing
+    private static final boolean WARM_START =
+            !"off".equalsIgnoreCase(System.getenv("FIM_WARM_START"));
+    // ...and re-hashes those trusted files afterwards on a background thread
+    private static final boolean WARM_VERIFY =
+            !"false".equalsIgnoreCase(System.getenv("FIM_WARM_VERIFY"));
+
+    // Mismatches found by the background verifier, handed to their shards by the loop
+    private final Queue<VerifyFinding> verifyFindings =
+            new ConcurrentLinkedQueue<>();
+    private volatile Thread verifyThread;
+
+    private volatile boolean running = true;
+    private boolean finished;
+    private volatile Exception failure;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final List<Consumer<Exception>> stopListeners = new ArrayList<>();
+
+    // root must be canonical
+    private Monitor(Path root) throws IOException {
+        this.root = root;
+        this.rootPath = root.toString();
+        this.hub = MonitorHub.join(this);
+        this.shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard(i);
+        this.registrar = new WatchRegistrar(root, hub.coverage(), hub.registerPool());
+        this.poller = new MetadataPoller(hub.registerPool());
+    }
 
-    private static volatile boolean running = true;
-    private static volatile boolean shutdownHookAdded = false;
+    // ---------- ROOTS ----------
 
-    // ---------- STARTUP ----------
+    // Snapshots rootDir and hands it to the shared event loop. Returns once
+    // the root is live (or already stopped again by close()); watches are
+    // still being registered then, and folders that changed before their
+    // watch existed are caught up by a rescan.
+    public static Monitor open(Path rootDir) throws Exception {
+
+        long opened = System.currentTimeMillis();
+        Monitor m = new Monitor(rootDir.toFile().getCanonicalFile().toPath());
+        try {
+            m.startup();
+            m.startShards();
+        } catch (Exception e) {
+            m.finish(e);
+            throw e;
+        }
+        if (!m.hub.attach(m)) {
+            m.finish(null);
+            return m;
+        }
+        m.registrar.watch(m.root, m.snapshotStart);
 
+        AppLog.info("[+] Real-time FIM started");
+        AppLog.info("[+] Root: " + m.rootPath);
+        AppLog.info("[+] Watch backend: " + m.hub.backend().name());
+        AppLog.info("[+] Live after " + (System.currentTimeMillis() - opened)
+                + " ms; registering watches in the background.");
+        return m;
+    }
+
+    // Monitors rootDir until it (or every root) is stopped.
     public static void start(Path rootDir) throws Exception {
+        Monitor m = open(rootDir);
+        m.await(0);
+        if (m.failure != null) throw m.failure;
+    }
 
-        running = true;
-        watchService = FileSystems.getDefault().newWatchService();
-        String rootPath = rootDir.toFile().getCanonicalPath();
+    // Stops every root.
+    public static void stop() {
+        MonitorHub.stopAll();
+    }
+
+    // Stops this root; its shards are joined and its journal closed on the loop thread.
+    public void close() {
+        running = false;
+        hub.wakeup();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    // Waits for the root to finish; 0 waits forever. true once finished.
+    public boolean await(long timeoutMs) {
+        try {
+            if (timeoutMs <= 0) {
+                stopped.await();
+                return true;
+            }
+            return stopped.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return stopped.getCount() == 0;
+        }
+    }
+
+    // Runs listener with the failure (null after a normal stop) once the
+    // root has finished; right away if it already has.
+    public void onStop(Consumer<Exception> listener) {
+        synchronized (stopListeners) {
+            if (stopped.getCount() > 0) {
+                stopListeners.add(listener);
+                return;
+            }
+        }
+        listener.accept(failure);
+    }
 
-        baselineDisk.clear();
-        runtimeState.clear();
-        pendingModifies.clear();
-        pendingDeletes.clear();
-        pendingFileRenames.clear();
-        pendingRenames.clear();
+    // ---------- STARTUP ----------
 
-        Map<String, String> loaded =
-                normalizeBaseline(FIM.loadBaselineForMonitor());
+    private void startup() throws Exception {
 
-        baselineDisk.putAll(loaded);
+        baselineDisk = FIM.openBaselineIndex(rootPath);
 
-        Map<String, String> diskSnapshot = snapshotDisk(rootDir);
+        if (BlockHashes.MIN_BYTES > 0) {
+            try {
+                blockTrees.putAll(BlockHashes.read(FIM.getBlockHashFile(rootPath)));
+            } catch (IOException e) {
+                AppLog.warn("[!] Block hashes unavailable: " + e.getMessage());
+            }
+        }
+
+        // Journaled state from the last run seeds the scan: files whose stat
+        // is unchanged keep their digest, everything else is re-hashed
+        Map<String, FIM.FileMeta> seed = Collections.emptyMap();
+        if (StateJournal.ENABLED) {
+            journal = new StateJournal(
+                    FIM.getStateCheckpointFile(rootPath),
+                    FIM.getStateJournalFile(rootPath)
+            );
+            seed = journal.recover();
+        }
+
+        snapshotStart = System.currentTimeMillis();
+        ParallelScanner.Stats stats = new ParallelScanner.Stats(false, WARM_VERIFY);
+        Map<String, FIM.FileMeta> diskSnapshot = snapshotDisk(seed, stats);
         logStartupDrift(baselineDisk, diskSnapshot);
         runtimeState.putAll(diskSnapshot); // runtime = actual disk at start
+        if (journal != null) journal.checkpoint(() -> diskSnapshot);
+        startWarmVerify(stats.trustedPaths);
+    }
 
-        registerAll(rootDir);
-
-        if (!shutdownHookAdded) {
-            Runtime.getRuntime().addShutdownHook(new Thread(Monitor::stop));
-            shutdownHookAdded = true;
+    // Runs exactly once, on the loop thread for a live root and on the
+    // opening thread otherwise.
+    void finish(Exception cause) {
+        synchronized (this) {
+            if (finished) return;
+            finished = true;
+        }
+        running = false;
+        if (cause == null) cause = failure; // a shard failed
+        failure = cause;
+
+        registrar.close();
+        poller.close();
+        hub.detach(this);
+        overflowRecovery.shutdown();
+        stopShards();
+        if (journal != null) journal.close();
+        MonitorHub.leave(hub, this);
+
+        List<Consumer<Exception>> listeners;
+        synchronized (stopListeners) {
+            stopped.countDown();
+            listeners = new ArrayList<>(stopListeners);
+            stopListeners.clear();
         }
+        for (Consumer<Exception> l : listeners) l.accept(cause);
+    }
 
-        AppLog.info("[+] Real-time FIM started");
-        AppLog.info("[+] Root: " + rootPath);
+    // ---------- EVENT LOOP ----------
 
-        // ---------- MAIN LOOP ----------
-        while (running) {
+    // One backend event; ignored unless it concerns this root. Runs on the
+    // hub thread, which only routes: each path is handled by its shard.
+    void dispatch(WatchBackend.Event event) {
 
-            WatchKey key;
-            try {
-                key = watchService.poll(200, TimeUnit.MILLISECONDS);
-            } catch (ClosedWatchServiceException e) {
-                break;
+        if (event.kind == WatchBackend.Kind.OVERFLOW) {
+            // lost events of an unknown folder: only a full rescan covers them
+            if (event.path == null) {
+                overflowAll();
+            } else {
+                String relDir = relativePath(event.path);
+                if (relDir != null) overflowRecovery.overflow(relDir);
             }
+            return;
+        }
 
-            if (key == null) {
-                cleanupDeletes(rootPath);
-                continue;
+        if (event.kind == WatchBackend.Kind.MOVE) {
+            String oldPath = MonitorHub.contains(root, event.from) ? relativePath(event.from) : null;
+            String newPath = MonitorHub.contains(root, event.path) ? relativePath(event.path) : null;
+            if (oldPath == null && newPath == null) return;
+
+            File from = event.from.toFile();
+            File to = event.path.toFile();
+
+            // watches below a moved folder must report under its new path
+            // by the next read, before any shard gets to the move
+            if (oldPath != null && newPath != null && to.isDirectory()) {
+                hub.moved(event.from, event.path);
             }
 
-            Path dir = keyDirMap.get(key);
-            if (dir == null) {
-                key.reset();
-                continue;
+            Shard src = oldPath == null ? null : shardOf(oldPath);
+            Shard dst = newPath == null ? null : shardOf(newPath);
+            if (src != null && dst != null && src != dst) {
+                crossMove(src, dst, from, to);
+            } else {
+                Shard s = src != null ? src : dst;
+                s.post(() -> s.handleMove(from, to, s));
             }
+            return;
+        }
 
-            for (WatchEvent<?> event : key.pollEvents()) {
+        if (!MonitorHub.contains(root, event.path)) return;
+        File file = event.path.toFile();
 
-                if (event.kind() == OVERFLOW) continue;
+        if (event.kind == WatchBackend.Kind.CREATE && file.isDirectory()) {
+            registrar.watch(file.toPath(), System.currentTimeMillis());
+        }
 
-                Path name = (Path) event.context();
-                File file = dir.resolve(name).toFile();
+        post(event.kind, file);
+    }
 
-                if (event.kind() == ENTRY_CREATE && file.isDirectory()) {
-                    registerAll(file.toPath());
-                }
+    // dir (below this root) is polled from now on, or watched again.
+    void covered(Path dir, boolean watched) {
+        String relDir = relativePath(dir);
+        if (relDir != null) coverageChanges.add(new CoverageChange(relDir, watched));
+    }
 
-                handleEvent(event.kind(), file, rootPath);
-            }
+    // After each batch of events: rescans, coverage, verifier findings, journal.
+    void afterEvents() {
+        processRootWork();
+        applyVerifyFindings();
+        syncJournal();
+    }
 
-            cleanupDeletes(rootPath);
+    // Hands an event on file to the shard owning its path.
+    private void post(WatchBackend.Kind kind, File file) {
+        String relPath = relativePath(file.toPath());
+        if (relPath == null) return;
+        Shard s = shardOf(relPath);
+        s.post(() -> s.handleEvent(kind, file));
+    }
 
-            if (!key.reset()) {
-                keyDirMap.remove(key);
+    // A kernel-paired move between two shards runs on the source shard while
+    // the target shard waits at the same point of its own event order. Every
+    // rendezvous is posted to both inboxes in event order, so the earliest
+    // one pending can always complete and two of them never wait on each other.
+    private void crossMove(Shard src, Shard dst, File from, File to) {
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        dst.post(() -> {
+            arrived.countDown();
+            awaitLatch(done);
+        });
+        src.post(() -> {
+            try {
+                if (awaitLatch(arrived)) src.handleMove(from, to, dst);
+            } finally {
+                done.countDown();
             }
+        });
+    }
+
+    // false if the root stopped first
+    private boolean awaitLatch(CountDownLatch latch) {
+        try {
+            while (running) {
+                if (latch.await(BUSY_POLL_MS, TimeUnit.MILLISECONDS)) return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return false;
+    }
 
-        stop();
+    // ---------- SHARDS ----------
+
+    private Shard shardOf(String relPath) {
+        return shards[ShardedTrie.slice(relPath, shards.length)];
     }
 
-    public static void stop() {
-        running = false;
-        if (watchService != null) {
-            try {
-                watchService.close();
-            } catch (IOException ignored) {}
+    // Runs task on the shard owning relPath: right away on that shard's own
+    // thread, through its inbox from any other.
+    private void onShard(String relPath, Consumer<Shard> task) {
+        Shard s = shardOf(relPath);
+        if (Thread.currentThread() == s.thread) {
+            task.accept(s);
+        } else {
+            s.post(() -> task.accept(s));
         }
     }
 
-    // ---------- WATCH REGISTRATION ----------
+    // true while any shard has hashes in flight (a rename target may be
+    // hashed on a shard other than its source's)
+    private boolean hashing() {
+        for (Shard s : shards) {
+            if (s.hashing) return true;
+        }
+        return false;
+    }
 
-    private static void register(Path dir) throws Exception {
-        WatchKey key = dir.register(
-                watchService,
-                ENTRY_CREATE,
-                ENTRY_DELETE,
-                ENTRY_MODIFY
-        );
-        keyDirMap.put(key, dir);
+    private void startShards() {
+        for (Shard s : shards) {
+            Thread t = new Thread(s, shards.length == 1 ? "fim-shard" : "fim-shard-" + s.index);
+            t.setDaemon(true);
+            s.thread = t;
+            t.start();
+        }
     }
 
-    private static void registerAll(Path start) throws Exception {
-        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                if (Files.isSymbolicLink(dir)) {
-                    return FileVisitResult.SKIP_SUBTREE;
+    // Shards see running == false on their next wake-up. Not interrupted:
+    // their last journal writes must land before the journal is closed.
+    private void stopShards() {
+        for (Shard s : shards) s.post(() -> {});
+        long deadline = System.currentTimeMillis() + 2000;
+        for (Shard s : shards) {
+            Thread t = s.thread;
+            if (t != null && t != Thread.currentThread()) {
+                try {
+                    t.join(Math.max(1, deadline - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-                try { register(dir); } catch (Exception ignored) {}
-                return FileVisitResult.CONTINUE;
             }
-        });
+            if (s.hashPipeline.close() && s.hashPipeline.hashed() > 0) {
+                AppLog.info("[+] Modify hashing" + (shards.length == 1 ? "" : " (shard " + s.index + ")")
+                        + ": " + s.hashPipeline.summary() + ".");
+            }
+        }
     }
 
-    // ---------- EVENT HANDLING ----------
+    // A shard failed: the root stops with its exception.
+    private void fail(Exception e) {
+        if (failure == null) failure = e;
+        close();
+    }
 
-    private static void handleEvent(
-            WatchEvent.Kind<?> kind,
-            File file,
-            String rootPath
-    ) {
+    // The events, debouncing, hashing and state updates of the top-level
+    // folders that hash to one slice of runtimeState. All events of a path go
+    // through the same inbox, so per-path order is kept; renames whose two
+    // halves land on different shards are paired through the shared rename
+    // indexes (guarded by their own locks) and cleaned up on the owner shard.
+    private final class Shard implements Runnable {
 
-        Path root = Paths.get(rootPath).toAbsolutePath().normalize();
-        Path absPath;
+        final int index;
+        volatile Thread thread;
 
-        try {
-            absPath = file.toPath().toAbsolutePath().normalize();
-        } catch (Exception e) {
-            return;
+        // Events and cross-shard work, in arrival order
+        private final BlockingQueue<Runnable> inbox = new LinkedBlockingQueue<>();
+
+        // Pending file modifies (for stable hashing)
+        private final Map<String, Long> pendingModifies = new HashMap<>();
+
+        // Pending file deletes
+        private final Map<String, Long> pendingDeletes = new HashMap<>();
+
+        // Settled modifies being hashed off the shard thread
+        private final HashPipeline hashPipeline;
+        private volatile boolean hashing;
+
+        // Deadlines of the pending maps (entries re-checked when they fire)
+        private final DeadlineQueue<String> modifyDeadlines = new DeadlineQueue<>();
+        private final DeadlineQueue<String> deleteDeadlines = new DeadlineQueue<>();
+        private final DeadlineQueue<String> fileRenameDeadlines = new DeadlineQueue<>();
+        private final DeadlineQueue<String> folderRenameDeadlines = new DeadlineQueue<>();
+
+        Shard(int index) {
+            this.index = index;
+            this.hashPipeline = new HashPipeline(hub.hashPool());
         }
 
-        if (!absPath.startsWith(root)) return;
+        void post(Runnable task) {
+            inbox.add(task);
+        }
 
-        String relPath = root.relativize(absPath)
-                .toString()
-                .replace(File.separatorChar, '/');
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    Runnable task = inbox.poll(nextWakeup(), TimeUnit.MILLISECONDS);
+                    while (task != null && running) {
+                        task.run();
+                        task = inbox.poll();
+                    }
+                    processDeadlines();
+                    hashing = hashPipeline.busy();
+                    if (journal != null) journal.flush();
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
 
-        // ----- DIRECTORY HANDLING -----
-        boolean isDir =
-                runtimeState.containsKey(relPath)
-                        && FIM.DIR_HASH.equals(runtimeState.get(relPath));
+        // Only an event (which re-arms its entry by updating the pending map)
+        // or a due deadline can change what the shard has to do, so it sleeps
+        // until the earliest deadline; hashes are polled for while in flight.
+        private long nextWakeup() {
+            long now = System.currentTimeMillis();
+            long next = Math.min(
+                    Math.min(modifyDeadlines.next(), deleteDeadlines.next()),
+                    Math.min(fileRenameDeadlines.next(), folderRenameDeadlines.next())
+            );
+            if (hashPipeline.busy()) next = Math.min(next, now + BUSY_POLL_MS);
+            return Math.max(1, Math.min(next - now, IDLE_POLL_MS));
+        }
 
-        if (isDir || (kind == ENTRY_CREATE && file.isDirectory())) {
+        // ---------- EVENT HANDLING ----------
 
-            // CREATE -> new folder or rename target
-            if (kind == ENTRY_CREATE) {
+        private void handleEvent(WatchBackend.Kind kind, File file) {
 
-                String parent = Paths.get(relPath).getParent() == null
-                        ? ""
-                        : Paths.get(relPath).getParent().toString();
+            Path absPath;
 
-                long now = System.currentTimeMillis();
-                String renamedFrom = findFolderRenameCandidate(parent, now);
+            try {
+                absPath = file.toPath().toAbsolutePath().normalize();
+            } catch (Exception e) {
+                return;
+            }
 
-                if (renamedFrom != null) {
-                    pendingRenames.remove(renamedFrom);
-                    remapRuntimeSubtree(renamedFrom, relPath);
-                    AppLog.info("[RENAMED] " + renamedFrom + " -> " + relPath);
-                    emitEvent(
-                            AlertEvent.Type.RENAMED_FOLDER,
-                            relPath,
-                            renamedFrom,
-                            rootPath,
-                            true
-                    );
-                } else {
-                    runtimeState.put(relPath, FIM.DIR_HASH);
-                    AppLog.info("[NEW FOLDER] " + relPath);
-                    emitEvent(
-                            AlertEvent.Type.NEW_FOLDER,
-                            relPath,
-                            null,
-                            rootPath,
-                            true
-                    );
+            if (!absPath.startsWith(root)) return;
+
+            String relPath = root.relativize(absPath)
+                    .toString()
+                    .replace(File.separatorChar, '/');
+
+            // ----- DIRECTORY HANDLING -----
+            boolean isDir = FIM.DIR_HASH.equals(runtimeHash(relPath));
+
+            if (isDir || (kind == WatchBackend.Kind.CREATE && file.isDirectory())) {
+
+                // CREATE -> new folder or rename target
+                if (kind == WatchBackend.Kind.CREATE) {
+
+                    String parent = Paths.get(relPath).getParent() == null
+                            ? ""
+                            : Paths.get(relPath).getParent().toString();
+
+                    long now = System.currentTimeMillis();
+                    String renamedFrom;
+                    synchronized (pendingRenames) {
+                        renamedFrom = pendingRenames.match(FOLDERS, parent, now - RENAME_WINDOW_MS);
+                        if (renamedFrom != null) pendingRenames.remove(renamedFrom);
+                    }
+
+                    if (renamedFrom != null) {
+                        remapRuntimeSubtree(renamedFrom, relPath);
+                        hub.moved(root.resolve(renamedFrom), absPath);
+                        AppLog.info("[RENAMED] " + renamedFrom + " -> " + relPath);
+                        emitEvent(
+                                AlertEvent.Type.RENAMED_FOLDER,
+                                relPath,
+                                renamedFrom,
+                                true
+                        );
+                    } else {
+                        statePut(relPath, new FIM.FileMeta(0, 0, FIM.DIR_HASH));
+                        AppLog.info("[NEW FOLDER] " + relPath);
+                        emitEvent(
+                                AlertEvent.Type.NEW_FOLDER,
+                                relPath,
+                                null,
+                                true
+                        );
+                    }
+                    return;
                 }
+
+                // DELETE -> maybe rename
+                if (kind == WatchBackend.Kind.DELETE) {
+                    armFolderRename(relPath, System.currentTimeMillis());
+                    return;
+                }
+
                 return;
             }
 
-            // DELETE -> maybe rename
-            if (kind == ENTRY_DELETE) {
-                pendingRenames.put(relPath, System.currentTimeMillis());
+            // ----- TEMP FILE FILTER -----
+            String name = file.getName();
+            if (name.startsWith("~")
+                    || name.endsWith(".tmp")
+                    || name.endsWith(".swp")
+                    || name.endsWith(".bak")) {
                 return;
             }
 
-            return;
-        }
+            // any hash of an older version of this path is now stale
+            hashPipeline.invalidate(relPath);
 
-        // ----- TEMP FILE FILTER -----
-        String name = file.getName();
-        if (name.startsWith("~")
-                || name.endsWith(".tmp")
-                || name.endsWith(".swp")
-                || name.endsWith(".bak")) {
-            return;
-        }
+            // ----- FILE DELETE (DELAYED) -----
+            if (kind == WatchBackend.Kind.DELETE) {
+                long now = System.currentTimeMillis();
+                if (looksLikeDirectory(relPath)) {
+                    armFolderRename(relPath, now);
+                    return;
+                }
 
-        // ----- FILE DELETE (DELAYED) -----
-        if (kind == ENTRY_DELETE) {
-            long now = System.currentTimeMillis();
-            if (looksLikeDirectory(relPath)) {
-                pendingRenames.put(relPath, now);
+                Digest oldRuntime = runtimeHash(relPath);
+                if (oldRuntime != null && !FIM.DIR_HASH.equals(oldRuntime)) {
+                    RenameIndex.Entry<Digest> prev;
+                    synchronized (pendingFileRenames) {
+                        prev = pendingFileRenames.put(
+                                relPath,
+                                oldRuntime,
+                                parentOf(relPath),
+                                now
+                        );
+                    }
+                    if (prev == null) {
+                        fileRenameDeadlines.schedule(relPath, now + RENAME_WINDOW_MS + 1);
+                    }
+                }
+
+                if (pendingDeletes.put(relPath, now) == null) {
+                    deleteDeadlines.schedule(relPath, now + DELETE_VERIFY_MS);
+                }
                 return;
             }
 
-            String oldRuntime = runtimeState.get(relPath);
-            if (oldRuntime != null && !FIM.DIR_HASH.equals(oldRuntime)) {
-                pendingFileRenames.put(
-                        relPath,
-                        new PendingFileRename(
-                                oldRuntime,
-                                now,
-                                parentOf(relPath)
-                        )
-                );
-            }
+            // recreate -> cancel delete
+            pendingDeletes.remove(relPath);
 
-            pendingDeletes.put(relPath, now);
-            return;
+            if (!file.exists()) return;
+
+            if (kind == WatchBackend.Kind.CREATE || kind == WatchBackend.Kind.MODIFY) {
+                long now = System.currentTimeMillis();
+                if (pendingModifies.put(relPath, now) == null) {
+                    modifyDeadlines.schedule(relPath, now + MODIFY_STABLE_MS);
+                }
+            } else if (kind == WatchBackend.Kind.CLOSE_WRITE) {
+                // the writer is done: no need to wait out the quiet period
+                long now = System.currentTimeMillis();
+                pendingModifies.put(relPath, now - MODIFY_STABLE_MS);
+                modifyDeadlines.schedule(relPath, now);
+            }
         }
 
-        // recreate -> cancel delete
-        pendingDeletes.remove(relPath);
+        // Rename paired by the kernel (inotify cookie): no digest matching
+        // needed. Runs on the source shard; dst owns the target path and is
+        // parked at the rendezvous when it is another shard.
+        private void handleMove(File from, File to, Shard dst) {
+
+            String oldPath = relativePath(from.toPath());
+            String newPath = relativePath(to.toPath());
+            FIM.FileMeta old = oldPath == null ? null : runtimeState.get(oldPath);
+
+            // untracked source (e.g. a temp file saved over a tracked one): the
+            // target is an ordinary create
+            if (old == null || newPath == null) {
+                if (oldPath != null) handleEvent(WatchBackend.Kind.DELETE, from);
+                if (newPath == null) return;
+                if (to.isDirectory()) {
+                    registrar.watch(to.toPath(), System.currentTimeMillis());
+                }
+                dst.handleEvent(WatchBackend.Kind.CREATE, to);
+                return;
+            }
 
-        if (!file.exists()) return;
+            // watches already followed in dispatch
+            if (old.hash.isDir()) {
+                remapRuntimeSubtree(oldPath, newPath);
+                AppLog.info("[RENAMED] " + oldPath + " -> " + newPath);
+                emitEvent(
+                        AlertEvent.Type.RENAMED_FOLDER,
+                        newPath,
+                        oldPath,
+                        true
+                );
+                return;
+            }
 
-        if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY) {
-            pendingModifies.put(relPath, System.currentTimeMillis());
-        }
-    }
+            // a modify still settling follows the file
+            hashPipeline.invalidate(oldPath);
+            pendingDeletes.remove(oldPath);
+            Long modified = pendingModifies.remove(oldPath);
+            if (modified != null) {
+                dst.pendingModifies.put(newPath, modified);
+                dst.modifyDeadlines.schedule(newPath, modified + MODIFY_STABLE_MS);
+            }
 
-    private static String parentOf(String relPath) {
-        Path p = Paths.get(relPath).getParent();
-        return p == null ? "" : p.toString();
-    }
+            stateMove(oldPath, newPath);
+            BlockHashes.Tree tree = blockTrees.remove(oldPath);
+            if (tree != null) blockTrees.put(newPath, tree);
 
-    private static String findFolderRenameCandidate(String parent, long now) {
-        for (Map.Entry<String, Long> e : pendingRenames.entrySet()) {
-            String oldPath = e.getKey();
-            if (now - e.getValue() > RENAME_WINDOW_MS) continue;
-            if (Objects.equals(parentOf(oldPath), parent)) {
-                return oldPath;
+            if (Objects.equals(parentOf(oldPath), parentOf(newPath))) {
+                AppLog.info("[RENAMED FILE] " + oldPath + " -> " + newPath);
+                emitEvent(AlertEvent.Type.RENAMED_FILE, newPath, oldPath, false);
+            } else {
+                AppLog.info("[MOVED FILE] " + oldPath + " -> " + newPath);
+                emitEvent(AlertEvent.Type.MOVED_FILE, newPath, oldPath, false);
             }
         }
 
-        String candidate = null;
-        for (Map.Entry<String, Long> e : pendingRenames.entrySet()) {
-            if (now - e.getValue() > RENAME_WINDOW_MS) continue;
-            if (candidate != null) return null;
-            candidate = e.getKey();
-        }
-        return candidate;
-    }
-
-    private static String findFileRenameCandidate(
-            String newPath,
-            String newHash,
-            long now
-    ) {
-        String parent = parentOf(newPath);
-        String best = null;
-        long bestTime = -1;
-
-        for (Map.Entry<String, PendingFileRename> e : pendingFileRenames.entrySet()) {
-            PendingFileRename p = e.getValue();
-            if (now - p.time > RENAME_WINDOW_MS) continue;
-            if (!p.hash.equals(newHash)) continue;
-            if (Objects.equals(p.parent, parent) && p.time > bestTime) {
-                best = e.getKey();
-                bestTime = p.time;
+        private void armFolderRename(String relPath, long now) {
+            RenameIndex.Entry<String> prev;
+            synchronized (pendingRenames) {
+                prev = pendingRenames.put(relPath, FOLDERS, parentOf(relPath), now);
+            }
+            if (prev == null) {
+                folderRenameDeadlines.schedule(relPath, now + RENAME_WINDOW_MS);
             }
         }
 
-        if (best != null) return best;
+        // Delete half of a rename claimed by another shard. Its state is only
+        // dropped if nothing replaced it since the claim.
+        private void dropRenamed(String relPath, FIM.FileMeta claimed) {
+            pendingDeletes.remove(relPath);
+            if (claimed != null && runtimeState.get(relPath) == claimed) stateRemove(relPath);
+        }
 
-        String candidate = null;
-        for (Map.Entry<String, PendingFileRename> e : pendingFileRenames.entrySet()) {
-            PendingFileRename p = e.getValue();
-            if (now - p.time > RENAME_WINDOW_MS) continue;
-            if (!p.hash.equals(newHash)) continue;
-            if (candidate != null) return null;
-            candidate = e.getKey();
+        // Clear any pending deletes under a moved folder to avoid false deletes
+        private void dropPendingDeletes(String oldPath) {
+            String oldPrefix = oldPath + "/";
+            pendingDeletes.keySet().removeIf(k ->
+                    k.equals(oldPath) || k.startsWith(oldPrefix)
+            );
         }
-        return candidate;
-    }
 
-    private static void cleanupDeletes(String rootPath) {
+        // ---------- DEADLINES ----------
 
-        long now = System.currentTimeMillis();
-        Path root = Paths.get(rootPath);
+        // Each pending map keeps the time of its latest event; a deadline that
+        // fires before that time has run its window again is pushed back.
+        private void processDeadlines() {
 
-        pendingFileRenames.entrySet().removeIf(e ->
-                now - e.getValue().time > RENAME_WINDOW_MS
-        );
+            long now = System.currentTimeMillis();
 
-        // FILE deletes
-        pendingDeletes.entrySet().removeIf(e -> {
+            // kept while hashes are in flight (up to RENAME_HOLD_MAX_MS): their
+            // rename window is measured from when the modify settled, not from
+            // when the hash finished
+            fileRenameDeadlines.fire(now, path -> {
+                synchronized (pendingFileRenames) {
+                    RenameIndex.Entry<Digest> p = pendingFileRenames.get(path);
+                    if (p == null) return;
+                    if (now - p.time <= RENAME_WINDOW_MS) {
+                        fileRenameDeadlines.schedule(path, p.time + RENAME_WINDOW_MS + 1);
+                    } else if (hashing() && now - p.time < RENAME_WINDOW_MS + RENAME_HOLD_MAX_MS) {
+                        fileRenameDeadlines.schedule(path, now + BUSY_POLL_MS);
+                    } else {
+                        pendingFileRenames.remove(path);
+                    }
+                }
+            });
+
+            // FILE deletes
+            deleteDeadlines.fire(now, path -> {
+                Long t = pendingDeletes.get(path);
+                if (t == null) return;
+                if (now - t < DELETE_VERIFY_MS) {
+                    deleteDeadlines.schedule(path, t + DELETE_VERIFY_MS);
+                    return;
+                }
+                pendingDeletes.remove(path);
 
-            if (now - e.getValue() < DELETE_VERIFY_MS)
-                return false;
+                File f = root.resolve(path).toFile();
 
-            String path = e.getKey();
-            File f = root.resolve(path).toFile();
+                if (!f.exists() && runtimeState.containsKey(path)) {
+                    stateRemove(path);
+                    blockTrees.remove(path);
+                    AppLog.info("[DELETED FILE] " + path);
+                    emitEvent(
+                            AlertEvent.Type.DELETED_FILE,
+                            path,
+                            null,
+                            false
+                    );
+                }
+            });
+
+            // Stable modify hashing (avoid mid-write spam); a full pipeline
+            // leaves the entry pending for a later pass
+            modifyDeadlines.fire(now, path -> {
+                Long t = pendingModifies.get(path);
+                if (t == null) return;
+                if (now - t < MODIFY_STABLE_MS) {
+                    modifyDeadlines.schedule(path, t + MODIFY_STABLE_MS);
+                } else if (submitStableModify(path, now)) {
+                    pendingModifies.remove(path);
+                } else {
+                    modifyDeadlines.schedule(path, now + BUSY_POLL_MS);
+                }
+            });
+            hashPipeline.drain(this::processStableModify);
+
+            // FOLDER deletes (not renames)
+            folderRenameDeadlines.fire(now, path -> {
+                synchronized (pendingRenames) {
+                    RenameIndex.Entry<String> p = pendingRenames.get(path);
+                    if (p == null) return;
+                    if (now - p.time < RENAME_WINDOW_MS) {
+                        folderRenameDeadlines.schedule(path, p.time + RENAME_WINDOW_MS);
+                        return;
+                    }
+                    pendingRenames.remove(path);
+                }
+                // deleted and created again (events of the two may even come
+                // out of order): keep it and its watches, re-list its contents
+                if (root.resolve(path).toFile().isDirectory()) {
+                    relist.add(path);
+                    hub.wakeup();
+                    return;
+                }
+                stateRemoveSubtree(path);
+                hub.forget(root.resolve(path));
 
-            if (!f.exists() && runtimeState.containsKey(path)) {
-                runtimeState.remove(path);
-                AppLog.info("[DELETED FILE] " + path);
+                AppLog.info("[DELETED FOLDER] " + path);
                 emitEvent(
-                        AlertEvent.Type.DELETED_FILE,
+                        AlertEvent.Type.DELETED_FOLDER,
                         path,
                         null,
-                        root,
-                        false
+                        true
                 );
+            });
+        }
+
+        // ---------- HASHING ----------
+
+        private boolean submitStableModify(String relPath, long now) {
+            File file = root.resolve(relPath).toFile();
+            if (!file.exists() || file.isDirectory()) return true;
+            return hashPipeline.submit(relPath, file, previousBlockTree(relPath), now);
+        }
+
+        // Runs on the shard thread once the pipeline has hashed relPath.
+        private void processStableModify(HashPipeline.Result r) {
+            String relPath = r.job.relPath;
+            // gone (or replaced by a folder) while it was being hashed
+            if (r.hash == null || !r.job.file.isFile()) return;
+
+            Digest newHash = r.hash;
+            String detail = null;
+            if (r.blocks != null) {
+                blockTrees.put(relPath, r.blocks.tree);
+                detail = r.blocks.describe();
             }
-            return true;
-        });
 
-        // Stable modify hashing (avoid mid-write spam)
-        pendingModifies.entrySet().removeIf(e -> {
-            if (now - e.getValue() < MODIFY_STABLE_MS)
-                return false;
+            FileStat st = r.stat;
+            FIM.FileMeta meta = new FIM.FileMeta(st.size, st.lastModified, newHash, st.inode, st.ctime);
 
-            String path = e.getKey();
-            processStableModify(root, path);
-            return true;
-        });
+            String renamedFrom;
+            RenameIndex.Entry<Digest> pending = null;
+            synchronized (pendingFileRenames) {
+                renamedFrom = pendingFileRenames.match(
+                        newHash,
+                        parentOf(relPath),
+                        r.job.settledAt - RENAME_WINDOW_MS
+                );
+                if (renamedFrom != null) pending = pendingFileRenames.remove(renamedFrom);
+            }
+            if (renamedFrom != null) {
+                blockTrees.remove(renamedFrom);
+                FIM.FileMeta claimed = runtimeState.get(renamedFrom);
+                onShard(renamedFrom, s -> s.dropRenamed(renamedFrom, claimed));
+                statePut(relPath, meta);
+
+                String oldParent = pending == null ? "" : pending.parent;
+                String newParent = parentOf(relPath);
+                if (Objects.equals(oldParent, newParent)) {
+                    AppLog.info("[RENAMED FILE] " + renamedFrom + " -> " + relPath);
+                    emitEvent(
+                            AlertEvent.Type.RENAMED_FILE,
+                            relPath,
+                            renamedFrom,
+                            false
+                    );
+                } else {
+                    AppLog.info("[MOVED FILE] " + renamedFrom + " -> " + relPath);
+                    emitEvent(
+                            AlertEvent.Type.MOVED_FILE,
+                            relPath,
+                            renamedFrom,
+                            false
+                    );
+                }
+                return;
+            }
 
-        // FOLDER deletes (not renames)
-        pendingRenames.entrySet().removeIf(e -> {
+            Digest oldRuntime = runtimeHash(relPath);
+            Digest baseHash  = baselineDisk.hash(relPath);
 
-            if (now - e.getValue() < RENAME_WINDOW_MS)
-                return false;
+            if (oldRuntime == null) {
+                statePut(relPath, meta);
+                AppLog.info("[NEW FILE] " + relPath);
+                emitEvent(AlertEvent.Type.NEW_FILE, relPath, null, false);
+                return;
+            }
 
-            String path = e.getKey();
-            String prefix = path + "/";
+            // same content still refreshes the stored stat
+            statePut(relPath, meta);
 
-            runtimeState.keySet().removeIf(p ->
-                    p.equals(path) || p.startsWith(prefix)
-            );
+            if (!newHash.equals(oldRuntime)) {
+                if (baseHash != null && baseHash.equals(newHash)) {
+                    AppLog.info("[RESTORED] " + relPath);
+                    emitEvent(AlertEvent.Type.RESTORED, relPath, null, false);
+                } else {
+                    AppLog.info("[MODIFIED] " + relPath + (detail == null ? "" : " (" + detail + ")"));
+                    emitEvent(AlertEvent.Type.MODIFIED, relPath, null, false, detail);
+                }
+            }
+        }
+    }
 
-            AppLog.info("[DELETED FOLDER] " + path);
-            emitEvent(
-                    AlertEvent.Type.DELETED_FOLDER,
-                    path,
-                    null,
-                    root,
-                    true
-            );
-            return true;
-        });
+    private String parentOf(String relPath) {
+        Path p = Paths.get(relPath).getParent();
+        return p == null ? "" : p.toString();
     }
 
-    // ---------- RUNTIME REMAP ----------
+    // ---------- ROOT WORK ----------
 
-    private static void remapRuntimeSubtree(String oldPath, String newPath) {
+    // Rescans, polling and verification of the whole root run on the hub
+    // thread and reach the shards as events; shard deadlines are their own.
+    long nextWakeup() {
+        long now = System.currentTimeMillis();
+        long next = poller.next();
+        if (!coverageChanges.isEmpty() || !relist.isEmpty()) next = now;
+        Thread v = verifyThread;
+        if (overflowRecovery.busy()
+                || registrar.busy()
+                || poller.busy()
+                || (v != null && v.isAlive())
+                || !verifyFindings.isEmpty()) {
+            next = Math.min(next, now + BUSY_POLL_MS);
+        }
+        if (journal != null) {
+            // an overdue checkpoint is retried, not spun on
+            next = Math.min(next, Math.max(journal.nextCheckpoint(), now + BUSY_POLL_MS));
+        }
+        return Math.max(1, next - now);
+    }
 
-        String oldPrefix = oldPath + "/";
-        String newPrefix = newPath + "/";
+    private void processRootWork() {
 
-        Map<String, String> toAdd = new HashMap<>();
-        List<String> toRemove = new ArrayList<>();
+        long now = System.currentTimeMillis();
 
-        for (Map.Entry<String, String> e : runtimeState.entrySet()) {
-            String key = e.getKey();
+        registrar.drain(overflowRecovery::markDirty);
+        String dir;
+        while ((dir = relist.poll()) != null) overflowRecovery.markDirty(dir);
+        overflowRecovery.tick(now, root);
+        overflowRecovery.drain(this::applyRescan);
 
-            if (key.equals(oldPath)) {
-                toRemove.add(key);
-                toAdd.put(newPath, e.getValue());
-                continue;
-            }
+        applyCoverageChanges(now);
+        poller.tick(now, root);
+        poller.drain(now, this::applyRescan,
+                relDir -> hub.coverage().touch(root.resolve(relDir), now));
+    }
 
-            if (key.startsWith(oldPrefix)) {
-                String suffix = key.substring(oldPrefix.length());
-                toRemove.add(key);
-                toAdd.put(newPrefix + suffix, e.getValue());
+    // ---------- WATCH COVERAGE ----------
+
+    // A folder that just got a watch is listed once more: anything changed
+    // since its last poll is caught up.
+    private void applyCoverageChanges(long now) {
+        CoverageChange c;
+        while ((c = coverageChanges.poll()) != null) {
+            if (c.watched) {
+                poller.remove(c.relDir);
+                overflowRecovery.markDirty(c.relDir);
+            } else {
+                poller.add(c.relDir, now);
             }
         }
+    }
+
+    private static final class CoverageChange {
+        final String relDir;
+        final boolean watched;
+
+        CoverageChange(String relDir, boolean watched) {
+            this.relDir = relDir;
+            this.watched = watched;
+        }
+    }
 
-        for (String k : toRemove) runtimeState.remove(k);
-        runtimeState.putAll(toAdd);
+    // ---------- OVERFLOW RECOVERY ----------
 
-        // Clear any pending deletes under old path to avoid false deletes
-        pendingDeletes.keySet().removeIf(k ->
-                k.equals(oldPath) || k.startsWith(oldPrefix)
-        );
+    private void overflowAll() {
+        overflowRecovery.overflow("");
+        runtimeState.forEach((path, meta) -> {
+            if (meta.hash.isDir()) overflowRecovery.markDirty(path);
+        });
     }
 
-    private static final class PendingFileRename {
-        final String hash;
-        final long time;
-        final String parent;
+    // Replays what the lost events would have reported. Deletes go first so
+    // creates can still pair up with them as renames; new folders are
+    // registered and listed in turn.
+    private void applyRescan(OverflowRecovery.Listing l) {
+
+        // gone: the parent's listing (or its own DELETE event) covers it
+        if (l.entries == null) return;
+
+        Path dir = root.resolve(l.relDir);
+        Map<String, FIM.FileMeta> known = runtimeState.children(l.relDir);
 
-        PendingFileRename(String h, long t, String p) {
-            hash = h;
-            time = t;
-            parent = p;
+        for (Map.Entry<String, FIM.FileMeta> e : known.entrySet()) {
+            String name = e.getKey();
+            boolean onDisk = l.entries.containsKey(name);
+            boolean isDir = onDisk && l.entries.get(name) == null;
+            if (!onDisk || isDir != e.getValue().hash.isDir()) {
+                post(WatchBackend.Kind.DELETE, dir.resolve(name).toFile());
+            }
+        }
+
+        for (Map.Entry<String, FileStat> e : l.entries.entrySet()) {
+            String name = e.getKey();
+            FileStat st = e.getValue();
+            FIM.FileMeta m = known.get(name);
+            File file = dir.resolve(name).toFile();
+
+            if (m == null || m.hash.isDir() != (st == null)) {
+                if (st == null) {
+                    registrar.watchOne(file.toPath());
+                    overflowRecovery.markDirty(l.relDir.isEmpty() ? name : l.relDir + "/" + name);
+                }
+                post(WatchBackend.Kind.CREATE, file);
+            } else if (st != null && !st.matches(m)) {
+                post(WatchBackend.Kind.MODIFY, file);
+            }
         }
     }
 
-    private static boolean looksLikeDirectory(String relPath) {
-        return runtimeState.containsKey(relPath)
-                && FIM.DIR_HASH.equals(runtimeState.get(relPath));
+    private String relativePath(Path dir) {
+        Path abs = dir.toAbsolutePath().normalize();
+        if (!abs.startsWith(root)) return null;
+        return root.relativize(abs).toString().replace(File.separatorChar, '/');
     }
 
-    private static Map<String, String> normalizeBaseline(
-            Map<String, String> input
-    ) {
-        Map<String, String> out = new HashMap<>();
-        for (Map.Entry<String, String> e : input.entrySet()) {
-            out.put(
-                    e.getKey().replace(File.separatorChar, '/'),
-                    e.getValue()
-            );
-        }
-        return out;
+    // ---------- RUNTIME REMAP ----------
+
+    // The old folder's pending deletes live on the shard owning oldPath.
+    private void remapRuntimeSubtree(String oldPath, String newPath) {
+        stateMove(oldPath, newPath);
+        onShard(oldPath, s -> s.dropPendingDeletes(oldPath));
+    }
+
+    private boolean looksLikeDirectory(String relPath) {
+        return FIM.DIR_HASH.equals(runtimeHash(relPath));
     }
 
-    private static void emitEvent(
+    private void emitEvent(
             AlertEvent.Type type,
             String relPath,
             String oldPath,
-            String rootPath,
             boolean isDir
     ) {
-        try {
-            Path root = Paths.get(rootPath).toAbsolutePath().normalize();
-            emitEvent(type, relPath, oldPath, root, isDir);
-        } catch (Exception ignored) {}
+        emitEvent(type, relPath, oldPath, isDir, null);
     }
 
-    private static void emitEvent(
+    private void emitEvent(
             AlertEvent.Type type,
             String relPath,
             String oldPath,
-            Path root,
-            boolean isDir
+            boolean isDir,
+            String detail
     ) {
         try {
             String abs = root.resolve(relPath).toAbsolutePath().normalize().toString();
-            AlertBus.publish(AlertEvent.of(type, relPath, oldPath, abs, isDir));
+            EventCoalescer.publish(AlertEvent.of(type, relPath, oldPath, abs, isDir, detail));
         } catch (Exception ignored) {}
     }
 
-    private static void processStableModify(Path root, String relPath) {
-        File file = root.resolve(relPath).toFile();
-        if (!file.exists() || file.isDirectory()) return;
+    // Tree of the previous version of a large file, if that tree still
+    // describes what runtimeState holds for the path.
+    private BlockHashes.Tree previousBlockTree(String relPath) {
+        BlockHashes.Tree prev = blockTrees.get(relPath);
+        if (prev != null && !prev.fileHash().equals(runtimeHash(relPath))) {
+            return null;
+        }
+        return prev;
+    }
 
-        String newHash;
-        try {
-            newHash = FIM.getFileHash(file);
-        } catch (Exception e) {
-            return;
+    // Journaled state wins over the baseline: it is newer. With WARM_START off
+    // only the journal seeds the scan.
+    private Map<String, FIM.FileMeta> snapshotDisk(
+            Map<String, FIM.FileMeta> seed,
+            ParallelScanner.Stats stats
+    ) throws Exception {
+        Map<String, FIM.FileMeta> map = new HashMap<>();
+        BaselineIndex baseline = baselineDisk;
+
+        ParallelScanner.scan(root.toFile(), root, p -> {
+            FIM.FileMeta m = seed.get(p);
+            return m != null || !WARM_START ? m : baseline.get(p);
+        }, map, stats);
+
+        if (stats.trusted() > 0) {
+            AppLog.info("[+] Startup: hashed " + stats.hashed.sum() + " of " + stats.files.sum()
+                    + " files (" + stats.trusted() + " verified by metadata).");
         }
+        return map;
+    }
 
-        long now = System.currentTimeMillis();
-        String renamedFrom = findFileRenameCandidate(relPath, newHash, now);
-        if (renamedFrom != null) {
-            PendingFileRename meta = pendingFileRenames.remove(renamedFrom);
-            pendingDeletes.remove(renamedFrom);
-            runtimeState.remove(renamedFrom);
-            runtimeState.put(relPath, newHash);
-
-            String oldParent = meta == null ? "" : meta.parent;
-            String newParent = parentOf(relPath);
-            if (Objects.equals(oldParent, newParent)) {
-                AppLog.info("[RENAMED FILE] " + renamedFrom + " -> " + relPath);
-                emitEvent(
-                        AlertEvent.Type.RENAMED_FILE,
-                        relPath,
-                        renamedFrom,
-                        root,
-                        false
-                );
-            } else {
-                AppLog.info("[MOVED FILE] " + renamedFrom + " -> " + relPath);
-                emitEvent(
-                        AlertEvent.Type.MOVED_FILE,
-                        relPath,
-                        renamedFrom,
-                        root,
-                        false
-                );
+    // ---------- WARM-START VERIFICATION ----------
+
+    // Re-hashes the files startup trusted by metadata. Anything whose stat has
+    // moved since is left to the normal event path.
+    private void startWarmVerify(Queue<String> paths) {
+
+        if (paths == null || paths.isEmpty()) return;
+
+        Thread t = new Thread(() -> {
+            long checked = 0;
+            long mismatched = 0;
+            String relPath;
+            while ((relPath = paths.poll()) != null) {
+                if (!running) return;
+
+                FIM.FileMeta trusted = runtimeState.get(relPath);
+                if (trusted == null || !trusted.hash.isFile()) continue;
+                try {
+                    Path p = root.resolve(relPath);
+                    FileStat st = FileStat.read(p);
+                    if (!st.matches(trusted)) continue;
+                    Digest actual = HashEngine.hash(p);
+                    checked++;
+                    if (!actual.equals(trusted.hash)) {
+                        mismatched++;
+                        verifyFindings.add(new VerifyFinding(
+                                relPath,
+                                trusted,
+                                new FIM.FileMeta(st.size, st.lastModified, actual, st.inode, st.ctime)
+                        ));
+                    }
+                } catch (Exception ignored) {}
             }
-            return;
-        }
+            AppLog.info("[+] Startup verification: " + checked + " files re-hashed, "
+                    + mismatched + " mismatched.");
+        }, "fim-verify");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        verifyThread = t;
+        t.start();
+    }
 
-        String oldRuntime = runtimeState.get(relPath);
-        String baseHash  = baselineDisk.get(relPath);
+    private void applyVerifyFindings() {
+        VerifyFinding f;
+        while ((f = verifyFindings.poll()) != null) {
+            VerifyFinding finding = f;
+            onShard(f.relPath, s -> applyVerifyFinding(finding));
+        }
+    }
 
-        if (oldRuntime == null) {
-            runtimeState.put(relPath, newHash);
-            AppLog.info("[NEW FILE] " + relPath);
-            emitEvent(AlertEvent.Type.NEW_FILE, relPath, null, root, false);
-            return;
+    // On the owning shard, ordered with the path's events.
+    private void applyVerifyFinding(VerifyFinding f) {
+        // an event already replaced the trusted entry
+        if (runtimeState.get(f.relPath) != f.trusted) return;
+
+        statePut(f.relPath, f.actual);
+        Digest baseHash = baselineDisk.hash(f.relPath);
+        if (baseHash != null && baseHash.equals(f.actual.hash)) {
+            AppLog.info("[RESTORED] " + f.relPath);
+            emitEvent(AlertEvent.Type.RESTORED, f.relPath, null, false);
+        } else {
+            AppLog.info("[MODIFIED] " + f.relPath + " (startup verification)");
+            emitEvent(AlertEvent.Type.MODIFIED, f.relPath, null, false,
+                    "startup verification");
         }
+    }
 
-        if (!newHash.equals(oldRuntime)) {
-            runtimeState.put(relPath, newHash);
-            if (baseHash != null && baseHash.equals(newHash)) {
-                AppLog.info("[RESTORED] " + relPath);
-                emitEvent(AlertEvent.Type.RESTORED, relPath, null, root, false);
-            } else {
-                AppLog.info("[MODIFIED] " + relPath);
-                emitEvent(AlertEvent.Type.MODIFIED, relPath, null, root, false);
-            }
+    private static final class VerifyFinding {
+        final String relPath;
+        final FIM.FileMeta trusted;
+        final FIM.FileMeta actual;
+
+        VerifyFinding(String relPath, FIM.FileMeta trusted, FIM.FileMeta actual) {
+            this.relPath = relPath;
+            this.trusted = trusted;
+            this.actual = actual;
         }
     }
 
-    private static Map<String, String> snapshotDisk(Path rootDir) throws Exception {
-        Map<String, String> map = new HashMap<>();
-        Path root = rootDir.toAbsolutePath().normalize();
+    // ---------- STATE + JOURNAL ----------
 
-        Files.walk(root)
-                .filter(p -> !Files.isSymbolicLink(p))
-                .forEach(p -> {
-                    if (p.equals(root)) return;
+    private Digest runtimeHash(String relPath) {
+        FIM.FileMeta m = runtimeState.get(relPath);
+        return m == null ? null : m.hash;
+    }
 
-                    String relPath = root.relativize(p)
-                            .toString()
-                            .replace(File.separatorChar, '/');
+    private void statePut(String relPath, FIM.FileMeta meta) {
+        runtimeState.put(relPath, meta);
+        if (journal != null) journal.put(relPath, meta);
+    }
 
-                    if (Files.isDirectory(p)) {
-                        map.put(relPath, FIM.DIR_HASH);
-                        return;
-                    }
+    private void stateRemove(String relPath) {
+        runtimeState.remove(relPath);
+        if (journal != null) journal.remove(relPath);
+    }
 
-                    String hash;
-                    try {
-                        hash = FIM.getFileHash(p.toFile());
-                    } catch (Exception e) {
-                        hash = FIM.UNREADABLE_HASH;
-                    }
-                    map.put(relPath, hash);
-                });
+    private void stateRemoveSubtree(String relPath) {
+        runtimeState.removeSubtree(relPath);
+        if (journal != null) journal.removeSubtree(relPath);
+    }
 
-        return map;
+    private void stateMove(String oldPath, String newPath) {
+        runtimeState.move(oldPath, newPath);
+        if (journal != null) journal.move(oldPath, newPath);
     }
 
-    private static void logStartupDrift(
-            Map<String, String> baseline,
-            Map<String, String> disk
+    // Once per loop pass: hand records to the OS, checkpoint when due. The
+    // copy is taken after the journal is rotated, so shards keep appending
+    // while it is made and no record can fall between the copy and the log.
+    private void syncJournal() {
+        if (journal == null) return;
+        journal.flush();
+        if (journal.checkpointDue()) {
+            journal.checkpoint(() -> {
+                Map<String, FIM.FileMeta> copy = new HashMap<>();
+                runtimeState.forEach(copy::put);
+                return copy;
+            });
+        }
+    }
+
+    // Merge-joins the baseline (index order) with the sorted disk snapshot.
+    private void logStartupDrift(
+            BaselineIndex baseline,
+            Map<String, FIM.FileMeta> disk
     ) {
+        List<String> paths = new ArrayList<>(disk.keySet());
+        paths.sort(BaselineFormat.PATH_ORDER);
+
         boolean changesFound = false;
 
-        for (String path : baseline.keySet()) {
-            String b = baseline.get(path);
-            String d = disk.get(path);
+        BaselineIndex.Cursor c = baseline.cursor();
+        boolean more = c.next();
+        int i = 0;
+
+        while (more || i < paths.size()) {
+
+            String path = more ? c.path() : null;
+            String diskPath = i < paths.size() ? paths.get(i) : null;
+            int cmp = path == null ? 1
+                    : diskPath == null ? -1
+                    : BaselineFormat.PATH_ORDER.compare(path, diskPath);
 
-            if (d == null) {
-                if (FIM.DIR_HASH.equals(b)) {
+            if (cmp < 0) {
+                if (c.isDir()) {
                     AppLog.info("[DELETED FOLDER] " + path);
                 } else {
                     AppLog.info("[DELETED FILE] " + path);
                 }
                 changesFound = true;
+                more = c.next();
                 continue;
             }
 
+            if (cmp > 0) {
+                if (FIM.DIR_HASH.equals(disk.get(diskPath).hash)) {
+                    AppLog.info("[NEW FOLDER] " + diskPath);
+                } else {
+                    AppLog.info("[NEW FILE] " + diskPath);
+                }
+                changesFound = true;
+                i++;
+                continue;
+            }
+
+            Digest b = c.hash();
+            Digest d = disk.get(path).hash;
+
+            more = c.next();
+            i++;
+
             if (FIM.DIR_HASH.equals(b) && !FIM.DIR_HASH.equals(d)) {
                 AppLog.info("[TYPE CHANGED] " + path);
                 changesFound = true;
@@ -632,18 +1268,6 @@ public class Monitor {
             }
         }
 
-        for (String path : disk.keySet()) {
-            if (!baseline.containsKey(path)) {
-                String d = disk.get(path);
-                if (FIM.DIR_HASH.equals(d)) {
-                    AppLog.info("[NEW FOLDER] " + path);
-                } else {
-                    AppLog.info("[NEW FILE] " + path);
-                }
-                changesFound = true;
-            }
-        }
-
         if (!changesFound) {
             AppLog.info("[OK] No pre-existing drift detected.");
         }
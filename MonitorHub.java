@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// One watch backend (with its watch budget), one event-loop thread, one
+// modify-hashing pool and one watch-registration pool shared by every
+// monitored root. Each event goes to the roots whose folder contains
+// it; rescans, polling and journal checkpoints of all roots run on the loop
+// thread, while each root hands its events on to its shard threads.
+public final class MonitorHub {
+
+    // Upper bound on an idle sleep
+    private static final long IDLE_POLL_MS = 60_000;
+
+    // How often polled folders compete with watched ones for the budget
+    private static final long REBALANCE_MS = 30_000;
+
+    // Threads walking trees to register watches (WatchRegistrar)
+    private static final int REGISTER_THREADS = Env.getInt("FIM_REGISTER_THREADS",
+            Runtime.getRuntime().availableProcessors(), 1);
+
+    // Hub of the roots currently open (null when none)
+    private static MonitorHub current;
+    private static boolean shutdownHookAdded;
+
+    private final WatchBackend backend;
+    private final WatchCoverage coverage;
+    // Durable trail of every alert (null when FIM_EVENT_LOG=off or it failed to open)
+    private final EventLog eventLog;
+    private final ThreadPoolExecutor hashPool = HashPipeline.newPool();
+    private final ForkJoinPool registerPool = new ForkJoinPool(
+            REGISTER_THREADS,
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("fim-register-" + t.getPoolIndex());
+                t.setDaemon(true);
+                return t;
+            },
+            null,
+            false
+    );
+
+    // Live roots, in attach order (read by the loop thread)
+    private final List<Monitor> roots = new CopyOnWriteArrayList<>();
+    // Roots opened on this hub, live or still starting up
+    private final List<Monitor> members = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = true;
+    private long nextRebalance;
+
+    private MonitorHub() throws IOException {
+        backend = WatchBackend.open();
+        coverage = new WatchCoverage(backend, this::covered);
+        eventLog = openEventLog();
+        Thread loop = new Thread(this::run, "fim-monitor");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    // ---------- ROOTS ----------
+
+    // The shared hub (started on first use); m stays a member until it
+    // finishes, which keeps the hub alive meanwhile.
+    static synchronized MonitorHub join(Monitor m) throws IOException {
+        if (current == null) {
+            current = new MonitorHub();
+            if (!shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(MonitorHub::stopAll, "fim-shutdown"));
+                shutdownHookAdded = true;
+            }
+        }
+        current.members.add(m);
+        return current;
+    }
+
+    // Called once per member when it has finished; the last one out stops
+    // the loop, the backend and the pool.
+    static synchronized void leave(MonitorHub hub, Monitor m) {
+        hub.roots.remove(m);
+        hub.members.remove(m);
+        if (!hub.members.isEmpty()) return;
+        if (current == hub) current = null;
+        hub.shutdown();
+    }
+
+    // Hands a started root to the loop; false if it was stopped meanwhile
+    // (or the loop has died) and the caller must finish it.
+    boolean attach(Monitor m) {
+        if (!running || !m.isRunning()) return false;
+        roots.add(m);
+        backend.wakeup();
+        return true;
+    }
+
+    // Drops the watches of a stopped root unless another root overlaps it.
+    void detach(Monitor m) {
+        roots.remove(m);
+        for (Monitor other : members) {
+            if (other == m) continue;
+            if (other.root().startsWith(m.root()) || m.root().startsWith(other.root())) return;
+        }
+        forget(m.root());
+    }
+
+    // Stops every root and waits (bounded) for their journals to close.
+    static void stopAll() {
+        MonitorHub hub;
+        synchronized (MonitorHub.class) {
+            hub = current;
+        }
+        if (hub == null) return;
+        for (Monitor m : hub.members) m.close();
+        for (Monitor m : hub.members) m.await(2000);
+    }
+
+    WatchBackend backend() {
+        return backend;
+    }
+
+    WatchCoverage coverage() {
+        return coverage;
+    }
+
+    // A folder left the tree: its watches and coverage entries go with it.
+    void forget(Path dir) {
+        coverage.forget(dir);
+        backend.forget(dir);
+    }
+
+    // A folder moved inside the tree: watches and coverage follow it.
+    void moved(Path from, Path to) {
+        coverage.moved(from, to);
+        backend.moved(from, to);
+    }
+
+    // Folders polled or promoted to a watch concern every root containing them.
+    private void covered(Path dir, boolean watched) {
+        for (Monitor m : members) {
+            if (contains(m.root(), dir)) m.covered(dir, watched);
+        }
+    }
+
+    ThreadPoolExecutor hashPool() {
+        return hashPool;
+    }
+
+    ForkJoinPool registerPool() {
+        return registerPool;
+    }
+
+    void wakeup() {
+        backend.wakeup();
+    }
+
+    // ---------- MAIN LOOP ----------
+
+    private void run() {
+
+        Exception failure = null;
+        try {
+            while (running) {
+
+                // finish roots stopped from other threads
+                for (Monitor m : roots) {
+                    if (!m.isRunning()) m.finish(null);
+                }
+
+                // sleep until the earliest deadline of any root or an OS event
+                long wait = IDLE_POLL_MS;
+                for (Monitor m : roots) wait = Math.min(wait, m.nextWakeup());
+
+                List<WatchBackend.Event> events = backend.poll(wait);
+                if (events == null) break;
+
+                for (WatchBackend.Event event : events) route(event);
+
+                long now = System.currentTimeMillis();
+                if (now >= nextRebalance) {
+                    nextRebalance = now + REBALANCE_MS;
+                    coverage.rebalance(now);
+                    coverage.report(FIM.getCoverageReportFile());
+                }
+
+                for (Monitor m : roots) {
+                    try {
+                        m.afterEvents();
+                    } catch (Exception e) {
+                        m.finish(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutting down
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        // the backend is gone: every root still open stops with it, and
+        // roots opened from now on get a new hub
+        running = false;
+        synchronized (MonitorHub.class) {
+            if (current == this) current = null;
+        }
+        for (Monitor m : members) {
+            if (roots.contains(m)) m.finish(failure);
+        }
+    }
+
+    private void route(WatchBackend.Event event) {
+
+        if (event.path != null && event.kind != WatchBackend.Kind.OVERFLOW) {
+            coverage.touch(event.path.getParent(), System.currentTimeMillis());
+        }
+
+        for (Monitor m : roots) {
+            try {
+                m.dispatch(event);
+            } catch (Exception e) {
+                m.finish(e);
+            }
+        }
+
+        // a folder moved between two roots: its watches follow it, the
+        // source root sees a delete and the target a create
+        if (event.kind == WatchBackend.Kind.MOVE && event.path.toFile().isDirectory()) {
+            for (Monitor m : roots) {
+                if (contains(m.root(), event.from) && contains(m.root(), event.path)) return;
+            }
+            moved(event.from, event.path);
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        EventCoalescer.flush();
+        if (eventLog != null) eventLog.close();
+        String alerts = AlertBus.summary();
+        if (!alerts.isEmpty()) AppLog.info("[+] Alert delivery:\n" + alerts);
+        backend.close();
+        hashPool.shutdownNow();
+        registerPool.shutdownNow();
+    }
+
+    // ---------- HELPERS ----------
+
+    private static EventLog openEventLog() {
+        if (!EventLog.ENABLED) return null;
+        try {
+            return EventLog.open(FIM.getEventLogDir());
+        } catch (IOException e) {
+            AppLog.warn("[!] Event log unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static boolean contains(Path root, Path path) {
+        return path != null && path.startsWith(root);
+    }
+}
@@ -1,54 +1,129 @@
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
+// Roots monitored from the GUI. Each root is opened on its own short-lived
+// thread (the startup scan can take a while), then runs on the shared
+// MonitorHub loop; roots are started and stopped independently.
 public final class MonitorSession {
 
     private final Object lock = new Object();
-    private Thread thread;
-    private volatile boolean running;
+    // canonical root -> its monitor, in start order
+    private final Map<Path, Root> roots = new LinkedHashMap<>();
 
     public MonitorSession() {}
 
     public boolean isRunning() {
-        return running;
+        synchronized (lock) {
+            return !roots.isEmpty();
+        }
+    }
+
+    public boolean isRunning(Path path) {
+        Path key = canonical(path);
+        synchronized (lock) {
+            return roots.containsKey(key);
+        }
+    }
+
+    public int rootCount() {
+        synchronized (lock) {
+            return roots.size();
+        }
     }
 
     public boolean start(Path path, Consumer<Exception> onError, Runnable onFinish) {
+        Path key = canonical(path);
+        Root root = new Root();
         synchronized (lock) {
-            if (running) return false;
-            running = true;
+            if (roots.containsKey(key)) return false;
+            roots.put(key, root);
         }
 
-        thread = new Thread(() -> {
+        Thread thread = new Thread(() -> {
+            Monitor m;
             try {
-                Monitor.start(path);
+                m = Monitor.open(key);
             } catch (Exception e) {
-                if (onError != null) {
-                    onError.accept(e);
-                }
-            } finally {
-                synchronized (lock) {
-                    running = false;
-                }
-                if (onFinish != null) {
-                    onFinish.run();
-                }
+                finished(key, e, onError, onFinish);
+                return;
+            }
+
+            boolean stopRequested;
+            synchronized (lock) {
+                root.monitor = m;
+                stopRequested = root.stopRequested;
             }
-        }, "fim-monitor");
+            if (stopRequested) m.close();
+            m.onStop(e -> finished(key, e, onError, onFinish));
+        }, "fim-monitor-start");
         thread.setDaemon(true);
         thread.start();
         return true;
     }
 
+    // Stops every root.
     public boolean stopAndWait(long timeoutMs) {
-        Monitor.stop();
-        Thread t = thread;
-        if (t == null) return true;
+        return stopAndWait(null, timeoutMs);
+    }
+
+    // Stops path (every root if null); true once it has finished.
+    public boolean stopAndWait(Path path, long timeoutMs) {
+        Path key = path == null ? null : canonical(path);
+
+        List<Monitor> running = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<Path, Root> e : roots.entrySet()) {
+                if (key != null && !key.equals(e.getKey())) continue;
+                e.getValue().stopRequested = true;
+                if (e.getValue().monitor != null) running.add(e.getValue().monitor);
+            }
+        }
+        for (Monitor m : running) m.close();
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            while (key == null ? !roots.isEmpty() : roots.containsKey(key)) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                try {
+                    lock.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void finished(Path key, Exception e, Consumer<Exception> onError, Runnable onFinish) {
+        synchronized (lock) {
+            roots.remove(key);
+            lock.notifyAll();
+        }
+        if (e != null && onError != null) {
+            onError.accept(e);
+        }
+        if (onFinish != null) {
+            onFinish.run();
+        }
+    }
+
+    private static Path canonical(Path path) {
         try {
-            t.join(timeoutMs);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            return path.toFile().getCanonicalFile().toPath();
+        } catch (IOException e) {
+            return path.toAbsolutePath().normalize();
         }
-        return !t.isAlive();
+    }
+
+    private static final class Root {
+        Monitor monitor;       // null while starting up
+        boolean stopRequested;
     }
 }
@@ -0,0 +1,144 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+// Tracks directories whose events were lost to an OVERFLOW and re-lists them
+// in the background, a few at a time. The watch loop diffs each listing
+// against runtimeState and replays the difference as ordinary events.
+public final class OverflowRecovery {
+
+    private static final long RESCAN_INTERVAL_MS = Env.getLong("FIM_RESCAN_INTERVAL_MS", 250, 1);
+    private static final int RESCAN_BATCH = Env.getInt("FIM_RESCAN_BATCH", 64, 1);
+
+    // relDir of every directory still to be listed (loop thread only)
+    private final Set<String> dirty = new LinkedHashSet<>();
+    private final Queue<Listing> done = new ConcurrentLinkedQueue<>();
+    private final ExecutorService lister =
+            Executors.newSingleThreadExecutor(ParallelScanner.namedThreads("fim-rescan"));
+
+    private int inFlight;          // listings submitted, not yet drained
+    private long nextRescan;       // earliest start of the next batch
+
+    // current episode (first overflow until the last listing is applied)
+    private long episodeStart;
+    private long episodeOverflows;
+    private long episodeDirs;
+
+    // ---------- MARKING ----------
+
+    void overflow(String relDir) {
+        episodeOverflows++;
+        if (episodeStart == 0) {
+            episodeStart = System.currentTimeMillis();
+            AppLog.warn("[!] Watch event overflow in " + (relDir.isEmpty() ? "<root>" : relDir)
+                    + "; rescanning affected folders.");
+        }
+        dirty.add(relDir);
+    }
+
+    // Queued without counting as an overflow (new folders found by a rescan)
+    void markDirty(String relDir) {
+        dirty.add(relDir);
+    }
+
+    boolean busy() {
+        return !dirty.isEmpty() || inFlight > 0;
+    }
+
+    // ---------- RESCAN ----------
+
+    // Starts the next batch of listings once the previous one was applied
+    // and the rate limit allows it.
+    void tick(long now, Path root) {
+
+        if (dirty.isEmpty() || inFlight > 0 || now < nextRescan) return;
+        nextRescan = now + RESCAN_INTERVAL_MS;
+
+        List<String> batch = new ArrayList<>();
+        Iterator<String> it = dirty.iterator();
+        while (it.hasNext() && batch.size() < RESCAN_BATCH) {
+            batch.add(it.next());
+            it.remove();
+        }
+
+        try {
+            for (String relDir : batch) {
+                lister.execute(() -> done.add(list(root, relDir)));
+                inFlight++;
+            }
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    // Hands every finished listing to apply; closes the episode once the
+    // dirty set has drained.
+    void drain(Consumer<Listing> apply) {
+        Listing l;
+        while ((l = done.poll()) != null) {
+            inFlight--;
+            episodeDirs++;
+            apply.accept(l);
+        }
+
+        if (episodeStart != 0 && !busy()) {
+            AppLog.info("[+] Overflow recovery: " + episodeOverflows + " overflow events, "
+                    + episodeDirs + " folders rescanned in "
+                    + (System.currentTimeMillis() - episodeStart) + " ms.");
+            episodeStart = 0;
+            episodeOverflows = 0;
+            episodeDirs = 0;
+        }
+    }
+
+    void shutdown() {
+        lister.shutdownNow();
+    }
+
+    static Listing list(Path root, String relDir) {
+
+        File dir = root.resolve(relDir).toFile();
+        File[] files = dir.listFiles();
+        if (files == null) return new Listing(relDir, null);
+
+        Map<String, FileStat> entries = new HashMap<>();
+        for (File f : files) {
+            if (Files.isSymbolicLink(f.toPath())) continue;
+            if (f.isDirectory()) {
+                entries.put(f.getName(), null);
+                continue;
+            }
+            try {
+                entries.put(f.getName(), FileStat.read(f.toPath()));
+            } catch (IOException e) {
+                // vanished while listing
+            }
+        }
+        return new Listing(relDir, entries);
+    }
+
+    static final class Listing {
+        final String relDir;
+        // name -> stat, null stat for folders; null map if relDir is gone
+        final Map<String, FileStat> entries;
+
+        Listing(String relDir, Map<String, FileStat> entries) {
+            this.relDir = relDir;
+            this.entries = entries;
+        }
+    }
+}
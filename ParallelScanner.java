@@ -0,0 +1,218 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+public final class ParallelScanner {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int WALK_THREADS = Env.getInt("FIM_SCAN_THREADS", CORES, 1);
+    static final int HASH_THREADS = Env.getInt("FIM_HASH_THREADS", CORES, 1);
+    private static final int HASH_QUEUE_PER_THREAD = 256;
+
+    private ParallelScanner() {}
+
+    // ---------- SCAN ----------
+
+    // Same contract as FIM.scanFolder: entries already present in map with
+    // unchanged metadata are kept as-is, everything else is (re)hashed.
+    static void scan(File folder, Path root, Map<String, FIM.FileMeta> map) throws Exception {
+        scan(folder, root, map::get, map, null);
+    }
+
+    // Files whose size, mtime, inode and ctime match their seed entry are
+    // copied from seed instead of being hashed. out receives every entry found
+    // on disk, so paths only present in seed do not leak into it. seed is a
+    // lookup so it can be backed by a map or by the mapped baseline index.
+    static void scan(
+            File folder,
+            Path root,
+            Function<String, FIM.FileMeta> seed,
+            Map<String, FIM.FileMeta> out,
+            Stats stats
+    ) throws Exception {
+
+        Map<String, FIM.FileMeta> results = new ConcurrentHashMap<>();
+        Stats counters = stats == null ? new Stats() : stats;
+
+        ThreadPoolExecutor hashPool = new ThreadPoolExecutor(
+                HASH_THREADS,
+                HASH_THREADS,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(HASH_THREADS * HASH_QUEUE_PER_THREAD),
+                namedThreads("fim-hash"),
+                // Queue full -> walker hashes inline (backpressure)
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+
+        ForkJoinPool walkPool = new ForkJoinPool(WALK_THREADS);
+
+        try {
+            walkPool.invoke(new DirTask(folder, root, seed, results, hashPool, counters));
+        } finally {
+            walkPool.shutdown();
+            hashPool.shutdown();
+            while (!hashPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting for in-flight hashes
+            }
+        }
+
+        out.putAll(results);
+    }
+
+    static final class Stats {
+        final LongAdder files = new LongAdder();
+        final LongAdder hashed = new LongAdder();
+        // Block trees of large files, collected only when non-null
+        final Map<String, BlockHashes.Tree> blockTrees;
+        // Paths taken from the seed without hashing, collected only when non-null
+        final Queue<String> trustedPaths;
+
+        Stats() {
+            this(false);
+        }
+
+        Stats(boolean collectBlockTrees) {
+            this(collectBlockTrees, false);
+        }
+
+        Stats(boolean collectBlockTrees, boolean collectTrusted) {
+            blockTrees = collectBlockTrees ? new ConcurrentHashMap<>() : null;
+            trustedPaths = collectTrusted ? new ConcurrentLinkedQueue<>() : null;
+        }
+
+        long trusted() {
+            return files.sum() - hashed.sum();
+        }
+    }
+
+    // ---------- WALK ----------
+
+    private static final class DirTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File dir;
+        private final Path root;
+        private final Function<String, FIM.FileMeta> seed;
+        private final Map<String, FIM.FileMeta> out;
+        private final ThreadPoolExecutor hashPool;
+        private final Stats stats;
+
+        DirTask(
+                File dir,
+                Path root,
+                Function<String, FIM.FileMeta> seed,
+                Map<String, FIM.FileMeta> out,
+                ThreadPoolExecutor hashPool,
+                Stats stats
+        ) {
+            this.dir = dir;
+            this.root = root;
+            this.seed = seed;
+            this.out = out;
+            this.hashPool = hashPool;
+            this.stats = stats;
+        }
+
+        @Override
+        protected void compute() {
+
+            File[] files = dir.listFiles();
+            if (files == null) return;
+
+            List<DirTask> subdirs = new ArrayList<>();
+
+            for (File file : files) {
+
+                if (Files.isSymbolicLink(file.toPath())) continue;
+
+                Path filePath;
+                try {
+                    filePath = file.getCanonicalFile().toPath();
+                } catch (IOException e) {
+                    continue;
+                }
+
+                if (!filePath.startsWith(root)) continue;
+
+                String relativePath = root.relativize(filePath)
+                        .toString()
+                        .replace(File.separatorChar, '/');
+
+                if (file.isDirectory()) {
+                    if (!relativePath.isEmpty()) {
+                        out.put(relativePath, new FIM.FileMeta(0, 0, FIM.DIR_HASH));
+                    }
+                    subdirs.add(new DirTask(file, root, seed, out, hashPool, stats));
+                    continue;
+                }
+
+                FileStat st;
+                try {
+                    st = FileStat.read(file.toPath());
+                } catch (IOException e) {
+                    st = null;
+                }
+                long size = st == null ? file.length() : st.size;
+                long lastModified = st == null ? file.lastModified() : st.lastModified;
+                long inode = st == null ? 0 : st.inode;
+                long ctime = st == null ? 0 : st.ctime;
+
+                stats.files.increment();
+
+                FIM.FileMeta old = seed.apply(relativePath);
+                if (old != null && st != null && old.hash.isFile() && st.matches(old)) {
+                    out.put(relativePath, old);
+                    if (stats.trustedPaths != null) stats.trustedPaths.add(relativePath);
+                    continue;
+                }
+
+                stats.hashed.increment();
+                hashPool.execute(() -> {
+                    Digest hash;
+                    try {
+                        if (stats.blockTrees != null && BlockHashes.tracks(size)) {
+                            BlockHashes.Tree tree = BlockHashes.build(file.toPath());
+                            stats.blockTrees.put(relativePath, tree);
+                            hash = tree.fileHash();
+                        } else {
+                            hash = FIM.getFileHash(file);
+                        }
+                    } catch (Exception e) {
+                        hash = FIM.UNREADABLE_HASH;
+                    }
+                    out.put(relativePath, new FIM.FileMeta(size, lastModified, hash, inode, ctime));
+                });
+            }
+
+            invokeAll(subdirs);
+        }
+    }
+
+    // ---------- HELPERS ----------
+
+    static java.util.concurrent.ThreadFactory namedThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// Path -> value store keyed by '/'-separated segments. Each segment name is
+// held once per node, so long shared prefixes are not repeated per entry, and
+// moving or dropping a directory is a relink of one node instead of a scan
+// over every key.
+public final class PathTrie<V> {
+
+    private Node<V> root = new Node<>(null, "");
+
+    // ---------- LOOKUP ----------
+
+    synchronized V get(String path) {
+        Node<V> n = find(path);
+        return n == null ? null : n.value;
+    }
+
+    synchronized boolean containsKey(String path) {
+        Node<V> n = find(path);
+        return n != null && n.value != null;
+    }
+
+    // Direct children of path that hold a value, by name.
+    synchronized Map<String, V> children(String path) {
+        Map<String, V> out = new HashMap<>();
+        Node<V> n = find(path);
+        if (n == null || n.children == null) return out;
+        for (Node<V> c : n.children.values()) {
+            if (c.value != null) out.put(c.name, c.value);
+        }
+        return out;
+    }
+
+    // Visits every entry; full paths are only built for nodes holding a value.
+    synchronized void forEach(BiConsumer<String, V> action) {
+        walk(root, new StringBuilder(), action);
+    }
+
+    // ---------- UPDATE ----------
+
+    synchronized void put(String path, V value) {
+        if (value == null) throw new NullPointerException("value");
+        create(path).value = value;
+    }
+
+    synchronized void putAll(Map<String, V> map) {
+        for (Map.Entry<String, V> e : map.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    synchronized V remove(String path) {
+        Node<V> n = find(path);
+        if (n == null) return null;
+        V old = n.value;
+        n.value = null;
+        prune(n);
+        return old;
+    }
+
+    // Drops path and everything below it. O(depth).
+    synchronized boolean removeSubtree(String path) {
+        Node<V> n = find(path);
+        if (n == null || n == root) return false;
+        Node<V> parent = n.parent;
+        parent.children.remove(n.name);
+        prune(parent);
+        return true;
+    }
+
+    // Relinks from (and its subtree) under to. O(depth) unless entries already
+    // exist below to, in which case only the overlapping nodes are merged.
+    synchronized boolean move(String from, String to) {
+        if (from.equals(to) || to.startsWith(from + "/")) return false;
+
+        Node<V> src = find(from);
+        if (src == null || src == root) return false;
+
+        Node<V> oldParent = src.parent;
+        oldParent.children.remove(src.name);
+
+        Node<V> dst = find(to);
+        if (dst == null) {
+            int slash = to.lastIndexOf('/');
+            Node<V> parent = slash < 0 ? root : create(to.substring(0, slash));
+            src.name = to.substring(slash + 1);
+            src.parent = parent;
+            parent.child(src.name, src);
+        } else {
+            merge(src, dst);
+        }
+
+        prune(oldParent);
+        return true;
+    }
+
+    // Unlinks path and its subtree into a trie of its own, keyed relative to
+    // path (path's own entry under ""). O(depth).
+    synchronized PathTrie<V> detach(String path) {
+        PathTrie<V> out = new PathTrie<>();
+        Node<V> n = find(path);
+        if (n == null || n == root) return out;
+        Node<V> parent = n.parent;
+        parent.children.remove(n.name);
+        prune(parent);
+        n.parent = null;
+        n.name = "";
+        out.root = n;
+        return out;
+    }
+
+    // Links a detached trie in at path, merging with anything already there.
+    synchronized void attach(String path, PathTrie<V> sub) {
+        Node<V> src = sub.root;
+        if (src.value == null && (src.children == null || src.children.isEmpty())) return;
+        sub.root = new Node<>(null, "");
+
+        Node<V> dst = find(path);
+        if (dst == null) {
+            int slash = path.lastIndexOf('/');
+            Node<V> parent = slash < 0 ? root : create(path.substring(0, slash));
+            src.name = path.substring(slash + 1);
+            src.parent = parent;
+            parent.child(src.name, src);
+        } else {
+            merge(src, dst);
+        }
+    }
+
+    synchronized void clear() {
+        root = new Node<>(null, "");
+    }
+
+    // ---------- INTERNAL ----------
+
+    private Node<V> find(String path) {
+        if (path.isEmpty()) return root;
+        Node<V> n = root;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf('/', start);
+            String name = end < 0 ? path.substring(start) : path.substring(start, end);
+            n = n.children == null ? null : n.children.get(name);
+            if (n == null || end < 0) return n;
+            start = end + 1;
+        }
+    }
+
+    private Node<V> create(String path) {
+        if (path.isEmpty()) return root;
+        Node<V> n = root;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf('/', start);
+            String name = end < 0 ? path.substring(start) : path.substring(start, end);
+            Node<V> next = n.children == null ? null : n.children.get(name);
+            if (next == null) {
+                next = new Node<>(n, name);
+                n.child(name, next);
+            }
+            n = next;
+            if (end < 0) return n;
+            start = end + 1;
+        }
+    }
+
+    private void walk(Node<V> n, StringBuilder path, BiConsumer<String, V> action) {
+        if (n.value != null) action.accept(path.toString(), n.value);
+        if (n.children == null) return;
+        int len = path.length();
+        for (Node<V> c : n.children.values()) {
+            if (len > 0) path.append('/');
+            path.append(c.name);
+            walk(c, path, action);
+            path.setLength(len);
+        }
+    }
+
+    // Entries from src win over dst, as a fresh put of each src path would.
+    private void merge(Node<V> src, Node<V> dst) {
+        if (src.value != null) dst.value = src.value;
+        if (src.children == null) return;
+        for (Node<V> c : src.children.values()) {
+            Node<V> existing = dst.children == null ? null : dst.children.get(c.name);
+            if (existing == null) {
+                c.parent = dst;
+                dst.child(c.name, c);
+            } else {
+                merge(c, existing);
+            }
+        }
+    }
+
+    // Removes empty nodes from n upwards.
+    private void prune(Node<V> n) {
+        while (n != root && n.value == null && (n.children == null || n.children.isEmpty())) {
+            n.parent.children.remove(n.name);
+            n = n.parent;
+        }
+    }
+
+    private static final class Node<V> {
+        Node<V> parent;
+        String name;
+        V value;
+        Map<String, Node<V>> children; // created on first child
+
+        Node(Node<V> parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        void child(String name, Node<V> node) {
+            if (children == null) children = new HashMap<>(4);
+            children.put(name, node);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+// Pending delete halves of possible renames, indexed so the matching create
+// never scans them: by group (content digest for files, a single shared group
+// for folders) and by group + parent directory. Both indexes are ordered by
+// delete time, so "newest candidate in the window" and "the only candidate in
+// the window" are read off the last two entries.
+public final class RenameIndex<G> {
+
+    private final Map<String, Entry<G>> byPath = new HashMap<>();
+    private final Map<G, NavigableSet<Entry<G>>> byGroup = new HashMap<>();
+    private final Map<G, Map<String, NavigableSet<Entry<G>>>> byParent = new HashMap<>();
+    private long seq;
+
+    // ---------- UPDATE ----------
+
+    // Returns the entry path replaced, if any.
+    Entry<G> put(String path, G group, String parent, long time) {
+        Entry<G> old = remove(path);
+        Entry<G> e = new Entry<>(path, group, parent, time, seq++);
+        byPath.put(path, e);
+        byGroup.computeIfAbsent(group, g -> new TreeSet<>()).add(e);
+        byParent.computeIfAbsent(group, g -> new HashMap<>())
+                .computeIfAbsent(parent, p -> new TreeSet<>())
+                .add(e);
+        return old;
+    }
+
+    Entry<G> remove(String path) {
+        Entry<G> e = byPath.remove(path);
+        if (e == null) return null;
+
+        NavigableSet<Entry<G>> group = byGroup.get(e.group);
+        group.remove(e);
+        if (group.isEmpty()) byGroup.remove(e.group);
+
+        Map<String, NavigableSet<Entry<G>>> parents = byParent.get(e.group);
+        NavigableSet<Entry<G>> siblings = parents.get(e.parent);
+        siblings.remove(e);
+        if (siblings.isEmpty()) parents.remove(e.parent);
+        if (parents.isEmpty()) byParent.remove(e.group);
+        return e;
+    }
+
+    void clear() {
+        byPath.clear();
+        byGroup.clear();
+        byParent.clear();
+    }
+
+    // ---------- LOOKUP ----------
+
+    Entry<G> get(String path) {
+        return byPath.get(path);
+    }
+
+    int size() {
+        return byPath.size();
+    }
+
+    // Candidates are entries of group deleted at or after since. Prefers the
+    // newest one under parent; otherwise the group's only candidate, or null
+    // when it is ambiguous.
+    String match(G group, String parent, long since) {
+
+        Map<String, NavigableSet<Entry<G>>> parents = byParent.get(group);
+        if (parents == null) return null;
+
+        NavigableSet<Entry<G>> siblings = parents.get(parent);
+        if (siblings != null && siblings.last().time >= since) {
+            return siblings.last().path;
+        }
+
+        NavigableSet<Entry<G>> all = byGroup.get(group);
+        Entry<G> newest = all.last();
+        if (newest.time < since) return null;
+        Entry<G> next = all.lower(newest);
+        return next == null || next.time < since ? newest.path : null;
+    }
+
+    static final class Entry<G> implements Comparable<Entry<G>> {
+        final String path;
+        final G group;
+        final String parent;
+        final long time;
+        private final long seq; // tie-break for equal times
+
+        Entry(String path, G group, String parent, long time, long seq) {
+            this.path = path;
+            this.group = group;
+            this.parent = parent;
+            this.time = time;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Entry<G> o) {
+            int c = Long.compare(time, o.time);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+// Plain SHA-256 whose chaining state can be exported at 64-byte boundaries and
+// resumed later. MessageDigest cannot do that, and it is what lets BlockHashes
+// derive the file-level digest without rereading unchanged leading blocks.
+public final class Sha256 {
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private final int[] h = new int[8];
+    private final int[] w = new int[64];
+    private final byte[] pending = new byte[64];
+    private int pendingLen;
+    private long length;
+
+    Sha256() {
+        System.arraycopy(IV, 0, h, 0, 8);
+    }
+
+    // bytesSoFar must be a multiple of 64 (the state was exported at a boundary)
+    static Sha256 resume(int[] state, int offset, long bytesSoFar) {
+        if ((bytesSoFar & 63) != 0) {
+            throw new IllegalArgumentException("Not a 64-byte boundary: " + bytesSoFar);
+        }
+        Sha256 s = new Sha256();
+        System.arraycopy(state, offset, s.h, 0, 8);
+        s.length = bytesSoFar;
+        return s;
+    }
+
+    void update(byte[] b, int off, int len) {
+        length += len;
+
+        if (pendingLen > 0) {
+            int n = Math.min(len, 64 - pendingLen);
+            System.arraycopy(b, off, pending, pendingLen, n);
+            pendingLen += n;
+            off += n;
+            len -= n;
+            if (pendingLen < 64) return;
+            compress(pending, 0);
+            pendingLen = 0;
+        }
+
+        while (len >= 64) {
+            compress(b, off);
+            off += 64;
+            len -= 64;
+        }
+
+        if (len > 0) {
+            System.arraycopy(b, off, pending, 0, len);
+            pendingLen = len;
+        }
+    }
+
+    // Copies the chaining state into out[offset..offset+8).
+    void exportState(int[] out, int offset) {
+        if (pendingLen != 0) {
+            throw new IllegalStateException("State is only exportable at a 64-byte boundary");
+        }
+        System.arraycopy(h, 0, out, offset, 8);
+    }
+
+    byte[] digest() {
+        long bits = length * 8;
+        byte[] pad = new byte[(pendingLen < 56 ? 56 : 120) - pendingLen + 8];
+        pad[0] = (byte) 0x80;
+        for (int i = 0; i < 8; i++) {
+            pad[pad.length - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        long saved = length;
+        update(pad, 0, pad.length);
+        length = saved;
+
+        byte[] out = new byte[32];
+        for (int i = 0; i < 8; i++) {
+            out[i * 4] = (byte) (h[i] >>> 24);
+            out[i * 4 + 1] = (byte) (h[i] >>> 16);
+            out[i * 4 + 2] = (byte) (h[i] >>> 8);
+            out[i * 4 + 3] = (byte) h[i];
+        }
+        return out;
+    }
+
+    private void compress(byte[] b, int off) {
+        for (int i = 0; i < 16; i++) {
+            int j = off + i * 4;
+            w[i] = (b[j] << 24) | ((b[j + 1] & 0xff) << 16) | ((b[j + 2] & 0xff) << 8) | (b[j + 3] & 0xff);
+        }
+        for (int i = 16; i < 64; i++) {
+            int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18) ^ (w[i - 15] >>> 3);
+            int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19) ^ (w[i - 2] >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = h[0], b1 = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], hh = h[7];
+
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = hh + s1 + ch + K[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b1) ^ (a & c) ^ (b1 & c);
+            int t2 = s0 + maj;
+            hh = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b1;
+            b1 = a;
+            a = t1 + t2;
+        }
+
+        h[0] += a;
+        h[1] += b1;
+        h[2] += c;
+        h[3] += d;
+        h[4] += e;
+        h[5] += f;
+        h[6] += g;
+        h[7] += hh;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// PathTrie split into slices by top-level path segment, one per monitor
+// shard. Each slice has its own lock, so shards working on different
+// subtrees never contend; a move between slices detaches the subtree from
+// one slice and attaches it to the other.
+public final class ShardedTrie<V> {
+
+    private final List<PathTrie<V>> slices = new ArrayList<>();
+
+    ShardedTrie(int n) {
+        for (int i = 0; i < n; i++) slices.add(new PathTrie<>());
+    }
+
+    // Slice (and shard) of a '/'-separated relative path
+    static int slice(String path, int n) {
+        int slash = path.indexOf('/');
+        String top = slash < 0 ? path : path.substring(0, slash);
+        return Math.floorMod(top.hashCode(), n);
+    }
+
+    private PathTrie<V> of(String path) {
+        return slices.get(slice(path, slices.size()));
+    }
+
+    // ---------- LOOKUP ----------
+
+    V get(String path) {
+        return of(path).get(path);
+    }
+
+    boolean containsKey(String path) {
+        return of(path).containsKey(path);
+    }
+
+    // The root's children are spread over every slice.
+    Map<String, V> children(String path) {
+        if (!path.isEmpty()) return of(path).children(path);
+        Map<String, V> out = new HashMap<>();
+        for (PathTrie<V> t : slices) out.putAll(t.children(path));
+        return out;
+    }
+
+    // Visits every entry, one slice at a time.
+    void forEach(BiConsumer<String, V> action) {
+        for (PathTrie<V> t : slices) t.forEach(action);
+    }
+
+    // ---------- UPDATE ----------
+
+    void put(String path, V value) {
+        of(path).put(path, value);
+    }
+
+    void putAll(Map<String, V> map) {
+        for (Map.Entry<String, V> e : map.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    V remove(String path) {
+        return of(path).remove(path);
+    }
+
+    boolean removeSubtree(String path) {
+        return of(path).removeSubtree(path);
+    }
+
+    boolean move(String from, String to) {
+        PathTrie<V> src = of(from);
+        PathTrie<V> dst = of(to);
+        if (src == dst) return src.move(from, to);
+        if (from.isEmpty() || to.isEmpty()) return false;
+        dst.attach(to, src.detach(from));
+        return true;
+    }
+
+    void clear() {
+        for (PathTrie<V> t : slices) t.clear();
+    }
+}
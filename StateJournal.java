@@ -0,0 +1,346 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Append-only journal of Monitor runtime-state mutations plus periodic
+// checkpoints (written in the binary baseline format). Recovery yields a seed,
+// not the truth: Monitor re-stats every file and only trusts an entry whose
+// size/mtime/inode/ctime still match, so a lost or stale record costs a
+// re-hash, never a missed change.
+public final class StateJournal {
+
+    static final boolean ENABLED = !"off".equalsIgnoreCase(System.getenv("FIM_JOURNAL"));
+
+    private static final long CHECKPOINT_MS = Env.getLong("FIM_CHECKPOINT_SEC", 300, 1) * 1000;
+    private static final long MAX_JOURNAL_BYTES = Env.getLong("FIM_JOURNAL_MAX_BYTES", 64L * 1024 * 1024, 1);
+
+    // Record: len:varint | payload | crc32(payload):i32
+    // Payload: op:u8 | path | ...   (strings are len:varint | utf8)
+    //   PUT:    kind:u8 | size:i64 | mtime:i64 | inode:i64 | ctime:i64 | digest:32 (FILE)
+    //   MOVE:   target path
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_REMOVE_SUBTREE = 3;
+    private static final byte OP_MOVE = 4;
+
+    private final File checkpoint;
+    private final File journal;
+    private final File previous; // journal being folded into a checkpoint
+
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream payload = new DataOutputStream(record);
+    private final byte[] digest = new byte[Digest.LENGTH];
+    private final CRC32 crc = new CRC32();
+
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(ParallelScanner.namedThreads("fim-checkpoint"));
+
+    private FileOutputStream file;
+    private DataOutputStream out;
+    private long journalBytes;
+    private long lastCheckpoint = System.currentTimeMillis();
+    private Future<?> inFlight;
+    private boolean closed;
+
+    StateJournal(File checkpoint, File journal) {
+        this.checkpoint = checkpoint;
+        this.journal = journal;
+        this.previous = new File(journal.getParentFile(), journal.getName() + ".old");
+    }
+
+    // ---------- RECOVERY ----------
+
+    // Checkpoint, then the journal being folded (if a checkpoint was cut
+    // short), then the live journal. Empty if there is nothing to recover.
+    Map<String, FIM.FileMeta> recover() {
+
+        PathTrie<FIM.FileMeta> state = new PathTrie<>();
+        long records = 0;
+
+        if (checkpoint.exists()) {
+            try {
+                state.putAll(BaselineFormat.readAll(checkpoint));
+            } catch (IOException e) {
+                AppLog.warn("[!] State checkpoint unreadable: " + e.getMessage());
+            }
+        }
+        records += replay(previous, state);
+        records += replay(journal, state);
+
+        Map<String, FIM.FileMeta> map = new HashMap<>();
+        state.forEach(map::put);
+
+        if (!map.isEmpty()) {
+            AppLog.info("[+] Recovered " + map.size() + " entries from state checkpoint"
+                    + " (+" + records + " journal records).");
+        }
+        return map;
+    }
+
+    private long replay(File f, PathTrie<FIM.FileMeta> state) {
+
+        if (!f.exists()) return 0;
+
+        long n = 0;
+        CRC32 check = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f), 256 * 1024))) {
+
+            while (true) {
+                int len;
+                try {
+                    len = (int) BaselineFormat.readVarint(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] body = new byte[len];
+                in.readFully(body);
+                int stored = in.readInt();
+
+                check.reset();
+                check.update(body, 0, len);
+                if ((int) check.getValue() != stored) break; // torn tail
+
+                apply(new DataInputStream(new ByteArrayInputStream(body)), state);
+                n++;
+            }
+        } catch (IOException e) {
+            // truncated record at the tail: everything before it is applied
+        }
+        return n;
+    }
+
+    private void apply(DataInputStream in, PathTrie<FIM.FileMeta> state) throws IOException {
+        byte op = in.readByte();
+        String path = readString(in);
+        switch (op) {
+            case OP_PUT: {
+                byte kind = in.readByte();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long inode = in.readLong();
+                long ctime = in.readLong();
+                Digest hash;
+                if (kind == BaselineFormat.KIND_DIR) {
+                    hash = FIM.DIR_HASH;
+                } else if (kind == BaselineFormat.KIND_FILE) {
+                    in.readFully(digest);
+                    hash = Digest.of(digest);
+                } else {
+                    hash = FIM.UNREADABLE_HASH;
+                }
+                state.put(path, new FIM.FileMeta(size, mtime, hash, inode, ctime));
+                break;
+            }
+            case OP_REMOVE:
+                state.remove(path);
+                break;
+            case OP_REMOVE_SUBTREE:
+                state.removeSubtree(path);
+                break;
+            case OP_MOVE:
+                state.move(path, readString(in));
+                break;
+            default:
+                throw new IOException("Unknown journal op: " + op);
+        }
+    }
+
+    // ---------- APPEND ----------
+
+    synchronized void put(String path, FIM.FileMeta meta) {
+        try {
+            begin(OP_PUT, path);
+            byte kind = meta.hash.isDir() ? BaselineFormat.KIND_DIR
+                    : meta.hash.isFile() ? BaselineFormat.KIND_FILE
+                    : BaselineFormat.KIND_UNREADABLE;
+            payload.writeByte(kind);
+            payload.writeLong(meta.size);
+            payload.writeLong(meta.lastModified);
+            payload.writeLong(meta.inode);
+            payload.writeLong(meta.ctime);
+            if (kind == BaselineFormat.KIND_FILE) {
+                meta.hash.copyTo(digest, 0);
+                payload.write(digest);
+            }
+            commit();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void remove(String path) {
+        try {
+            begin(OP_REMOVE, path);
+            commit();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void removeSubtree(String path) {
+        try {
+            begin(OP_REMOVE_SUBTREE, path);
+            commit();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void move(String from, String to) {
+        try {
+            begin(OP_MOVE, from);
+            writeString(payload, to);
+            commit();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    // Hands buffered records to the OS (called once per loop and shard pass).
+    synchronized void flush() {
+        if (out == null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    private void begin(byte op, String path) throws IOException {
+        if (closed) throw new IOException("journal closed");
+        if (out == null) openJournal();
+        record.reset();
+        payload.writeByte(op);
+        writeString(payload, path);
+    }
+
+    private void commit() throws IOException {
+        byte[] body = record.toByteArray();
+        crc.reset();
+        crc.update(body, 0, body.length);
+
+        BaselineFormat.writeVarint(out, body.length);
+        out.write(body);
+        out.writeInt((int) crc.getValue());
+        journalBytes += body.length + 8;
+    }
+
+    private void openJournal() throws IOException {
+        file = new FileOutputStream(journal, true);
+        out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        journalBytes = journal.length();
+    }
+
+    private void failed(IOException e) {
+        if (closed) return; // Monitor is shutting down
+        AppLog.warn("[!] State journal write failed: " + e.getMessage());
+    }
+
+    // ---------- CHECKPOINT ----------
+
+    boolean checkpointDue() {
+        return System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_MS
+                || journalBytes >= MAX_JOURNAL_BYTES;
+    }
+
+    // Wall-clock time the interval checkpoint falls due
+    long nextCheckpoint() {
+        return lastCheckpoint + CHECKPOINT_MS;
+    }
+
+    // Only the rotation holds the journal lock: the live journal is set aside
+    // and a new one started, and that file boundary is where replay on top of
+    // this checkpoint begins. snapshot must return a private copy; it is taken
+    // after the rotation, so it holds everything in the set-aside journal (and
+    // perhaps some records of the new one, which replay again harmlessly: the
+    // recovered state is re-stat'ed anyway). The copy is written in the
+    // background, after which the old journal is dropped. Skipped while a
+    // previous checkpoint is still running.
+    void checkpoint(Supplier<Map<String, FIM.FileMeta>> snapshot) {
+        if (!rotate()) return;
+        Map<String, FIM.FileMeta> state = snapshot.get();
+
+        synchronized (this) {
+            if (closed) return;
+            inFlight = writer.submit(() -> {
+                try {
+                    BaselineFormat.write(checkpoint, state);
+                    Files.deleteIfExists(previous.toPath());
+                } catch (IOException e) {
+                    AppLog.warn("[!] State checkpoint failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private synchronized boolean rotate() {
+
+        if (closed || (inFlight != null && !inFlight.isDone())) return false;
+        lastCheckpoint = System.currentTimeMillis();
+
+        try {
+            closeJournal();
+            if (journal.exists()) {
+                Files.move(journal.toPath(), previous.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            openJournal();
+            return true;
+        } catch (IOException e) {
+            failed(e);
+            return false;
+        }
+    }
+
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            closeJournal();
+        } catch (IOException e) {
+            failed(e);
+        }
+        writer.shutdown();
+    }
+
+    private void closeJournal() throws IOException {
+        if (out == null) return;
+        out.flush();
+        file.getFD().sync();
+        out.close();
+        out = null;
+        file = null;
+    }
+
+    // ---------- HELPERS ----------
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        BaselineFormat.writeVarint(out, b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[(int) BaselineFormat.readVarint(in)];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Integrity check as a merge-join of two sorted streams: the binary baseline
+// (PATH_ORDER) and a depth-first walk that visits children in name order.
+// Memory is bounded by the walk depth plus the in-flight hash window.
+public final class StreamingCheck {
+
+    private static final int WINDOW = ParallelScanner.HASH_THREADS * 64;
+
+    private static final Comparator<File> BY_NAME =
+            (a, b) -> BaselineFormat.PATH_ORDER.compare(a.getName(), b.getName());
+
+    private final ExecutorService hashPool;
+    private final Deque<Pending> window = new ArrayDeque<>();
+    private boolean changesFound;
+
+    private StreamingCheck(ExecutorService hashPool) {
+        this.hashPool = hashPool;
+    }
+
+    // ---------- RUN ----------
+
+    static void run(File folder, Path root, File baseline) throws Exception {
+
+        if (BaselineFormat.convertLegacy(baseline)) {
+            AppLog.info("[+] Legacy baseline converted to binary format.");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                ParallelScanner.HASH_THREADS,
+                ParallelScanner.namedThreads("fim-check")
+        );
+
+        try (BaselineFormat.Reader base = BaselineFormat.open(baseline)) {
+            StreamingCheck check = new StreamingCheck(pool);
+            check.merge(base, new SortedWalk(folder, root));
+
+            if (!check.changesFound) {
+                AppLog.info("[OK] No changes detected.");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        AppLog.info("\nIntegrity check completed.");
+    }
+
+    // ---------- MERGE ----------
+
+    private void merge(BaselineFormat.Reader base, SortedWalk walk) throws Exception {
+
+        boolean hasBase = base.next();
+        String basePath = hasBase ? base.path() : null;
+        Entry disk = walk.next();
+
+        while (hasBase || disk != null) {
+
+            int cmp = !hasBase ? 1
+                    : disk == null ? -1
+                    : BaselineFormat.PATH_ORDER.compare(basePath, disk.path);
+
+            if (cmp < 0) {
+                String msg = base.kind() == BaselineFormat.KIND_DIR
+                        ? "[DELETED FOLDER] " + basePath
+                        : "[DELETED FILE] " + basePath;
+                enqueue(new Pending(msg));
+            } else if (cmp > 0) {
+                String msg = disk.file == null
+                        ? "[NEW FOLDER] " + disk.path
+                        : "[NEW FILE] " + disk.path;
+                enqueue(new Pending(msg));
+            } else {
+                compare(base, disk);
+            }
+
+            if (cmp <= 0) {
+                hasBase = base.next();
+                basePath = hasBase ? base.path() : null;
+            }
+            if (cmp >= 0) {
+                disk = walk.next();
+            }
+        }
+
+        drain(0);
+    }
+
+    private void compare(BaselineFormat.Reader base, Entry disk) throws Exception {
+
+        boolean baseDir = base.kind() == BaselineFormat.KIND_DIR;
+        boolean diskDir = disk.file == null;
+
+        if (baseDir || diskDir) {
+            if (baseDir != diskDir) {
+                enqueue(new Pending("[TYPE CHANGED] " + disk.path));
+            }
+            return;
+        }
+
+        File file = disk.file;
+        Future<Digest> hash = hashPool.submit(() -> {
+            try {
+                return FIM.getFileHash(file);
+            } catch (Exception e) {
+                return FIM.UNREADABLE_HASH;
+            }
+        });
+
+        enqueue(new Pending(
+                disk.path,
+                base.size(),
+                base.lastModified(),
+                base.hash(),
+                disk.size,
+                disk.lastModified,
+                hash
+        ));
+    }
+
+    // ---------- ORDERED OUTPUT ----------
+
+    private void enqueue(Pending p) throws Exception {
+        window.addLast(p);
+        drain(WINDOW);
+    }
+
+    // Emits finished results from the head; blocks only while the window is full.
+    private void drain(int keep) throws Exception {
+        while (!window.isEmpty()) {
+            Pending head = window.peekFirst();
+            if (window.size() <= keep && !head.isDone()) return;
+            window.removeFirst();
+            head.emit();
+        }
+    }
+
+    private final class Pending {
+
+        private final String message;
+        private final String path;
+        private final long oldSize;
+        private final long oldModified;
+        private final Digest oldHash;
+        private final long size;
+        private final long lastModified;
+        private final Future<Digest> hash;
+
+        Pending(String message) {
+            this(message, null, 0, 0, null, 0, 0, null);
+        }
+
+        Pending(String path, long oldSize, long oldModified, Digest oldHash,
+                long size, long lastModified, Future<Digest> hash) {
+            this(null, path, oldSize, oldModified, oldHash, size, lastModified, hash);
+        }
+
+        private Pending(String message, String path, long oldSize, long oldModified,
+                        Digest oldHash, long size, long lastModified, Future<Digest> hash) {
+            this.message = message;
+            this.path = path;
+            this.oldSize = oldSize;
+            this.oldModified = oldModified;
+            this.oldHash = oldHash;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        boolean isDone() {
+            return hash == null || hash.isDone();
+        }
+
+        void emit() throws InterruptedException, ExecutionException {
+
+            if (hash == null) {
+                AppLog.info(message);
+                changesFound = true;
+                return;
+            }
+
+            Digest newHash = hash.get();
+
+            if (FIM.UNREADABLE_HASH.equals(newHash)) {
+                AppLog.warn("[SKIPPED] " + path + " (unreadable)");
+                changesFound = true;
+                return;
+            }
+
+            if (oldSize != size ||
+                    oldModified != lastModified ||
+                    !oldHash.equals(newHash)) {
+
+                AppLog.info("[MODIFIED] " + path);
+                changesFound = true;
+            }
+        }
+    }
+
+    // ---------- SORTED WALK ----------
+
+    private static final class Entry {
+        final String path;
+        final File file; // null for directories
+        final long size;
+        final long lastModified;
+
+        Entry(String path, File file, long size, long lastModified) {
+            this.path = path;
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    // Depth-first walk with the same filtering as FIM.scanFolder; only one
+    // sorted listing per directory on the current path is held at a time.
+    private static final class SortedWalk {
+
+        private final Path root;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+
+        SortedWalk(File folder, Path root) {
+            this.root = root;
+            push(folder);
+        }
+
+        Entry next() {
+            while (!stack.isEmpty()) {
+
+                Frame top = stack.peekFirst();
+                if (top.next >= top.files.length) {
+                    stack.removeFirst();
+                    continue;
+                }
+                File file = top.files[top.next++];
+
+                if (Files.isSymbolicLink(file.toPath())) continue;
+
+                Path filePath;
+                try {
+                    filePath = file.getCanonicalFile().toPath();
+                } catch (IOException e) {
+                    continue;
+                }
+
+                if (!filePath.startsWith(root)) continue;
+
+                String relativePath = root.relativize(filePath)
+                        .toString()
+                        .replace(File.separatorChar, '/');
+
+                if (file.isDirectory()) {
+                    push(file);
+                    if (relativePath.isEmpty()) continue;
+                    return new Entry(relativePath, null, 0, 0);
+                }
+
+                return new Entry(relativePath, file, file.length(), file.lastModified());
+            }
+            return null;
+        }
+
+        private void push(File dir) {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            Arrays.sort(files, BY_NAME);
+            stack.addFirst(new Frame(files));
+        }
+
+        private static final class Frame {
+            final File[] files;
+            int next;
+
+            Frame(File[] files) {
+                this.files = files;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+// Source of filesystem events for Monitor. JdkWatchBackend (WatchService)
+// works everywhere; InotifyBackend (Linux, JDK 22+) adds close-write events
+// and kernel-paired moves.
+public interface WatchBackend {
+
+    enum Kind { CREATE, DELETE, MODIFY, CLOSE_WRITE, MOVE, OVERFLOW }
+
+    final class Event {
+        final Kind kind;
+        final Path path; // affected entry; the folder for OVERFLOW (null = unknown)
+        final Path from; // MOVE source, otherwise null
+
+        Event(Kind kind, Path path, Path from) {
+            this.kind = kind;
+            this.path = path;
+            this.from = from;
+        }
+    }
+
+    void register(Path dir) throws IOException;
+
+    // Events seen within timeoutMs (possibly none); null once closed.
+    List<Event> poll(long timeoutMs) throws InterruptedException;
+
+    // Makes a blocked poll return early (with whatever it has, possibly
+    // nothing). Safe from any thread.
+    void wakeup();
+
+    // A folder moved inside the tree: watches below from now report under to.
+    default void moved(Path from, Path to) {}
+
+    // A folder left the tree (deleted or moved out): stop watching below it.
+    default void forget(Path dir) {}
+
+    // Stops watching dir itself (folders below keep their watches).
+    default void unregister(Path dir) {}
+
+    String name();
+
+    void close();
+
+    // FIM_WATCH_BACKEND: jdk (default), inotify, or auto (inotify when
+    // available). The native backend is opt-in until it has had the same
+    // field time as WatchService.
+    static WatchBackend open() throws IOException {
+
+        String wanted = System.getenv("FIM_WATCH_BACKEND");
+        wanted = wanted == null ? "jdk" : wanted.trim().toLowerCase();
+
+        if (!wanted.equals("jdk")) {
+            try {
+                WatchBackend b = InotifyBackend.open();
+                if (b != null) return b;
+                if (wanted.equals("inotify")) {
+                    AppLog.warn("[!] inotify backend needs Linux and JDK 22+; using WatchService.");
+                }
+            } catch (Throwable e) {
+                AppLog.warn("[!] inotify backend unavailable (" + e + "); using WatchService.");
+            }
+        }
+        return new JdkWatchBackend();
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+// Decides which folders get a kernel watch and which are polled. On Linux
+// watches come out of a per-user budget (fs.inotify.max_user_watches, shared
+// with every other process of the user); once it is spent, further folders
+// are handed to their root's MetadataPoller instead of going unmonitored.
+// Folders are ranked by configured priority plus a decayed event rate, and
+// MonitorHub periodically swaps the hottest polled folders with the coldest
+// watched ones.
+public final class WatchCoverage {
+
+    enum Mode { WATCHED, POLLED, GONE }
+
+    // Gets every folder whose mode changed (from any thread, lock not held)
+    interface Listener {
+        void covered(Path dir, boolean watched);
+    }
+
+    // Share of max_user_watches this process may use by default
+    private static final double BUDGET_SHARE = 0.9;
+    private static final String MAX_WATCHES = "/proc/sys/fs/inotify/max_user_watches";
+
+    // Event rate halves every HALF_LIFE_MS without events
+    private static final long HALF_LIFE_MS = 10 * 60_000;
+    // A polled folder must beat a watched one by this much to swap places
+    private static final double HYSTERESIS = 1.0;
+    // Swaps per rebalance
+    private static final int SWAP_BATCH = 256;
+
+    private final WatchBackend backend;
+    private final Listener listener;
+    private final List<Priority> priorities = parsePriorities(System.getenv("FIM_WATCH_PRIORITY"));
+
+    // absolute folder -> coverage (guarded by this)
+    private final NavigableMap<String, Folder> folders = new TreeMap<>();
+    private int budget;
+    private int watched;
+    private int polled;
+    private boolean exhausted;
+    private boolean changed;
+
+    WatchCoverage(WatchBackend backend, Listener listener) {
+        this.backend = backend;
+        this.listener = listener;
+        this.budget = initialBudget();
+    }
+
+    // ---------- ADMISSION ----------
+
+    // Watches dir while the budget lasts, polls it otherwise. Safe from any
+    // thread; the register call itself runs outside the lock.
+    Mode admit(Path dir) {
+
+        String key = dir.toString();
+        Folder f;
+        boolean watch;
+        synchronized (this) {
+            f = folders.get(key);
+            if (f == null) {
+                f = new Folder(priorityOf(key));
+                folders.put(key, f);
+                watch = watched < budget;
+                if (watch) {
+                    f.watched = true;
+                    watched++;
+                } else {
+                    polled++;
+                }
+                changed = true;
+            } else {
+                // known (e.g. re-walked after a rename): refresh the watch's path
+                watch = f.watched;
+            }
+        }
+
+        if (watch) {
+            try {
+                backend.register(dir);
+                return Mode.WATCHED;
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (!Files.isDirectory(dir)) {
+                        if (folders.remove(key) == f && f.watched) watched--;
+                        return Mode.GONE;
+                    }
+                    if (f.watched) {
+                        f.watched = false;
+                        watched--;
+                        polled++;
+                    }
+                    exhausted(e);
+                }
+            }
+        }
+
+        listener.covered(dir, false);
+        return Mode.POLLED;
+    }
+
+    // Every folder at or below dir left the tree.
+    void forget(Path dir) {
+        synchronized (this) {
+            for (String key : subtree(dir.toString())) {
+                if (folders.remove(key).watched) watched--;
+                else polled--;
+                changed = true;
+            }
+        }
+    }
+
+    // Folders below from now live below to; polled ones are announced again
+    // under their new path.
+    void moved(Path from, Path to) {
+        List<Path> repoll = new ArrayList<>();
+        synchronized (this) {
+            String f = from.toString();
+            String t = to.toString();
+            for (String key : subtree(f)) {
+                Folder folder = folders.remove(key);
+                String now = t + key.substring(f.length());
+                // already admitted under the new path by a walk racing the move
+                Folder dup = folders.put(now, folder);
+                if (dup != null) {
+                    if (dup.watched) watched--;
+                    else polled--;
+                }
+                if (!folder.watched) repoll.add(Path.of(now));
+                changed = true;
+            }
+        }
+        for (Path p : repoll) listener.covered(p, false);
+    }
+
+    // An event in dir (its own folder, i.e. the parent of the entry).
+    synchronized void touch(Path dir, long now) {
+        if (dir == null) return;
+        Folder f = folders.get(dir.toString());
+        if (f == null) return;
+        f.rate = f.rateAt(now) + 1;
+        f.touched = now;
+    }
+
+    // ---------- REBALANCE ----------
+
+    // Promotes the hottest polled folders into free budget, then swaps them
+    // with colder watched folders. Runs on the loop thread.
+    void rebalance(long now) {
+
+        List<Path> promoted = new ArrayList<>();
+        List<Path> demoted = new ArrayList<>();
+
+        synchronized (this) {
+            if (polled == 0) return;
+
+            Comparator<Map.Entry<String, Folder>> byScore =
+                    Comparator.comparingDouble(e -> e.getValue().score(now));
+            PriorityQueue<Map.Entry<String, Folder>> hot = new PriorityQueue<>(byScore);
+            PriorityQueue<Map.Entry<String, Folder>> cold = new PriorityQueue<>(byScore.reversed());
+            for (Map.Entry<String, Folder> e : folders.entrySet()) {
+                PriorityQueue<Map.Entry<String, Folder>> q = e.getValue().watched ? cold : hot;
+                q.add(e);
+                if (q.size() > SWAP_BATCH) q.poll();
+            }
+
+            List<Map.Entry<String, Folder>> up = drainReversed(hot);   // hottest first
+            List<Map.Entry<String, Folder>> down = drainReversed(cold); // coldest first
+
+            int j = 0;
+            for (Map.Entry<String, Folder> p : up) {
+                if (watched >= budget) {
+                    if (j >= down.size()) break;
+                    Map.Entry<String, Folder> w = down.get(j);
+                    if (p.getValue().score(now) <= w.getValue().score(now) + HYSTERESIS) break;
+                    j++;
+                    Path wp = Path.of(w.getKey());
+                    backend.unregister(wp);
+                    w.getValue().watched = false;
+                    watched--;
+                    polled++;
+                    demoted.add(wp);
+                }
+
+                Path pp = Path.of(p.getKey());
+                try {
+                    backend.register(pp);
+                } catch (IOException e) {
+                    if (Files.isDirectory(pp)) exhausted(e);
+                    break;
+                }
+                p.getValue().watched = true;
+                watched++;
+                polled--;
+                promoted.add(pp);
+            }
+            if (!promoted.isEmpty() || !demoted.isEmpty()) changed = true;
+        }
+
+        for (Path p : demoted) listener.covered(p, false);
+        for (Path p : promoted) listener.covered(p, true);
+        if (!promoted.isEmpty()) {
+            AppLog.info("[+] Watch coverage: " + promoted.size() + " folders promoted to watches, "
+                    + demoted.size() + " demoted to polling (" + summary() + ").");
+        }
+    }
+
+    // ---------- REPORT ----------
+
+    synchronized String summary() {
+        return watched + " watched, " + polled + " polled, budget " + budget;
+    }
+
+    // Rewrites file with one "watched|polled <TAB> path" line per folder if
+    // coverage changed since the last report and any folder is polled.
+    void report(File file) {
+        List<String> lines;
+        synchronized (this) {
+            if (!changed) return;
+            changed = false;
+            if (polled == 0 && !file.exists()) return;
+            lines = new ArrayList<>(folders.size() + 1);
+            lines.add("# " + summary());
+            for (Map.Entry<String, Folder> e : folders.entrySet()) {
+                lines.add((e.getValue().watched ? "watched\t" : "polled\t") + e.getKey());
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (PrintWriter w = new PrintWriter(tmp, StandardCharsets.UTF_8)) {
+            for (String l : lines) w.println(l);
+        } catch (IOException e) {
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            tmp.renameTo(file);
+        }
+    }
+
+    // ---------- HELPERS ----------
+
+    // Lowers the budget to what is actually in use (caller holds the lock).
+    private void exhausted(IOException e) {
+        budget = watched;
+        if (!exhausted) {
+            exhausted = true;
+            AppLog.warn("[!] Watch limit reached at " + watched + " folders (" + e.getMessage()
+                    + "); further folders are polled. Raise fs.inotify.max_user_watches to watch more.");
+        }
+    }
+
+    // Keys of dir and everything below it (caller holds the lock)
+    private List<String> subtree(String dir) {
+        List<String> keys = new ArrayList<>();
+        if (folders.containsKey(dir)) keys.add(dir);
+        keys.addAll(folders.subMap(dir + File.separator, true,
+                dir + File.separator + Character.MAX_VALUE, true).keySet());
+        return keys;
+    }
+
+    private double priorityOf(String dir) {
+        for (Priority p : priorities) {
+            if (dir.equals(p.prefix) || dir.startsWith(p.prefix + File.separator)) return p.weight;
+        }
+        return 0;
+    }
+
+    private static <T> List<T> drainReversed(PriorityQueue<T> q) {
+        List<T> out = new ArrayList<>(q.size());
+        while (!q.isEmpty()) out.add(q.poll());
+        Collections.reverse(out);
+        return out;
+    }
+
+    // FIM_WATCH_BUDGET, else 90% of max_user_watches on Linux, else unlimited
+    private static int initialBudget() {
+        String v = System.getenv("FIM_WATCH_BUDGET");
+        if (v != null) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException ignored) {}
+        }
+        try {
+            String max = Files.readString(Path.of(MAX_WATCHES)).trim();
+            return (int) Math.max(1, Long.parseLong(max) * BUDGET_SHARE);
+        } catch (Exception e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    // "path=weight,path=weight"; the longest matching prefix wins
+    private static List<Priority> parsePriorities(String spec) {
+        List<Priority> out = new ArrayList<>();
+        if (spec == null || spec.isBlank()) return out;
+        for (String part : spec.split(",")) {
+            int eq = part.lastIndexOf('=');
+            if (eq <= 0) continue;
+            try {
+                String prefix = new File(part.substring(0, eq).trim()).getCanonicalPath();
+                out.add(new Priority(prefix, Double.parseDouble(part.substring(eq + 1).trim())));
+            } catch (IOException | NumberFormatException e) {
+                AppLog.warn("[!] Ignoring FIM_WATCH_PRIORITY entry: " + part);
+            }
+        }
+        out.sort((a, b) -> Integer.compare(b.prefix.length(), a.prefix.length()));
+        return out;
+    }
+
+    private static final class Folder {
+        final double priority;
+        boolean watched;
+        double rate;  // events, decayed to `touched`
+        long touched;
+
+        Folder(double priority) {
+            this.priority = priority;
+        }
+
+        double rateAt(long now) {
+            if (rate == 0) return 0;
+            return rate * Math.pow(0.5, (double) (now - touched) / HALF_LIFE_MS);
+        }
+
+        double score(long now) {
+            return priority + rateAt(now);
+        }
+    }
+
+    private static final class Priority {
+        final String prefix;
+        final double weight;
+
+        Priority(String prefix, double weight) {
+            this.prefix = prefix;
+            this.weight = weight;
+        }
+    }
+}
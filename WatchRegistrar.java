@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Registers watches for a subtree on MonitorHub's walk pool while the loop is
+// already handling events. Each folder is admitted through WatchCoverage,
+// which polls it instead once the watch budget is spent. A folder registered after `since` may have changed
+// before its watch existed; if the folder or any entry in it changed (ctime,
+// or mtime where there is none) since then, it is handed back to the loop for a catch-up listing
+// (OverflowRecovery diffs it against runtimeState like a lost-event rescan).
+public final class WatchRegistrar {
+
+    // Timestamp granularity of the coarsest filesystems (FAT: 2 s)
+    private static final long MTIME_SLACK_MS = 2000;
+
+    private final Path root;
+    private final WatchCoverage coverage;
+    private final ForkJoinPool pool;
+
+    // relDirs needing a catch-up listing (drained by the loop thread)
+    private final Queue<String> caughtUp = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger walks = new AtomicInteger();
+    private volatile boolean closed;
+
+    // startup walk (the whole root)
+    private final LongAdder folders = new LongAdder();
+    private final LongAdder dirty = new LongAdder();
+    private final LongAdder polled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long initialStart;
+    private volatile long initialEnd;
+    private boolean initialLogged;
+
+    WatchRegistrar(Path root, WatchCoverage coverage, ForkJoinPool pool) {
+        this.root = root;
+        this.coverage = coverage;
+        this.pool = pool;
+    }
+
+    // ---------- WALKS ----------
+
+    // Registers dir and every folder below it. Changes older than since are
+    // assumed to be in runtimeState already.
+    void watch(Path dir, long since) {
+        if (closed) return;
+        boolean initial = initialStart == 0;
+        if (initial) initialStart = System.currentTimeMillis();
+        walks.incrementAndGet();
+        try {
+            pool.execute(new DirTask(dir, since - MTIME_SLACK_MS, true, initial));
+        } catch (RejectedExecutionException e) {
+            walks.decrementAndGet();
+        }
+    }
+
+    // Single folder, registered on the caller's thread (rescans discover
+    // new folders one level at a time and list each of them anyway).
+    void watchOne(Path dir) {
+        coverage.admit(dir);
+    }
+
+    boolean busy() {
+        return walks.get() > 0 || !caughtUp.isEmpty();
+    }
+
+    // Hands the folders found changed to rescan; logs the startup walk once
+    // it has finished.
+    void drain(Consumer<String> rescan) {
+        String relDir;
+        while ((relDir = caughtUp.poll()) != null) {
+            rescan.accept(relDir);
+        }
+
+        if (!initialLogged && initialEnd != 0) {
+            initialLogged = true;
+            AppLog.info("[+] Watch registration: " + folders.sum() + " folders in "
+                    + (initialEnd - initialStart) + " ms (" + dirty.sum() + " caught up"
+                    + (polled.sum() > 0 ? ", " + polled.sum() + " polled" : "")
+                    + (failed.sum() > 0 ? ", " + failed.sum() + " failed" : "") + ").");
+        }
+    }
+
+    // Walks still running stop at their next folder.
+    void close() {
+        closed = true;
+    }
+
+    // ---------- WALK ----------
+
+    private final class DirTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final long since;
+        private final boolean top;     // first folder of a walk
+        private final boolean initial; // part of the startup walk
+
+        DirTask(Path dir, long since, boolean top, boolean initial) {
+            this.dir = dir;
+            this.since = since;
+            this.top = top;
+            this.initial = initial;
+        }
+
+        @Override
+        protected void compute() {
+            if (!top) {
+                visit();
+                return;
+            }
+            try {
+                visit();
+            } finally {
+                if (initial) initialEnd = System.currentTimeMillis();
+                walks.decrementAndGet();
+            }
+        }
+
+        // Registers before listing, so whatever the listing misses is
+        // reported by the new watch.
+        private void visit() {
+
+            if (closed) return;
+            WatchCoverage.Mode mode = coverage.admit(dir);
+            if (mode == WatchCoverage.Mode.GONE) {
+                if (initial) failed.increment();
+                return;
+            }
+            if (initial) folders.increment();
+            if (initial && mode == WatchCoverage.Mode.POLLED) polled.increment();
+
+            List<DirTask> subdirs = new ArrayList<>();
+            boolean changed;
+            try {
+                changed = FileStat.changedMillis(Files.readAttributes(
+                        dir, FileStat.CHANGE_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS)) >= since;
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    for (Path p : entries) {
+                        Map<String, Object> a;
+                        try {
+                            a = Files.readAttributes(p, FileStat.CHANGE_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                        } catch (IOException e) {
+                            continue; // vanished while listing
+                        }
+                        if ((Boolean) a.get("isSymbolicLink")) continue;
+                        if ((Boolean) a.get("isDirectory")) {
+                            subdirs.add(new DirTask(p, since, false, initial));
+                        } else if (!changed && FileStat.changedMillis(a) >= since) {
+                            changed = true;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // gone or unreadable: its parent's listing covers it
+                return;
+            }
+
+            if (changed) {
+                if (initial) dirty.increment();
+                caughtUp.add(root.relativize(dir).toString().replace(File.separatorChar, '/'));
+            }
+            invokeAll(subdirs);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+final class AlertBusTest {
+
+    private AlertBusTest() {}
+
+    static void run() {
+
+        RunTests.test("alert bus: DROP_OLDEST keeps the newest events in order", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-drop", AlertBus.Policy.DROP_OLDEST, 3);
+            try {
+                for (int i = 0; i < 5; i++) publish(AlertEvent.Type.MODIFIED, "p" + i, "d" + i);
+
+                RunTests.equal(List.of("d2", "d3", "d4"), details(s), "queued");
+                RunTests.equal(2L, s.dropped(), "dropped");
+                RunTests.equal(3L, s.delivered(), "delivered");
+            } finally {
+                s.close();
+            }
+        });
+
+        RunTests.test("alert bus: COALESCE merges only into the path's newest event of the same type", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-coalesce", AlertBus.Policy.COALESCE, 3);
+            try {
+                publish(AlertEvent.Type.MODIFIED, "p", "d0");
+                publish(AlertEvent.Type.DELETED_FILE, "p", "d1");
+                publish(AlertEvent.Type.NEW_FILE, "p", "d2");
+                // newest event of p is NEW_FILE: the oldest is dropped instead
+                publish(AlertEvent.Type.MODIFIED, "p", "d3");
+                // newest event of p is MODIFIED: merged in place
+                publish(AlertEvent.Type.MODIFIED, "p", "d4");
+
+                RunTests.equal(List.of("d1", "d2", "d4"), details(s), "queued");
+                RunTests.equal(1L, s.dropped(), "dropped");
+                RunTests.equal(1L, s.coalesced(), "coalesced");
+            } finally {
+                s.close();
+            }
+        });
+
+        RunTests.test("alert bus: COALESCE keeps the burst count and first time of what it merges", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-coalesce-count", AlertBus.Policy.COALESCE, 1);
+            try {
+                Instant t0 = Instant.ofEpochMilli(1_700_000_000_000L);
+                AlertBus.publish(AlertEvent.restore(AlertEvent.Type.MODIFIED, "p", null, "/root/p", false,
+                        t0.plusSeconds(5), "d0", 4, t0));
+                AlertBus.publish(AlertEvent.restore(AlertEvent.Type.MODIFIED, "p", null, "/root/p", false,
+                        t0.plusSeconds(9), "d1", 3, t0.plusSeconds(7)));
+
+                List<AlertEvent> out = new ArrayList<>();
+                s.drainTo(out);
+                RunTests.equal(1, out.size(), "queued");
+                RunTests.equal(7, out.get(0).count, "count");
+                RunTests.equal(t0, out.get(0).firstTimestamp, "first");
+                RunTests.equal(t0.plusSeconds(9), out.get(0).timestamp, "last");
+                RunTests.equal("d1", out.get(0).detail, "detail");
+            } finally {
+                s.close();
+            }
+        });
+
+        RunTests.test("alert bus: COALESCE only acts when the ring is full", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-coalesce-room", AlertBus.Policy.COALESCE, 8);
+            try {
+                for (int i = 0; i < 4; i++) publish(AlertEvent.Type.MODIFIED, "p", "d" + i);
+
+                RunTests.equal(List.of("d0", "d1", "d2", "d3"), details(s), "queued");
+                RunTests.equal(0L, s.coalesced(), "coalesced");
+            } finally {
+                s.close();
+            }
+        });
+
+        RunTests.test("alert bus: BLOCK holds the publisher and loses nothing", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-block", AlertBus.Policy.BLOCK, 2);
+            try {
+                Thread publisher = new Thread(() -> {
+                    for (int i = 0; i < 20; i++) publish(AlertEvent.Type.MODIFIED, "p" + i, "d" + i);
+                });
+                publisher.start();
+
+                RunTests.waitFor(() -> publisher.getState() == Thread.State.WAITING, "publisher never blocked");
+                RunTests.equal(2, s.depth(), "depth while blocked");
+
+                List<String> got = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    AlertEvent e = s.poll(5000);
+                    RunTests.check(e != null, "event " + i + " missing");
+                    got.add(e.detail);
+                }
+                publisher.join(5000);
+
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < 20; i++) expected.add("d" + i);
+                RunTests.equal(expected, got, "order");
+                RunTests.equal(0L, s.dropped(), "dropped");
+            } finally {
+                s.close();
+            }
+        });
+
+        RunTests.test("alert bus: close releases a blocked publisher and consumer", () -> {
+            AlertBus.Subscription full = AlertBus.subscribe("test-close-full", AlertBus.Policy.BLOCK, 1);
+            AlertBus.Subscription empty = AlertBus.subscribe("test-close-empty", AlertBus.Policy.BLOCK, 4);
+            try {
+                Thread publisher = new Thread(() -> {
+                    publish(AlertEvent.Type.MODIFIED, "a", "d0");
+                    publish(AlertEvent.Type.MODIFIED, "b", "d1");
+                });
+                publisher.start();
+                RunTests.waitFor(() -> publisher.getState() == Thread.State.WAITING, "publisher never blocked");
+
+                full.close();
+                publisher.join(5000);
+                RunTests.check(!publisher.isAlive(), "publisher still blocked after close");
+
+                List<AlertEvent> taken = Collections.synchronizedList(new ArrayList<>());
+                Thread consumer = new Thread(() -> {
+                    try {
+                        AlertEvent e;
+                        while ((e = empty.take()) != null) taken.add(e);
+                    } catch (InterruptedException e) {
+                        // not expected
+                    }
+                });
+                consumer.start();
+                RunTests.waitFor(() -> taken.size() == 2, "consumer did not get both events");
+                empty.close();
+                consumer.join(5000);
+                RunTests.check(!consumer.isAlive(), "consumer still waiting after close");
+                RunTests.check(!AlertBus.subscriptions().contains(full), "closed subscription still registered");
+            } finally {
+                full.close();
+                empty.close();
+            }
+        });
+
+        RunTests.test("alert bus: listeners get every event in order despite throwing", () -> {
+            int n = 1000;
+            List<String> got = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(n);
+            AlertBus.Subscription s = AlertBus.register("test-listener", AlertBus.Policy.BLOCK, 16, batch -> {
+                for (AlertEvent e : batch) {
+                    got.add(e.detail);
+                    done.countDown();
+                }
+                throw new IllegalStateException("listener failure");
+            });
+            try {
+                for (int i = 0; i < n; i++) publish(AlertEvent.Type.MODIFIED, "p" + (i % 7), "d" + i);
+                RunTests.check(done.await(10, TimeUnit.SECONDS), "only " + got.size() + " delivered");
+
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < n; i++) expected.add("d" + i);
+                RunTests.equal(expected, got, "order");
+            } finally {
+                s.close();
+            }
+        });
+    }
+
+    private static void publish(AlertEvent.Type type, String path, String detail) {
+        AlertBus.publish(AlertEvent.of(type, path, null, "/root/" + path, false, detail));
+    }
+
+    private static List<String> details(AlertBus.Subscription s) {
+        List<AlertEvent> out = new ArrayList<>();
+        s.drainTo(out);
+        List<String> details = new ArrayList<>();
+        for (AlertEvent e : out) details.add(e.detail);
+        return details;
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class BaselineFormatTest {
+
+    private BaselineFormatTest() {}
+
+    static void run() {
+
+        RunTests.test("baseline format: every kind of entry round-trips", () -> {
+            Path dir = RunTests.tempDir("format");
+            try {
+                File file = dir.resolve("baseline.db").toFile();
+                Map<String, FIM.FileMeta> map = sample();
+                BaselineFormat.write(file, map);
+
+                RunTests.check(BaselineFormat.isBinary(file), "not detected as binary");
+                Map<String, FIM.FileMeta> back = BaselineFormat.readAll(file);
+                RunTests.equal(map.keySet(), back.keySet(), "paths");
+                for (String path : map.keySet()) {
+                    assertSame(map.get(path), back.get(path), path);
+                }
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline format: entries stream in PATH_ORDER", () -> {
+            Path dir = RunTests.tempDir("format");
+            try {
+                File file = dir.resolve("baseline.db").toFile();
+                BaselineFormat.write(file, sample());
+
+                List<String> paths = new ArrayList<>();
+                try (BaselineFormat.Reader r = BaselineFormat.open(file)) {
+                    while (r.next()) paths.add(r.path());
+                }
+                RunTests.equal(List.of("a", "a/b", "a/b/c.txt", "a-b", "a.txt", "big", "z/äö.txt", "z/äöü.txt"),
+                        paths, "order");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline format: v1 files are still read", () -> {
+            Path dir = RunTests.tempDir("format");
+            try {
+                Digest h = digest("x");
+
+                File v1 = dir.resolve("v1.db").toFile();
+                Files.write(v1.toPath(), encode(1, h));
+                FIM.FileMeta m = BaselineFormat.readAll(v1).get("d/f");
+                assertSame(new FIM.FileMeta(5, 1000, h), m, "v1 d/f");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline format: legacy text converts once, bad lines skipped", () -> {
+            Path dir = RunTests.tempDir("format");
+            try {
+                File file = dir.resolve("baseline.db").toFile();
+                Digest h = digest("legacy");
+                Files.writeString(file.toPath(),
+                        "a/f.txt|12|3456|" + h + "\n"
+                                + "a|0|0|" + Digest.DIR + "\n"
+                                + "broken line\n"
+                                + "b.txt|x|1|" + h + "\n");
+
+                RunTests.check(!BaselineFormat.isBinary(file), "text detected as binary");
+                RunTests.check(BaselineFormat.convertLegacy(file), "first conversion");
+                RunTests.check(!BaselineFormat.convertLegacy(file), "second conversion");
+
+                Map<String, FIM.FileMeta> map = BaselineFormat.readAll(file);
+                RunTests.equal(2, map.size(), "entries");
+                assertSame(new FIM.FileMeta(12, 3456, h), map.get("a/f.txt"), "a/f.txt");
+                RunTests.equal(Digest.DIR, map.get("a").hash, "a");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline format: bad magic and unknown versions are rejected", () -> {
+            Path dir = RunTests.tempDir("format");
+            try {
+                File file = dir.resolve("baseline.db").toFile();
+                Files.write(file.toPath(), encode(BaselineFormat.VERSION + 1, digest("x")));
+                expectIOException(file, "version");
+
+                Files.writeString(file.toPath(), "FIMXnot a baseline");
+                expectIOException(file, "magic");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+    }
+
+    private static Map<String, FIM.FileMeta> sample() throws Exception {
+        Map<String, FIM.FileMeta> map = new HashMap<>();
+        map.put("a", new FIM.FileMeta(0, 0, Digest.DIR));
+        map.put("a/b", new FIM.FileMeta(0, 0, Digest.DIR));
+        map.put("a/b/c.txt", new FIM.FileMeta(3, 1_700_000_000_123L, digest("c"), 42, 1_700_000_000_123_456_789L));
+        map.put("a-b", new FIM.FileMeta(0, -5_000, digest("a-b"), 0, 0));
+        map.put("a.txt", new FIM.FileMeta(9, 17, Digest.UNREADABLE, 1L << 40, -1));
+        map.put("big", new FIM.FileMeta(Long.MAX_VALUE / 3, Long.MIN_VALUE / 5, digest("big"), Long.MAX_VALUE, Long.MIN_VALUE));
+        map.put("z/äö.txt", new FIM.FileMeta(1, 2, digest("u1"), 3, 4));
+        map.put("z/äöü.txt", new FIM.FileMeta(5, 6, digest("u2"), 7, 8));
+        return map;
+    }
+
+    // A baseline holding folder "d" and file "d/f" in the given layout: v1 has
+    // no inode/ctime.
+    private static byte[] encode(int version, Digest h) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(BaselineFormat.MAGIC);
+        out.write(version);
+        out.writeLong(2);
+
+        BaselineFormat.writeVarint(out, 0);
+        BaselineFormat.writeVarint(out, 1);
+        out.write('d');
+        out.write(BaselineFormat.KIND_DIR);
+
+        BaselineFormat.writeVarint(out, 1);
+        BaselineFormat.writeVarint(out, 2);
+        out.write("/f".getBytes(StandardCharsets.UTF_8));
+        out.write(BaselineFormat.KIND_FILE);
+        BaselineFormat.writeVarint(out, 5);
+        BaselineFormat.writeVarint(out, 2000); // zigzag(1000)
+        if (version >= 2) {
+            BaselineFormat.writeVarint(out, 7);
+            BaselineFormat.writeVarint(out, 5); // zigzag(-3)
+        }
+        byte[] raw = new byte[BaselineFormat.DIGEST_LEN];
+        h.copyTo(raw, 0);
+        out.write(raw);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void expectIOException(File file, String what) throws Exception {
+        BaselineFormat.Reader r;
+        try {
+            r = BaselineFormat.open(file);
+        } catch (IOException expected) {
+            return;
+        }
+        r.close();
+        throw new AssertionError("opened a baseline with bad " + what);
+    }
+
+    static Digest digest(String text) throws Exception {
+        return Digest.of(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static void assertSame(FIM.FileMeta expected, FIM.FileMeta actual, String path) {
+        RunTests.check(actual != null, path + " missing");
+        RunTests.equal(expected.hash, actual.hash, path + " hash");
+        if (expected.hash.isDir()) return;
+        RunTests.equal(expected.size, actual.size, path + " size");
+        RunTests.equal(expected.lastModified, actual.lastModified, path + " mtime");
+        RunTests.equal(expected.inode, actual.inode, path + " inode");
+        RunTests.equal(expected.ctime, actual.ctime, path + " ctime");
+    }
+}
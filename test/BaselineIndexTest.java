@@ -0,0 +1,136 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class BaselineIndexTest {
+
+    private BaselineIndexTest() {}
+
+    static void run() {
+
+        RunTests.test("baseline index: every entry found, absent paths are not", () -> {
+            Path dir = RunTests.tempDir("index");
+            try {
+                Map<String, FIM.FileMeta> map = sample(5000);
+                BaselineIndex index = build(dir, map);
+
+                RunTests.equal((long) map.size(), index.size(), "size");
+                for (Map.Entry<String, FIM.FileMeta> e : map.entrySet()) {
+                    BaselineFormatTest.assertSame(e.getValue(), index.get(e.getKey()), e.getKey());
+                    RunTests.equal(e.getValue().hash, index.hash(e.getKey()), e.getKey() + " hash");
+                }
+                for (String absent : new String[]{"", "d1/sub", "d1/f1.tx", "d1/f1.txt/x", "D1/f1.txt", "zzz"}) {
+                    RunTests.check(!index.contains(absent), "found " + absent);
+                    RunTests.check(index.get(absent) == null, "meta for " + absent);
+                }
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline index: cursor walks records in baseline order", () -> {
+            Path dir = RunTests.tempDir("index");
+            try {
+                Map<String, FIM.FileMeta> map = sample(300);
+                BaselineIndex index = build(dir, map);
+
+                List<String> expected = new ArrayList<>(map.keySet());
+                expected.sort(BaselineFormat.PATH_ORDER);
+                List<String> walked = new ArrayList<>();
+                BaselineIndex.Cursor c = index.cursor();
+                while (c.next()) {
+                    FIM.FileMeta m = map.get(c.path());
+                    walked.add(c.path());
+                    RunTests.equal(m.hash.isDir(), c.isDir(), c.path() + " isDir");
+                    RunTests.equal(m.hash, c.hash(), c.path() + " hash");
+                    if (!c.isDir()) {
+                        RunTests.equal(m.size, c.size(), c.path() + " size");
+                        RunTests.equal(m.lastModified, c.lastModified(), c.path() + " mtime");
+                    }
+                }
+                RunTests.equal(expected, walked, "order");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline index: stale or damaged indexes are not current", () -> {
+            Path dir = RunTests.tempDir("index");
+            try {
+                File baseline = dir.resolve("baseline.db").toFile();
+                File index = dir.resolve("baseline.idx").toFile();
+                Map<String, FIM.FileMeta> map = sample(10);
+                BaselineFormat.write(baseline, map);
+
+                RunTests.check(!BaselineIndex.isCurrent(baseline, index), "missing index is current");
+                BaselineIndex.build(baseline, index);
+                RunTests.check(BaselineIndex.isCurrent(baseline, index), "fresh index not current");
+
+                map.put("extra.txt", new FIM.FileMeta(1, 2, BaselineFormatTest.digest("extra"), 3, 4));
+                BaselineFormat.write(baseline, map);
+                RunTests.check(!BaselineIndex.isCurrent(baseline, index), "index of the old baseline is current");
+
+                Files.writeString(index.toPath(), "garbage");
+                RunTests.check(!BaselineIndex.isCurrent(baseline, index), "garbage index is current");
+                try {
+                    BaselineIndex.open(index);
+                    throw new AssertionError("opened a garbage index");
+                } catch (IOException expected) {
+                    // rejected
+                }
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("baseline index: FIM converts legacy baselines and rebuilds stale indexes", () -> {
+            Path root = RunTests.tempDir("index-root");
+            String rootPath = root.toString();
+            try {
+                Digest h = BaselineFormatTest.digest("legacy");
+                Files.writeString(FIM.getBaselineFile(rootPath).toPath(), "f.txt|3|4|" + h + "\n");
+
+                BaselineIndex index = FIM.openBaselineIndex(rootPath);
+                RunTests.check(BaselineFormat.isBinary(FIM.getBaselineFile(rootPath)), "baseline not converted");
+                RunTests.equal(h, index.hash("f.txt"), "f.txt");
+
+                Map<String, FIM.FileMeta> map = BaselineFormat.readAll(FIM.getBaselineFile(rootPath));
+                map.put("g.txt", new FIM.FileMeta(5, 6, h, 7, 8));
+                BaselineFormat.write(FIM.getBaselineFile(rootPath), map);
+
+                index = FIM.openBaselineIndex(rootPath);
+                RunTests.check(index.contains("g.txt"), "index not rebuilt");
+            } finally {
+                Files.deleteIfExists(FIM.getBaselineFile(rootPath).toPath());
+                Files.deleteIfExists(FIM.getBaselineIndexFile(rootPath).toPath());
+                RunTests.delete(root.toFile());
+            }
+        });
+    }
+
+    private static BaselineIndex build(Path dir, Map<String, FIM.FileMeta> map) throws IOException {
+        File baseline = dir.resolve("baseline.db").toFile();
+        File index = dir.resolve("baseline.idx").toFile();
+        BaselineFormat.write(baseline, map);
+        BaselineIndex.build(baseline, index);
+        return BaselineIndex.open(index);
+    }
+
+    private static Map<String, FIM.FileMeta> sample(int files) throws Exception {
+        Map<String, FIM.FileMeta> map = new HashMap<>();
+        for (int d = 0; d < 10; d++) {
+            map.put("d" + d, new FIM.FileMeta(0, 0, Digest.DIR));
+        }
+        for (int i = 0; i < files; i++) {
+            String path = "d" + (i % 10) + "/f" + i + ".txt";
+            Digest h = i % 97 == 0 ? Digest.UNREADABLE : BaselineFormatTest.digest(path);
+            map.put(path, new FIM.FileMeta(i, 1_700_000_000_000L + i, h, 1000 + i, -i));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.List;
+
+final class EventCoalescerTest {
+
+    private EventCoalescerTest() {}
+
+    static void run() {
+
+        if (EventCoalescer.WINDOW_MS <= 0) {
+            System.out.println("[SKIP] coalescer: FIM_COALESCE_MS is 0, events pass through");
+            return;
+        }
+
+        RunTests.test("coalescer: a modify burst becomes one MODIFIED with the last detail", () -> {
+            List<AlertEvent> out = capture(() -> {
+                for (int i = 0; i < 5; i++) publish(AlertEvent.Type.MODIFIED, "m.txt", "d" + i);
+            });
+            RunTests.equal(List.of("MODIFIED m.txt x5"), describe(out), "events");
+            RunTests.equal("d4", out.get(0).detail, "detail");
+        });
+
+        RunTests.test("coalescer: modifies after a create fold into NEW_FILE", () -> {
+            List<AlertEvent> out = capture(() -> {
+                publish(AlertEvent.Type.NEW_FILE, "n.txt", "created");
+                publish(AlertEvent.Type.MODIFIED, "n.txt", "d1");
+                publish(AlertEvent.Type.MODIFIED, "n.txt", "d2");
+            });
+            RunTests.equal(List.of("NEW_FILE n.txt x3"), describe(out), "events");
+            RunTests.equal("created", out.get(0).detail, "detail");
+        });
+
+        RunTests.test("coalescer: create then delete cancels out", () -> {
+            List<AlertEvent> out = capture(() -> {
+                publish(AlertEvent.Type.NEW_FILE, "t.txt", null);
+                publish(AlertEvent.Type.MODIFIED, "t.txt", null);
+                publish(AlertEvent.Type.DELETED_FILE, "t.txt", null);
+            });
+            RunTests.equal(List.of(), describe(out), "events");
+        });
+
+        RunTests.test("coalescer: anything else keeps per-path order", () -> {
+            List<AlertEvent> out = capture(() -> {
+                publish(AlertEvent.Type.MODIFIED, "k.txt", null);
+                publish(AlertEvent.Type.DELETED_FILE, "k.txt", null);
+                publish(AlertEvent.Type.NEW_FILE, "k.txt", null);
+            });
+            RunTests.equal(List.of("MODIFIED k.txt x1", "DELETED_FILE k.txt x1", "NEW_FILE k.txt x1"),
+                    describe(out), "events");
+        });
+
+        RunTests.test("coalescer: a rename releases both paths and goes out at once", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-coalescer", AlertBus.Policy.BLOCK, 1024);
+            try {
+                publish(AlertEvent.Type.NEW_FILE, "a.txt", null);
+                publish(AlertEvent.Type.MODIFIED, "b.txt", null);
+                EventCoalescer.publish(AlertEvent.of(AlertEvent.Type.RENAMED_FILE, "b.txt", "a.txt", "/r/b.txt", false));
+
+                List<AlertEvent> now = new ArrayList<>();
+                s.drainTo(now);
+                RunTests.equal(List.of("MODIFIED b.txt x1", "NEW_FILE a.txt x1", "RENAMED_FILE b.txt x1"),
+                        describe(now), "before the window closes");
+            } finally {
+                EventCoalescer.flush();
+                s.close();
+            }
+        });
+
+        RunTests.test("coalescer: a folder that cancels out takes what is held below it", () -> {
+            List<AlertEvent> out = capture(() -> {
+                folder(AlertEvent.Type.NEW_FOLDER, "d");
+                publish(AlertEvent.Type.NEW_FILE, "d/f1", null);
+                publish(AlertEvent.Type.NEW_FILE, "d/sub/f2", null);
+                publish(AlertEvent.Type.NEW_FILE, "d2/keep", null);
+                publish(AlertEvent.Type.NEW_FILE, "d-x", null);
+                folder(AlertEvent.Type.DELETED_FOLDER, "d");
+            });
+            RunTests.equal(List.of("NEW_FILE d-x x1", "NEW_FILE d2/keep x1"), describe(out), "events");
+        });
+
+        RunTests.test("coalescer: deleting an existing folder releases what is held below it first", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-coalescer", AlertBus.Policy.BLOCK, 1024);
+            try {
+                publish(AlertEvent.Type.MODIFIED, "e/f", null);
+                publish(AlertEvent.Type.MODIFIED, "e/sub/g", null);
+                folder(AlertEvent.Type.DELETED_FOLDER, "e");
+
+                List<AlertEvent> now = new ArrayList<>();
+                s.drainTo(now);
+                RunTests.equal(List.of("MODIFIED e/f x1", "MODIFIED e/sub/g x1"), describe(now), "released");
+
+                EventCoalescer.flush();
+                now.clear();
+                s.drainTo(now);
+                RunTests.equal(List.of("DELETED_FOLDER e x1"), describe(now), "after the window");
+            } finally {
+                EventCoalescer.flush();
+                s.close();
+            }
+        });
+
+        RunTests.test("coalescer: the same relative path under two roots is kept apart", () -> {
+            List<AlertEvent> out = capture(() -> {
+                EventCoalescer.publish(AlertEvent.of(AlertEvent.Type.MODIFIED, "x.txt", null, "/r1/x.txt", false));
+                EventCoalescer.publish(AlertEvent.of(AlertEvent.Type.MODIFIED, "x.txt", null, "/r2/x.txt", false));
+                EventCoalescer.publish(AlertEvent.of(AlertEvent.Type.MODIFIED, "x.txt", null, "/r1/x.txt", false));
+            });
+            List<String> roots = new ArrayList<>();
+            for (AlertEvent e : out) roots.add(e.absolutePath + " x" + e.count);
+            roots.sort(null);
+            RunTests.equal(List.of("/r1/x.txt x2", "/r2/x.txt x1"), roots, "events");
+        });
+
+        RunTests.test("coalescer: a held event goes out when its window closes", () -> {
+            AlertBus.Subscription s = AlertBus.subscribe("test-coalescer", AlertBus.Policy.BLOCK, 1024);
+            try {
+                long t0 = System.currentTimeMillis();
+                publish(AlertEvent.Type.MODIFIED, "w.txt", null);
+                AlertEvent e = s.poll(EventCoalescer.WINDOW_MS + 5000);
+                long waited = System.currentTimeMillis() - t0;
+
+                RunTests.check(e != null, "not released");
+                RunTests.equal("w.txt", e.path, "path");
+                RunTests.check(waited >= EventCoalescer.WINDOW_MS - 50, "released after " + waited + " ms");
+            } finally {
+                EventCoalescer.flush();
+                s.close();
+            }
+        });
+    }
+
+    // Events that reach the bus while body runs and after a flush
+    private static List<AlertEvent> capture(RunTests.Case body) throws Exception {
+        AlertBus.Subscription s = AlertBus.subscribe("test-coalescer", AlertBus.Policy.BLOCK, 1024);
+        try {
+            body.run();
+            EventCoalescer.flush();
+            List<AlertEvent> out = new ArrayList<>();
+            s.drainTo(out);
+            return out;
+        } finally {
+            s.close();
+        }
+    }
+
+    private static void publish(AlertEvent.Type type, String path, String detail) {
+        EventCoalescer.publish(AlertEvent.of(type, path, null, "/r/" + path, false, detail));
+    }
+
+    private static void folder(AlertEvent.Type type, String path) {
+        EventCoalescer.publish(AlertEvent.of(type, path, null, "/r/" + path, true));
+    }
+
+    private static List<String> describe(List<AlertEvent> events) {
+        List<String> out = new ArrayList<>();
+        for (AlertEvent e : events) out.add(e.type + " " + e.path + " x" + e.count);
+        return out;
+    }
+}
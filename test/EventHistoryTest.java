@@ -0,0 +1,206 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+final class EventHistoryTest {
+
+    private static final long BASE = 1_700_000_000_000L;
+    private static final String[] ROOTS = {"/srv/a/", "/srv/b/"};
+    private static final String[] DIRS = {"logs", "logs2", "log", "data/deep", "old"};
+
+    private EventHistoryTest() {}
+
+    static void run() {
+
+        RunTests.test("event history: queries over sealed and live segments match a full scan", () -> {
+            File dir = RunTests.tempDir("history").toFile();
+            try {
+                fill(dir);
+                RunTests.equal(2, EventLog.segments(dir).length, "segments");
+
+                EventHistory h = EventHistory.open(dir);
+                for (EventHistory.Query q : queries()) check(h, dir, q);
+                RunTests.check(EventHistory.indexFile(dir, 0).exists(), "sealed segment has no index file");
+
+                // again, from the index file written by the first pass
+                EventHistory fresh = EventHistory.open(dir);
+                for (EventHistory.Query q : queries()) check(fresh, dir, q);
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event history: a damaged index file is rebuilt", () -> {
+            File dir = RunTests.tempDir("history").toFile();
+            try {
+                fill(dir);
+                EventHistory.open(dir).query(new EventHistory.Query());
+                Files.writeString(EventHistory.indexFile(dir, 0).toPath(), "damaged");
+
+                EventHistory h = EventHistory.open(dir);
+                for (EventHistory.Query q : queries()) check(h, dir, q);
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event history: new events show up in the live segment", () -> {
+            File dir = RunTests.tempDir("history").toFile();
+            try {
+                EventLog log = EventLog.open(dir);
+                EventHistory h = EventHistory.open(dir);
+                publish(AlertEvent.Type.NEW_FILE, ROOTS[0], "live/one.txt", null, BASE);
+                RunTests.waitFor(() -> count(h, "live") == 1, "first event not found");
+                publish(AlertEvent.Type.MODIFIED, ROOTS[0], "live/one.txt", null, BASE + 1);
+                RunTests.waitFor(() -> count(h, "live") == 2, "second event not found");
+                log.close();
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event history: type names and times parse", () -> {
+            RunTests.equal(EnumSet.of(AlertEvent.Type.DELETED_FILE, AlertEvent.Type.DELETED_FOLDER),
+                    EventHistory.parseTypes("deleted"), "deleted");
+            RunTests.equal(EnumSet.of(AlertEvent.Type.MODIFIED, AlertEvent.Type.NEW_FILE),
+                    EventHistory.parseTypes("MODIFIED, new_file"), "list");
+            RunTests.equal(EnumSet.allOf(AlertEvent.Type.class), EventHistory.parseTypes(" "), "blank");
+            try {
+                EventHistory.parseTypes("touched");
+                throw new AssertionError("unknown type accepted");
+            } catch (IllegalArgumentException expected) {
+                // rejected
+            }
+            RunTests.equal(BASE, EventHistory.parseTime(Instant.ofEpochMilli(BASE).toString()), "instant");
+            RunTests.check(EventHistory.parseTime("2026-10-16") < EventHistory.parseTime("2026-10-16 02:00"),
+                    "date before date-time");
+        });
+    }
+
+    // Two segments: the first sealed, the second live. Times run forwards
+    // with every 50th event late (as coalesced events are), and the first
+    // segment spans several index blocks.
+    private static void fill(File dir) throws IOException {
+        EventLog log = EventLog.open(dir);
+        for (int i = 0; i < 3000; i++) publish(i);
+        log.close();
+        seal(dir, 0);
+
+        log = EventLog.open(dir);
+        for (int i = 3000; i < 4500; i++) publish(i);
+        log.close();
+    }
+
+    private static void publish(int i) {
+        AlertEvent.Type[] types = EventLog.TYPE_CODES;
+        AlertEvent.Type type = types[(i * 7) % types.length];
+        String root = ROOTS[i % 2];
+        String path = DIRS[i % DIRS.length] + "/f" + (i % 37) + ".txt";
+        String old = type == AlertEvent.Type.RENAMED_FILE || type == AlertEvent.Type.MOVED_FILE
+                || type == AlertEvent.Type.RENAMED_FOLDER ? "old/src" + (i % 5) : null;
+        long time = BASE + i * 1000L - (i % 50 == 0 ? 200_000 : 0);
+        publish(type, root, path, old, time);
+    }
+
+    private static void publish(AlertEvent.Type type, String root, String path, String old, long time) {
+        AlertBus.publish(AlertEvent.restore(type, path, old, root + path, false,
+                Instant.ofEpochMilli(time), null, 1, Instant.ofEpochMilli(time)));
+    }
+
+    // Cuts the preallocated segment down to its records, so the next open
+    // starts a new segment and this one is sealed.
+    private static void seal(File dir, long seq) throws IOException {
+        File f = EventLog.segmentFile(dir, seq);
+        int end = EventLog.HEADER;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw"); FileChannel ch = raf.getChannel()) {
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            CRC32 crc = new CRC32();
+            int len;
+            while ((len = EventLog.recordLength(m, end, crc)) >= 0) end += 8 + len;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(end + 4);
+        }
+    }
+
+    private static List<EventHistory.Query> queries() {
+        List<EventHistory.Query> out = new ArrayList<>();
+        out.add(new EventHistory.Query().limit(0));
+        out.add(new EventHistory.Query().limit(7));
+        out.add(new EventHistory.Query().prefix("/srv/a/logs"));
+        out.add(new EventHistory.Query().prefix("/srv/a/logs/"));
+        out.add(new EventHistory.Query().prefix("logs"));
+        out.add(new EventHistory.Query().prefix("log"));
+        out.add(new EventHistory.Query().prefix("data"));
+        out.add(new EventHistory.Query().prefix("old"));
+        out.add(new EventHistory.Query().prefix("/srv/b/logs2/f3.txt"));
+        out.add(new EventHistory.Query().prefix("/srv"));
+        out.add(new EventHistory.Query().prefix("/nowhere"));
+        out.add(new EventHistory.Query().types(EventHistory.parseTypes("deleted")));
+        out.add(new EventHistory.Query().types(EventHistory.parseTypes("renamed_file,moved_file")).prefix("old"));
+        out.add(new EventHistory.Query().between(BASE + 500_000, BASE + 1_700_000));
+        out.add(new EventHistory.Query().between(BASE + 2_990_000, BASE + 3_010_000).prefix("log"));
+        out.add(new EventHistory.Query().between(BASE + 2_800_000, BASE + 2_810_000));
+        out.add(new EventHistory.Query().between(BASE + 4_001_000, BASE + 4_010_000)
+                .types(EventHistory.parseTypes("modified")));
+        out.add(new EventHistory.Query().between(BASE + 9_000_000, Long.MAX_VALUE));
+        return out;
+    }
+
+    private static void check(EventHistory h, File dir, EventHistory.Query q) throws IOException {
+        String what = "prefix " + q.prefix + ", " + q.types.size() + " types, [" + q.from + ", " + q.to + ")";
+
+        long expected = 0;
+        List<Long> first = new ArrayList<>();
+        for (EventLog.Record r : EventLogTest.readAll(dir, 0)) {
+            if (!matches(q, r.event)) continue;
+            expected++;
+            if (first.size() < q.limit) first.add(r.seq);
+        }
+
+        EventHistory.Result result = h.query(q);
+        List<Long> got = new ArrayList<>();
+        for (EventLog.Record r : result.records) got.add(r.seq);
+        RunTests.equal(expected, result.matched, what + ": matched");
+        RunTests.equal(first, got, what + ": records");
+    }
+
+    private static boolean matches(EventHistory.Query q, AlertEvent e) {
+        long t = e.timestamp.toEpochMilli();
+        if (t < q.from || t >= q.to || !q.types.contains(e.type)) return false;
+        if (q.prefix == null) return true;
+
+        String root = e.absolutePath.substring(0, e.absolutePath.length() - e.path.length());
+        List<String> prefixes = new ArrayList<>();
+        if (q.prefix.startsWith("/")) {
+            prefixes.add(q.prefix);
+        } else {
+            for (String r : ROOTS) prefixes.add(r + q.prefix);
+        }
+        for (String p : prefixes) {
+            if (under(e.absolutePath, p)) return true;
+            if (e.oldPath != null && under(root + e.oldPath, p)) return true;
+        }
+        return false;
+    }
+
+    private static boolean under(String path, String prefix) {
+        return path.equals(prefix) || path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/");
+    }
+
+    private static long count(EventHistory h, String prefix) {
+        try {
+            return h.query(new EventHistory.Query().prefix(prefix)).matched;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+final class EventLogTest {
+
+    private EventLogTest() {}
+
+    static void run() {
+
+        RunTests.test("event log: every field of every type round-trips in order", () -> {
+            File dir = RunTests.tempDir("eventlog").toFile();
+            try {
+                List<AlertEvent> sent = new ArrayList<>();
+                long t = 1_700_000_000_000L;
+                for (AlertEvent.Type type : EventLog.TYPE_CODES) {
+                    sent.add(AlertEvent.restore(type, "d/" + type, null, "/srv/root/d/" + type, false,
+                            Instant.ofEpochMilli(t++), null, 1, Instant.ofEpochMilli(t)));
+                }
+                sent.add(AlertEvent.restore(AlertEvent.Type.RENAMED_FOLDER, "new dir", "old dir", "/srv/root/new dir",
+                        true, Instant.ofEpochMilli(t + 10), "moved by äöü", 1, Instant.ofEpochMilli(t + 10)));
+                sent.add(AlertEvent.restore(AlertEvent.Type.MODIFIED, "burst.txt", null, "/srv/root/burst.txt",
+                        false, Instant.ofEpochMilli(t + 5000), "hash changed", 42, Instant.ofEpochMilli(t + 20)));
+                sent.add(AlertEvent.restore(AlertEvent.Type.NEW_FILE, "norootinfo.txt", null, null,
+                        false, Instant.ofEpochMilli(t + 6000), null, 1, Instant.ofEpochMilli(t + 6000)));
+
+                EventLog log = EventLog.open(dir);
+                for (AlertEvent e : sent) AlertBus.publish(e);
+                log.close();
+
+                List<EventLog.Record> read = readAll(dir, 0);
+                RunTests.equal(sent.size(), read.size(), "records");
+                for (int i = 0; i < sent.size(); i++) {
+                    RunTests.equal((long) i, read.get(i).seq, "seq");
+                    assertSameEvent(sent.get(i), read.get(i).event);
+                }
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event log: reopening continues the sequence", () -> {
+            File dir = RunTests.tempDir("eventlog").toFile();
+            try {
+                EventLog log = EventLog.open(dir);
+                publish(0, 5);
+                log.close();
+
+                log = EventLog.open(dir);
+                RunTests.equal(5L, log.nextSeq(), "next seq after reopen");
+                publish(5, 3);
+                log.close();
+
+                RunTests.equal(List.of("e0", "e1", "e2", "e3", "e4", "e5", "e6", "e7"), details(readAll(dir, 0)), "all");
+                RunTests.equal(List.of("e6", "e7"), details(readAll(dir, 6)), "from seq 6");
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event log: a torn tail is cut off and overwritten", () -> {
+            File dir = RunTests.tempDir("eventlog").toFile();
+            try {
+                EventLog log = EventLog.open(dir);
+                publish(0, 3);
+                log.close();
+
+                // flip a byte inside the last record: its checksum no longer matches
+                File segment = EventLog.segmentFile(dir, 0);
+                List<Integer> offsets = recordOffsets(segment);
+                RunTests.equal(3, offsets.size(), "records on disk");
+                try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                    raf.seek(offsets.get(2) + 6);
+                    raf.write(0x5A ^ raf.readByte());
+                }
+                RunTests.equal(List.of("e0", "e1"), details(readAll(dir, 0)), "before reopen");
+
+                log = EventLog.open(dir);
+                RunTests.equal(2L, log.nextSeq(), "next seq after a torn tail");
+                publish(10, 1);
+                log.close();
+
+                List<EventLog.Record> read = readAll(dir, 0);
+                RunTests.equal(List.of("e0", "e1", "e10"), details(read), "after reopen");
+                RunTests.equal(2L, read.get(2).seq, "seq of the new record");
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event log: a segment too small to continue starts a new one", () -> {
+            File dir = RunTests.tempDir("eventlog").toFile();
+            try {
+                EventLog log = EventLog.open(dir);
+                publish(0, 3);
+                log.close();
+
+                // as left by a run with a smaller FIM_EVENT_LOG_SEGMENT_MB
+                File first = EventLog.segmentFile(dir, 0);
+                try (RandomAccessFile raf = new RandomAccessFile(first, "rw")) {
+                    raf.setLength(4096);
+                }
+                RunTests.equal(3, recordOffsets(first).size(), "records kept");
+
+                log = EventLog.open(dir);
+                publish(3, 2);
+                log.close();
+
+                RunTests.equal(2, EventLog.segments(dir).length, "segments");
+                RunTests.check(EventLog.segmentFile(dir, 3).exists(), "second segment not named after seq 3");
+                RunTests.equal(List.of("e0", "e1", "e2", "e3", "e4"), details(readAll(dir, 0)), "all");
+                RunTests.equal(List.of("e2", "e3", "e4"), details(readAll(dir, 2)), "across segments");
+                RunTests.equal(List.of("e4"), details(readAll(dir, 4)), "second segment only");
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+
+        RunTests.test("event log: one writer per folder", () -> {
+            File dir = RunTests.tempDir("eventlog").toFile();
+            try {
+                EventLog log = EventLog.open(dir);
+                try {
+                    EventLog.open(dir).close();
+                    throw new AssertionError("a second log opened the same folder");
+                } catch (IOException expected) {
+                    // refused
+                }
+                log.close();
+                EventLog.open(dir).close();
+            } finally {
+                RunTests.delete(dir);
+            }
+        });
+    }
+
+    private static void publish(int first, int n) {
+        for (int i = first; i < first + n; i++) {
+            AlertBus.publish(AlertEvent.of(AlertEvent.Type.MODIFIED, "f" + i, null, "/srv/root/f" + i, false, "e" + i));
+        }
+    }
+
+    static List<EventLog.Record> readAll(File dir, long fromSeq) throws IOException {
+        List<EventLog.Record> out = new ArrayList<>();
+        try (EventLog.Reader r = EventLog.reader(dir, fromSeq)) {
+            EventLog.Record rec;
+            while ((rec = r.next()) != null) out.add(rec);
+        }
+        return out;
+    }
+
+    private static List<String> details(List<EventLog.Record> records) {
+        List<String> out = new ArrayList<>();
+        for (EventLog.Record r : records) out.add(r.event.detail);
+        return out;
+    }
+
+    // Positions of the intact records of a segment
+    private static List<Integer> recordOffsets(File segment) throws IOException {
+        List<Integer> out = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r");
+             FileChannel ch = raf.getChannel()) {
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            CRC32 crc = new CRC32();
+            int at = EventLog.HEADER;
+            int len;
+            while ((len = EventLog.recordLength(m, at, crc)) >= 0) {
+                out.add(at);
+                at += 8 + len;
+            }
+        }
+        return out;
+    }
+
+    static void assertSameEvent(AlertEvent sent, AlertEvent read) {
+        String what = sent.type + " " + sent.path;
+        RunTests.equal(sent.type, read.type, what + " type");
+        RunTests.equal(sent.path, read.path, what + " path");
+        RunTests.equal(sent.oldPath, read.oldPath, what + " oldPath");
+        RunTests.equal(sent.absolutePath == null ? sent.path : sent.absolutePath, read.absolutePath, what + " absolutePath");
+        RunTests.equal(sent.isDirectory, read.isDirectory, what + " isDirectory");
+        RunTests.equal(sent.timestamp, read.timestamp, what + " timestamp");
+        RunTests.equal(sent.detail, read.detail, what + " detail");
+        RunTests.equal(sent.count, read.count, what + " count");
+        if (sent.count > 1) RunTests.equal(sent.firstTimestamp, read.firstTimestamp, what + " firstTimestamp");
+    }
+}
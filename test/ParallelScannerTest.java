@@ -0,0 +1,67 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+final class ParallelScannerTest {
+
+    private ParallelScannerTest() {}
+
+    static void run() {
+
+        RunTests.test("scanner: every file and folder, hashed like FIM.getFileHash", () -> {
+            Path root = tree();
+            try {
+                Map<String, FIM.FileMeta> map = new HashMap<>();
+                ParallelScanner.scan(root.toFile(), root, map);
+
+                RunTests.equal(7, map.size(), "entries");
+                RunTests.equal(FIM.DIR_HASH, map.get("a").hash, "folder a");
+                RunTests.equal(FIM.DIR_HASH, map.get("a/b/empty").hash, "empty folder");
+                for (String file : new String[]{"top.txt", "a/one.txt", "a/b/two.txt", "a/b/big.bin"}) {
+                    FIM.FileMeta m = map.get(file);
+                    File f = root.resolve(file).toFile();
+                    RunTests.equal(FIM.getFileHash(f), m.hash, file + " hash");
+                    RunTests.equal(f.length(), m.size, file + " size");
+                    RunTests.equal(f.lastModified(), m.lastModified, file + " mtime");
+                }
+            } finally {
+                RunTests.delete(root.toFile());
+            }
+        });
+
+        RunTests.test("scanner: unchanged files come from the seed, changed ones are hashed", () -> {
+            Path root = tree();
+            try {
+                Map<String, FIM.FileMeta> seed = new HashMap<>();
+                ParallelScanner.scan(root.toFile(), root, seed);
+
+                Files.writeString(root.resolve("a/one.txt"), "one, longer now");
+                Files.delete(root.resolve("top.txt"));
+
+                Map<String, FIM.FileMeta> out = new HashMap<>();
+                ParallelScanner.Stats stats = new ParallelScanner.Stats();
+                ParallelScanner.scan(root.toFile(), root, seed::get, out, stats);
+
+                RunTests.equal(3L, stats.files.sum(), "files");
+                RunTests.equal(1L, stats.hashed.sum(), "hashed");
+                RunTests.check(out.get("a/b/two.txt") == seed.get("a/b/two.txt"), "two.txt not taken from seed");
+                RunTests.equal(FIM.getFileHash(root.resolve("a/one.txt").toFile()), out.get("a/one.txt").hash, "one.txt");
+                RunTests.check(!out.containsKey("top.txt"), "deleted file leaked from seed");
+            } finally {
+                RunTests.delete(root.toFile());
+            }
+        });
+    }
+
+    private static Path tree() throws Exception {
+        Path root = RunTests.tempDir("scan");
+        RunTests.write(root.resolve("top.txt"), "top");
+        RunTests.write(root.resolve("a/one.txt"), "one");
+        RunTests.write(root.resolve("a/b/two.txt"), "two");
+        Files.write(root.resolve("a/b/big.bin"), new byte[3 * 1024 * 1024 + 17]);
+        Files.createDirectories(root.resolve("a/b/empty"));
+        return root;
+    }
+}
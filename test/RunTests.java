@@ -0,0 +1,99 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+// Usage: java RunTests
+// Behaviour tests for the on-disk formats, recovery paths and event pipeline.
+// Plain Java, no framework: each XxxTest.run() registers its cases here and
+// the process exits non-zero when one of them fails.
+public final class RunTests {
+
+    interface Case {
+        void run() throws Exception;
+    }
+
+    interface Condition {
+        boolean holds();
+    }
+
+    private static int passed;
+    private static int failed;
+
+    private RunTests() {}
+
+    public static void main(String[] args) throws Exception {
+
+        // Baselines, journals and the event log live under ~/.fim; keep the
+        // tests away from the real one.
+        Path home = tempDir("home");
+        System.setProperty("user.home", home.toString());
+
+        ParallelScannerTest.run();
+        BaselineFormatTest.run();
+        BaselineIndexTest.run();
+        StateJournalTest.run();
+        AlertBusTest.run();
+        EventCoalescerTest.run();
+        EventLogTest.run();
+        EventHistoryTest.run();
+
+        System.out.println();
+        System.out.println(passed + " passed, " + failed + " failed");
+        delete(home.toFile());
+        if (failed > 0) System.exit(1);
+    }
+
+    // ---------- CASES ----------
+
+    static void test(String name, Case c) {
+        try {
+            c.run();
+            passed++;
+            System.out.println("[OK] " + name);
+        } catch (Throwable e) {
+            failed++;
+            System.out.println("[FAIL] " + name + ": " + e);
+            e.printStackTrace(System.out);
+        }
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    // Polls c until it holds; fails after five seconds.
+    static void waitFor(Condition c, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!c.holds()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError(message);
+            Thread.sleep(5);
+        }
+    }
+
+    // ---------- FILES ----------
+
+    static Path tempDir(String prefix) throws IOException {
+        return Files.createTempDirectory("fim-test-" + prefix).toRealPath();
+    }
+
+    static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) delete(c);
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+final class StateJournalTest {
+
+    private StateJournalTest() {}
+
+    static void run() {
+
+        RunTests.test("state journal: every operation replays", () -> {
+            Path dir = RunTests.tempDir("journal");
+            try {
+                StateJournal j = journal(dir);
+                j.put("a", folder());
+                j.put("a/x.txt", file("x", 1));
+                j.put("a/sub/y.txt", file("y", 2));
+                j.put("b.txt", file("b", 3));
+                j.put("c/z.txt", file("z", 4));
+                j.put("gone.txt", file("gone", 5));
+                j.remove("gone.txt");
+                j.removeSubtree("c");
+                j.move("a", "moved");
+                j.put("b.txt", file("b2", 6));
+                j.close();
+
+                Map<String, FIM.FileMeta> state = journal(dir).recover();
+                RunTests.equal(Set.of("moved", "moved/x.txt", "moved/sub/y.txt", "b.txt"),
+                        state.keySet(), "paths");
+                BaselineFormatTest.assertSame(file("y", 2), state.get("moved/sub/y.txt"), "moved/sub/y.txt");
+                BaselineFormatTest.assertSame(file("b2", 6), state.get("b.txt"), "b.txt");
+                RunTests.equal(Digest.DIR, state.get("moved").hash, "moved");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("state journal: checkpoint plus the journal written after it", () -> {
+            Path dir = RunTests.tempDir("journal");
+            try {
+                StateJournal j = journal(dir);
+                Map<String, FIM.FileMeta> live = new HashMap<>();
+                for (int i = 0; i < 100; i++) {
+                    live.put("f" + i, file("f" + i, i));
+                    j.put("f" + i, live.get("f" + i));
+                }
+                j.checkpoint(() -> new HashMap<>(live));
+                awaitCheckpoint(dir);
+
+                j.put("f100", file("f100", 100));
+                j.remove("f0");
+                j.close();
+
+                Map<String, FIM.FileMeta> state = journal(dir).recover();
+                RunTests.equal(100, state.size(), "entries");
+                RunTests.check(!state.containsKey("f0"), "removed after checkpoint");
+                BaselineFormatTest.assertSame(file("f100", 100), state.get("f100"), "f100");
+                BaselineFormatTest.assertSame(file("f50", 50), state.get("f50"), "f50");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("state journal: a torn or corrupt tail keeps every record before it", () -> {
+            Path dir = RunTests.tempDir("journal");
+            try {
+                StateJournal j = journal(dir);
+                j.put("one", file("one", 1));
+                j.put("two", file("two", 2));
+                j.put("three", file("three", 3));
+                j.close();
+
+                File wal = dir.resolve("state.wal").toFile();
+                long full = wal.length();
+                try (RandomAccessFile raf = new RandomAccessFile(wal, "rw")) {
+                    raf.setLength(full - 3);
+                }
+                RunTests.equal(Set.of("one", "two"), journal(dir).recover().keySet(), "truncated");
+
+                try (RandomAccessFile raf = new RandomAccessFile(wal, "rw")) {
+                    raf.setLength(full);
+                    raf.seek(full - 10);
+                    raf.write(0x5A ^ raf.readByte());
+                }
+                RunTests.equal(Set.of("one", "two"), journal(dir).recover().keySet(), "corrupt");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("state journal: a checkpoint cut short replays the set-aside journal first", () -> {
+            Path dir = RunTests.tempDir("journal");
+            try {
+                StateJournal j = journal(dir);
+                j.put("x", file("old", 1));
+                j.put("y", file("y", 2));
+                j.close();
+                // what checkpoint() leaves behind when the process dies mid-write
+                Files.move(dir.resolve("state.wal"), dir.resolve("state.wal.old"));
+
+                j = journal(dir);
+                j.put("x", file("new", 3));
+                j.close();
+
+                Map<String, FIM.FileMeta> state = journal(dir).recover();
+                BaselineFormatTest.assertSame(file("new", 3), state.get("x"), "x");
+                BaselineFormatTest.assertSame(file("y", 2), state.get("y"), "y");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+
+        RunTests.test("state journal: an unreadable checkpoint still replays the journal", () -> {
+            Path dir = RunTests.tempDir("journal");
+            try {
+                Files.writeString(dir.resolve("state.ckpt"), "not a checkpoint");
+                StateJournal j = journal(dir);
+                j.put("x", file("x", 1));
+                j.close();
+
+                RunTests.equal(Set.of("x"), journal(dir).recover().keySet(), "paths");
+            } finally {
+                RunTests.delete(dir.toFile());
+            }
+        });
+    }
+
+    private static StateJournal journal(Path dir) {
+        return new StateJournal(dir.resolve("state.ckpt").toFile(), dir.resolve("state.wal").toFile());
+    }
+
+    // The checkpoint is written in the background; the set-aside journal is
+    // dropped once it is on disk.
+    private static void awaitCheckpoint(Path dir) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (Files.exists(dir.resolve("state.wal.old")) || !Files.exists(dir.resolve("state.ckpt"))) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("checkpoint not written");
+            Thread.sleep(10);
+        }
+    }
+
+    private static FIM.FileMeta folder() {
+        return new FIM.FileMeta(0, 0, Digest.DIR);
+    }
+
+    private static FIM.FileMeta file(String content, int n) throws Exception {
+        return new FIM.FileMeta(content.length(), 1_700_000_000_000L + n, BaselineFormatTest.digest(content), 100 + n, n * 1_000_000L);
+    }
+}